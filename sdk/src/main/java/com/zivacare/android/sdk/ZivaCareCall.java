@@ -0,0 +1,55 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+/**
+ * Handle of a ZivaCare API endpoint call, returned by the endpoint methods.<br>
+ * Cancelling a call aborts its transfer and the parsing of its response, and
+ * its callback is not called anymore.
+ *
+ * @author abl
+ */
+public interface ZivaCareCall {
+
+    /**
+     * Cancel the call, nothing happens if it is already finished
+     */
+    void cancel();
+
+    boolean isCanceled();
+
+    /**
+     * Get the tag passed when the call was made
+     *
+     * @return Object or null if the call has no tag
+     */
+    Object getTag();
+
+    /**
+     * Get the endpoint type of the call
+     *
+     * @return one of the {@code ZivaCareEndpoint.TYPE_} constants, or null
+     */
+    String getType();
+}
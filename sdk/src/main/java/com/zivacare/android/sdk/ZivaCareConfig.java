@@ -33,14 +33,17 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Configuration class for ZivaCareSDK<br>
  * This will hold all needed user data used later for post & get requests
- * authorisations
+ * authorisations. The data belongs to this instance only, several
+ * configurations can be used at the same time for different users.
  *
  * @author abl
  */
@@ -53,7 +56,7 @@ public class ZivaCareConfig {
     public static final String URL_EXTERN = "/extern/en/iframe";
 
     public static final String ACCESS_TOKEN_QUERY_PARAM = "?access_token=";
-    public static final String REFRESH_TOKEN_QUERY_PARAM = "?client_id=%s&client_secret=%s&grant_type=refresh_token&refresh_token=REFRESH_TOKEN";
+    public static final String REFRESH_TOKEN_QUERY_PARAM = "?client_id=%s&client_secret=%s&grant_type=refresh_token&refresh_token=%s";
     public static final String DELETE_USER_QUERY_PARAM = "/api/v1/app/%s/users/%s";
 
     public static final String CLIENT_ID = "clientId";
@@ -62,6 +65,9 @@ public class ZivaCareConfig {
     public static final String CLIENT_SECRET = "clientSecret";
     public static final String SPECIAL_TOKEN = "specialToken";
     public static final String ACCESS_TOKEN = "access_token";
+    public static final String REFRESH_TOKEN = "refresh_token";
+    public static final String EXPIRES_IN = "expires_in";
+    public static final String ACCESS_TOKEN_EXPIRES_AT = "access_token_expires_at";
     public static final String DATA_SOURCE_NAME = "dataSourceName";
     public static final String ZIVA_USER_CODE = "ziva_user_code";
     public static final String TOKEN = "token";
@@ -73,50 +79,154 @@ public class ZivaCareConfig {
     private static final String STRING_EMPTY = "";
     private static final String STRING_NEWLINE = "\n";
     private static final String CONFIG_FILE = "config.properties";
+    private static final String CACHE_FILE = "ziva_cache";
 
     private boolean demo = true;
     private static boolean debugEnabled = false;
     private File cacheFile = null;
-    private String specialToken = null;
-    private String clientSecret = null;
-    private String clientId = null;
-    private String clientUserId = null;
-    private String clientUserName = null;
-    private String zivaUserCode = null;
-    private String accessToken = null;
+    private ZivaCareCredentialStore mStore = null;
+    private final AtomicReference<ZivaCareCredentials> mCredentials =
+            new AtomicReference<ZivaCareCredentials>(ZivaCareCredentials.EMPTY);
+    private final String mCacheName;
     private String mDevUrl;
     private String mApiUrl;
+    private final FutureTask<Void> mLoader;
+    private volatile ZivaCareClock mClock = ZivaCareClock.SYSTEM;
+    private ZivaCareTokenRefresher mTokenRefresher = null;
 
     /**
-     * Constructor for ZivaCareConfig
+     * Constructor for ZivaCareConfig<br>
+     * The config properties and the cached credentials are loaded on a
+     * background thread, the getters wait for them the first time they are used.
      *
      * @param context - context of the app
      * @param demo    - if enabled then the get request will be called with
      *                access_token=demo
      */
     public ZivaCareConfig(@NonNull Context context, boolean demo) {
+        this(context, demo, null);
+    }
+
+    /**
+     * Constructor for ZivaCareConfig holding the credentials of one of several
+     * users of the app. Each account has its own cache file, so configurations
+     * of different accounts can be used at the same time.
+     *
+     * @param context     - context of the app
+     * @param demo        - if enabled then the get request will be called with
+     *                    access_token=demo
+     * @param accountName - name of the account, or null for the default cache file
+     */
+    public ZivaCareConfig(@NonNull final Context context, boolean demo, String accountName) {
         this.demo = demo;
+        this.mCacheName = accountName == null ? CACHE_FILE : CACHE_FILE + "_" + accountName;
+        this.mLoader = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+                load(context);
+            }
+        }, null);
+        ZivaCareExecutors.diskIo().execute(mLoader);
+    }
+
+    /**
+     * Read the config properties and the cached credentials. Values set before
+     * the cache was read win over the cached ones.
+     *
+     * @param context
+     */
+    private void load(Context context) {
+        final long start = System.currentTimeMillis();
         readConfig(context);
 
-        this.cacheFile = new File(context.getCacheDir().getPath() + "/" + "ziva_cache");
-        if (cacheFile != null && cacheFile.exists()) {
-            try {
-                String cacheStr = readCacheFile();
-                if (cacheStr != null && !cacheStr.trim().isEmpty()) {
-                    setAccessTokenFromResponse(cacheStr);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        this.cacheFile = new File(context.getCacheDir().getPath() + "/" + mCacheName);
+        this.mStore = new ZivaCareCredentialStore(cacheFile);
+        final ZivaCareCredentials stored = mStore.load();
+        ZivaCareCredentials current;
+        do {
+            current = mCredentials.get();
+        } while (!mCredentials.compareAndSet(current, stored.update(current)));
+        if (isDebugEnabled()) {
+            Log.d(getClass().getSimpleName(), "config loaded in "
+                    + (System.currentTimeMillis() - start) + " ms");
         }
     }
 
+    /**
+     * Get the refresher of the access token of this config, when it is not the
+     * config of a ZivaCareSDK instance. It is created on first use, with the
+     * instance sending its refresh requests.
+     *
+     * @param sdk
+     * @return ZivaCareTokenRefresher
+     */
+    synchronized ZivaCareTokenRefresher getTokenRefresher(@NonNull ZivaCareSDK sdk) {
+        if (mTokenRefresher == null)
+            mTokenRefresher = new ZivaCareTokenRefresher(sdk, this, ZivaCareExecutors.scheduler());
+        return mTokenRefresher;
+    }
+
+    /**
+     * Check if the config properties and the cached credentials are loaded.
+     * Until they are, every getter waits for them.
+     *
+     * @return boolean
+     */
+    public boolean isLoaded() {
+        return mLoader.isDone();
+    }
+
+    /**
+     * Run a task once the config properties and the cached credentials are
+     * loaded: right away on the calling thread if they already are, else on
+     * {@link ZivaCareExecutors#diskIo()} just after they are read. So the
+     * calling thread, usually the main thread, never waits for the disk.
+     *
+     * @param task
+     */
+    public void whenLoaded(@NonNull Runnable task) {
+        if (mLoader.isDone()) {
+            task.run();
+        } else {
+            // queued after the loader on the single disk thread
+            ZivaCareExecutors.diskIo().execute(task);
+        }
+    }
+
+    /**
+     * Wait until the config properties and the cached credentials are loaded.
+     * Returns right away once they are. On the disk thread, where the loader
+     * may be queued after the caller, the loader is run right away instead.
+     */
+    private void awaitLoaded() {
+        if (!mLoader.isDone() && ZivaCareExecutors.isDiskIoThread())
+            mLoader.run();
+        try {
+            mLoader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(getClass().getSimpleName(), e.toString());
+        }
+    }
+
+    /**
+     * Get the loaded credentials
+     *
+     * @return ZivaCareCredentials, never null
+     */
+    private ZivaCareCredentials credentials() {
+        awaitLoaded();
+        return mCredentials.get();
+    }
+
     /**
      * Get the URL for the developer server.
      *
      * @return
      */
     public String getDevUrl() {
+        awaitLoaded();
         return mDevUrl;
     }
 
@@ -127,39 +237,35 @@ public class ZivaCareConfig {
      * @return
      */
     public String getApiUrl() {
+        awaitLoaded();
         return mApiUrl;
     }
 
     public void clean() {
-        this.accessToken = null;
-        this.clientId = null;
-        this.clientSecret = null;
-        this.clientUserId = null;
-        this.clientUserName = null;
-        this.specialToken = null;
-        this.zivaUserCode = null;
-        System.setProperty(ACCESS_TOKEN, "");
+        awaitLoaded();
+        mCredentials.set(ZivaCareCredentials.EMPTY);
     }
 
     /**
-     * Get the accessToken for the user, if it's not set in the configuration
-     * object, then it will be read from the cache file.<br>
+     * Get the snapshot of all the user credentials currently held by this
+     * configuration.
+     *
+     * @return ZivaCareCredentials, never null
+     */
+    public ZivaCareCredentials getCredentials() {
+        return credentials();
+    }
+
+    /**
+     * Get the accessToken for the user. The value is loaded from the cache file
+     * when the configuration is created and kept up to date on every write.<br>
      * This will be used later on each request.
      *
      * @return String
      */
     public String getAccessToken() {
-        if (accessToken == null
-                && STRING_EMPTY.equals(System.getProperty(ACCESS_TOKEN,
-                STRING_EMPTY))) {
-            try {
-                setAccessTokenFromResponse(readCacheFile());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return demo ? "demo" : (accessToken != null ? accessToken : System
-                .getProperty(ACCESS_TOKEN));
+        final String accessToken = credentials().getAccessToken();
+        return demo ? "demo" : accessToken;
     }
 
     /**
@@ -168,75 +274,48 @@ public class ZivaCareConfig {
      * @return File
      */
     public File getCacheFile() {
+        awaitLoaded();
         return cacheFile;
     }
 
     /**
      * Get the clientId for the user, if it's not set in the configuration
-     * object, then it will be read from the cache file.
+     * object, then the value read from the cache file is returned.
      *
      * @return String
      */
     public String getClientId() {
-        if (clientId == null) {
-            try {
-                setClientIdFromResponse(readCacheFile());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return clientId;
+        return credentials().getClientId();
     }
 
     /**
      * Get the clientSecret for the user, if it's not set in the configuration
-     * object, then it will be read from the cache file.
+     * object, then the value read from the cache file is returned.
      *
      * @return String
      */
     public String getClientSecret() {
-        if (clientSecret == null) {
-            try {
-                setClientSecretFromResponse(readCacheFile());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return clientSecret;
+        return credentials().getClientSecret();
     }
 
     /**
      * Get the clientUserid for the user, if it's not set in the configuration
-     * object, then it will be read from the cache file.
+     * object, then the value read from the cache file is returned.
      *
      * @return String
      */
     public String getClientUserId() {
-        if (clientUserId == null) {
-            try {
-                setClientUserIdFromResponse(readCacheFile());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return clientUserId;
+        return credentials().getClientUserId();
     }
 
     /**
      * Get the clientUserName for the user, if it's not set in the configuration
-     * object, then it will be read from the cache file.
+     * object, then the value read from the cache file is returned.
      *
      * @return String
      */
     public String getClientUserName() {
-        if (clientUserName == null) {
-            try {
-                setClientUserNameFromResponse(readCacheFile());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return clientUserName;
+        return credentials().getClientUserName();
     }
 
     /**
@@ -263,36 +342,22 @@ public class ZivaCareConfig {
 
     /**
      * Get the specialToken for the user, if it's not set in the configuration
-     * object, then it will be read from the cache file.
+     * object, then the value read from the cache file is returned.
      *
      * @return String
      */
     public String getSpecialToken() {
-        if (specialToken == null) {
-            try {
-                setSpecialTokenFromResponse(readCacheFile());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return specialToken;
+        return credentials().getSpecialToken();
     }
 
     /**
      * Get the zivaUserCode for the user, if it's not set in the configuration
-     * object, then it will be read from the cache file.
+     * object, then the value read from the cache file is returned.
      *
      * @return String
      */
     public String getZivaUserCode() {
-        if (zivaUserCode == null) {
-            try {
-                setZivaUserCodeFromResponse(readCacheFile());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return zivaUserCode;
+        return credentials().getZivaUserCode();
     }
 
     public static boolean isDebugEnabled() {
@@ -306,6 +371,7 @@ public class ZivaCareConfig {
      * @throws IOException
      */
     public String readCacheFile() throws IOException {
+        awaitLoaded();
         if (!cacheFile.exists())
             return null;
         String strLine = STRING_EMPTY;
@@ -338,8 +404,7 @@ public class ZivaCareConfig {
      * @param accessTokenStr
      */
     public void setAccessToken(String accessTokenStr) {
-        accessToken = accessTokenStr;
-        System.setProperty(ACCESS_TOKEN, accessTokenStr);
+        setCredential(ACCESS_TOKEN, accessTokenStr);
     }
 
     /**
@@ -349,23 +414,9 @@ public class ZivaCareConfig {
      * @param responseStr
      */
     public void setAccessTokenFromResponse(String responseStr) {
-        if (responseStr == null)
-            return;
-        try {
-            JSONObject json = new JSONObject(responseStr);
-            this.setAccessToken((String) json.get(ZivaCareConfig.ACCESS_TOKEN));
-        } catch (Exception e) {
-            if (isDebugEnabled())
-                System.out.println("json error: " + e.getMessage());
-            int index = responseStr.indexOf(ZivaCareConfig.ACCESS_TOKEN);
-            if (index > -1) {
-                String responseStr1 = responseStr.substring(index
-                        + ZivaCareConfig.ACCESS_TOKEN.length() + 3);
-                responseStr1 = responseStr1.substring(0,
-                        responseStr1.indexOf("\""));
-                this.setAccessToken(responseStr1);
-            }
-        }
+        final String value = ZivaCareCredentials.extractValue(responseStr, ACCESS_TOKEN);
+        if (value != null)
+            this.setAccessToken(value);
     }
 
     /**
@@ -374,7 +425,7 @@ public class ZivaCareConfig {
      * @param clientId
      */
     public void setClientId(String clientId) {
-        this.clientId = clientId;
+        setCredential(CLIENT_ID, clientId);
     }
 
     /**
@@ -384,23 +435,9 @@ public class ZivaCareConfig {
      * @param responseStr
      */
     public void setClientIdFromResponse(String responseStr) {
-        if (responseStr == null)
-            return;
-        try {
-            JSONObject json = new JSONObject(responseStr);
-            this.setClientId((String) json.get(ZivaCareConfig.CLIENT_ID));
-        } catch (Exception e) {
-            if (isDebugEnabled())
-                System.out.println("json error: " + e.getMessage());
-            int index = responseStr.indexOf(ZivaCareConfig.CLIENT_ID);
-            if (index > -1) {
-                String responseStr1 = responseStr.substring(index
-                        + ZivaCareConfig.CLIENT_ID.length() + 3);
-                responseStr1 = responseStr1.substring(0,
-                        responseStr1.indexOf("\""));
-                this.setClientId(responseStr1);
-            }
-        }
+        final String value = ZivaCareCredentials.extractValue(responseStr, CLIENT_ID);
+        if (value != null)
+            this.setClientId(value);
     }
 
     /**
@@ -409,7 +446,7 @@ public class ZivaCareConfig {
      * @param clientSecret
      */
     public void setClientSecret(String clientSecret) {
-        this.clientSecret = clientSecret;
+        setCredential(CLIENT_SECRET, clientSecret);
     }
 
     /**
@@ -419,24 +456,9 @@ public class ZivaCareConfig {
      * @param responseStr
      */
     public void setClientSecretFromResponse(String responseStr) {
-        if (responseStr == null)
-            return;
-        try {
-            JSONObject json = new JSONObject(responseStr);
-            this.setClientSecret((String) json
-                    .get(ZivaCareConfig.CLIENT_SECRET));
-        } catch (Exception e) {
-            if (isDebugEnabled())
-                System.out.println("json error: " + e.getMessage());
-            int index = responseStr.indexOf(ZivaCareConfig.CLIENT_SECRET);
-            if (index > -1) {
-                String responseStr1 = responseStr.substring(index
-                        + ZivaCareConfig.CLIENT_SECRET.length() + 3);
-                responseStr1 = responseStr1.substring(0,
-                        responseStr1.indexOf("\""));
-                this.setClientSecret(responseStr1);
-            }
-        }
+        final String value = ZivaCareCredentials.extractValue(responseStr, CLIENT_SECRET);
+        if (value != null)
+            this.setClientSecret(value);
     }
 
     /**
@@ -445,7 +467,7 @@ public class ZivaCareConfig {
      * @param clientUserId
      */
     public void setClientUserId(String clientUserId) {
-        this.clientUserId = clientUserId;
+        setCredential(CLIENT_USER_ID, clientUserId);
     }
 
     /**
@@ -455,24 +477,9 @@ public class ZivaCareConfig {
      * @param responseStr
      */
     public void setClientUserIdFromResponse(String responseStr) {
-        if (responseStr == null)
-            return;
-        try {
-            JSONObject json = new JSONObject(responseStr);
-            this.setClientUserId((String) json
-                    .get(ZivaCareConfig.CLIENT_USER_ID));
-        } catch (Exception e) {
-            if (isDebugEnabled())
-                System.out.println("json error: " + e.getMessage());
-            int index = responseStr.indexOf(ZivaCareConfig.CLIENT_USER_ID);
-            if (index > -1) {
-                String responseStr1 = responseStr.substring(index
-                        + ZivaCareConfig.CLIENT_USER_ID.length() + 3);
-                responseStr1 = responseStr1.substring(0,
-                        responseStr1.indexOf("\""));
-                this.setClientUserId(responseStr1);
-            }
-        }
+        final String value = ZivaCareCredentials.extractValue(responseStr, CLIENT_USER_ID);
+        if (value != null)
+            this.setClientUserId(value);
     }
 
     /**
@@ -481,7 +488,7 @@ public class ZivaCareConfig {
      * @param clientUserName
      */
     public void setClientUserName(String clientUserName) {
-        this.clientUserName = clientUserName;
+        setCredential(CLIENT_USER_NAME, clientUserName);
     }
 
     /**
@@ -491,24 +498,9 @@ public class ZivaCareConfig {
      * @param responseStr
      */
     public void setClientUserNameFromResponse(String responseStr) {
-        if (responseStr == null)
-            return;
-        try {
-            JSONObject json = new JSONObject(responseStr);
-            this.setClientUserName((String) json
-                    .get(ZivaCareConfig.CLIENT_USER_NAME));
-        } catch (Exception e) {
-            if (isDebugEnabled())
-                System.out.println("json error: " + e.getMessage());
-            int index = responseStr.indexOf(ZivaCareConfig.CLIENT_USER_NAME);
-            if (index > -1) {
-                String responseStr1 = responseStr.substring(index
-                        + ZivaCareConfig.CLIENT_USER_NAME.length() + 3);
-                responseStr1 = responseStr1.substring(0,
-                        responseStr1.indexOf("\""));
-                this.setClientUserName(responseStr1);
-            }
-        }
+        final String value = ZivaCareCredentials.extractValue(responseStr, CLIENT_USER_NAME);
+        if (value != null)
+            this.setClientUserName(value);
     }
 
     public static void setDebugEnabled(boolean enabled) {
@@ -521,7 +513,7 @@ public class ZivaCareConfig {
      * @param specialToken
      */
     public void setSpecialToken(String specialToken) {
-        this.specialToken = specialToken;
+        setCredential(SPECIAL_TOKEN, specialToken);
     }
 
     /**
@@ -531,24 +523,9 @@ public class ZivaCareConfig {
      * @param responseStr
      */
     public void setSpecialTokenFromResponse(String responseStr) {
-        if (responseStr == null)
-            return;
-        try {
-            JSONObject json = new JSONObject(responseStr);
-            this.setSpecialToken((String) json
-                    .get(ZivaCareConfig.SPECIAL_TOKEN));
-        } catch (Exception e) {
-            if (isDebugEnabled())
-                System.out.println("json error: " + e.getMessage());
-            int index = responseStr.indexOf(ZivaCareConfig.SPECIAL_TOKEN);
-            if (index > -1) {
-                String responseStr1 = responseStr.substring(index
-                        + ZivaCareConfig.SPECIAL_TOKEN.length() + 3);
-                responseStr1 = responseStr1.substring(0,
-                        responseStr1.indexOf("\""));
-                this.setSpecialToken(responseStr1);
-            }
-        }
+        final String value = ZivaCareCredentials.extractValue(responseStr, SPECIAL_TOKEN);
+        if (value != null)
+            this.setSpecialToken(value);
     }
 
     /**
@@ -557,39 +534,142 @@ public class ZivaCareConfig {
      * @param zivaUserCode
      */
     public void setZivaUserCode(String zivaUserCode) {
-        this.zivaUserCode = zivaUserCode;
+        setCredential(ZIVA_USER_CODE, zivaUserCode);
     }
 
     /**
-     * Set the zivaUserCode in configuration object and in the cache file from a
-     * Json formated String
+     * Set all the known credential fields in configuration object from a Json
+     * formated String. Fields missing from the response keep their value.
      *
      * @param responseStr
      */
-    private void setZivaUserCodeFromResponse(String responseStr) {
-        if (responseStr == null)
-            return;
-        try {
-            JSONObject json = new JSONObject(responseStr);
-            this.setZivaUserCode((String) json
-                    .get(ZivaCareConfig.ZIVA_USER_CODE));
-        } catch (Exception e) {
-            if (isDebugEnabled())
-                System.out.println("json error: " + e.getMessage());
-            int index = responseStr.indexOf(ZivaCareConfig.ZIVA_USER_CODE);
-            if (index > -1) {
-                String responseStr1 = responseStr.substring(index
-                        + ZivaCareConfig.ZIVA_USER_CODE.length() + 3);
-                responseStr1 = responseStr1.substring(0,
-                        responseStr1.indexOf("\""));
-                this.setZivaUserCode(responseStr1);
-            }
+    public void setCredentialsFromResponse(String responseStr) {
+        updateCredentials(ZivaCareCredentials.fromResponse(responseStr));
+    }
+
+    /**
+     * Set all the known credential fields in configuration object from an
+     * already parsed Json response, in a single pass over the response.
+     * Fields missing from the response keep their value.<br>
+     * If the response has an "expires_in" value, the access token expiry time
+     * is also set.
+     *
+     * @param response
+     */
+    public void setCredentialsFromResponse(JSONObject response) {
+        ZivaCareCredentials changes = ZivaCareCredentials.fromJson(response);
+        final long expiresIn = response != null ? response.optLong(EXPIRES_IN, 0) : 0;
+        if (expiresIn > 0) {
+            changes = changes.withAccessTokenExpiresAt(
+                    mClock.currentTimeMillis() + expiresIn * 1000);
         }
+        updateCredentials(changes);
+    }
+
+    /**
+     * Get the time when the access token expires
+     *
+     * @return time in milliseconds, or 0 if it is not known
+     */
+    public long getAccessTokenExpiresAt() {
+        return credentials().getAccessTokenExpiresAt();
+    }
+
+    /**
+     * Get the refresh token received with the access token
+     *
+     * @return String
+     */
+    public String getRefreshToken() {
+        return credentials().getRefreshToken();
+    }
+
+    /**
+     * Get the clock used to track the access token expiry
+     *
+     * @return ZivaCareClock
+     */
+    public ZivaCareClock getClock() {
+        return mClock;
+    }
+
+    /**
+     * Set the clock used to track the access token expiry
+     *
+     * @param clock
+     */
+    public void setClock(@NonNull ZivaCareClock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Check if the get requests use the demo access token
+     *
+     * @return boolean
+     */
+    public boolean isDemo() {
+        return demo;
+    }
+
+    /**
+     * Save the current credentials to the cache file, replacing the ones
+     * stored before. The file is written on a background thread, use
+     * {@link #flushCache()} to wait for it.
+     */
+    public void saveCredentials() {
+        awaitLoaded();
+        mStore.saveAsync(mCredentials.get());
+    }
+
+    /**
+     * Block until all the pending cache file writes are done.
+     */
+    public void flushCache() {
+        awaitLoaded();
+        mStore.flush();
+    }
+
+    /**
+     * Remove all the credentials stored in the cache file. The values held by
+     * this configuration are not changed, use {@link #clean()} for that.
+     */
+    public void clearCache() {
+        awaitLoaded();
+        mStore.clear();
+    }
+
+    /**
+     * Merge the non null values of the passed snapshot into the credentials
+     * held by this configuration.
+     *
+     * @param changes
+     */
+    private void updateCredentials(ZivaCareCredentials changes) {
+        ZivaCareCredentials current;
+        do {
+            current = mCredentials.get();
+        } while (!mCredentials.compareAndSet(current, current.update(changes)));
+    }
+
+    /**
+     * Change a single credential value
+     *
+     * @param key
+     * @param value
+     */
+    private void setCredential(String key, String value) {
+        ZivaCareCredentials current;
+        do {
+            current = mCredentials.get();
+        } while (!mCredentials.compareAndSet(current, current.with(key, value)));
     }
 
     /**
      * Use this method to write the access token and other important data to the
-     * ZivaCareSDK cache
+     * ZivaCareSDK cache. The credential fields found in the content are stored,
+     * when appending they replace only the values of the same keys.<br>
+     * The file is written on a background thread, use {@link #flushCache()} to
+     * wait for it.
      *
      * @param content
      * @param append
@@ -599,18 +679,11 @@ public class ZivaCareConfig {
             throws IOException {
         if (content == null)
             return;
-        FileWriter writer = null;
-        try {
-            writer = new FileWriter(cacheFile, append);
-            writer.write(content);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (writer != null) {
-                writer.flush();
-                writer.close();
-            }
-        }
+        awaitLoaded();
+        final ZivaCareCredentials written = ZivaCareCredentials.fromResponse(content);
+        // keep the in memory snapshot in sync with what was written
+        updateCredentials(written);
+        mStore.saveAsync(append ? mStore.latest().update(written) : written);
     }
 
     private void readConfig(Context context) {
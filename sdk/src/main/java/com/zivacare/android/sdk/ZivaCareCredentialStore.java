@@ -0,0 +1,262 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Key/value store for the {@link ZivaCareCredentials} of a {@link ZivaCareConfig}.<br>
+ * The cache file holds a single Json object with one current value for every
+ * credential key, so reading it costs the same no matter how many logins were
+ * saved. Every save writes a temporary file and renames it over the cache file,
+ * so a crash never leaves a half written cache behind.<br>
+ * Writes requested with {@link #saveAsync(ZivaCareCredentials)} run on the single
+ * {@link ZivaCareExecutors#diskIo()} thread, bursts of updates are coalesced into one write of
+ * the latest values.
+ *
+ * @author abl
+ */
+public class ZivaCareCredentialStore {
+
+    private static final String LOG_TAG = ZivaCareCredentialStore.class.getSimpleName();
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * Values longer than this are not stored, which keeps the cache file bounded.
+     */
+    public static final int MAX_VALUE_LENGTH = 2048;
+
+    private final File mFile;
+    private ZivaCareCredentials mStored = null;
+
+    private final Object mPendingLock = new Object();
+    private ZivaCareCredentials mPending = null;
+    private boolean mWriteScheduled = false;
+
+    private final Runnable mWriteTask = new Runnable() {
+        @Override
+        public void run() {
+            final ZivaCareCredentials credentials;
+            synchronized (mPendingLock) {
+                credentials = mPending;
+                mPending = null;
+                mWriteScheduled = false;
+            }
+            if (credentials == null)
+                return;
+            try {
+                save(credentials);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, e.toString());
+            }
+        }
+    };
+
+    private final Runnable mClearTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ZivaCareCredentialStore.this) {
+                if (mFile.exists() && !mFile.delete()) {
+                    Log.e(LOG_TAG, "could not delete " + mFile.getPath());
+                }
+            }
+        }
+    };
+
+    public ZivaCareCredentialStore(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * Get the cache file used by this store
+     *
+     * @return File
+     */
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Read the credentials from the cache file. The file is read only once, later
+     * calls return the values that were last loaded or saved.<br>
+     * A cache file written in the old append-only format is compacted on load.
+     *
+     * @return ZivaCareCredentials, never null
+     */
+    public synchronized ZivaCareCredentials load() {
+        if (mStored != null)
+            return mStored;
+        mStored = ZivaCareCredentials.EMPTY;
+        if (!mFile.exists())
+            return mStored;
+        try {
+            final String content = readFile(mFile);
+            mStored = bound(ZivaCareCredentials.fromResponse(content));
+            final String compacted = mStored.toJson().toString();
+            if (!compacted.equals(content.trim())) {
+                writeFile(compacted);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, e.toString());
+        }
+        return mStored;
+    }
+
+    /**
+     * Replace the stored credentials with the passed ones.
+     *
+     * @param credentials
+     * @throws IOException
+     */
+    public synchronized void save(@NonNull ZivaCareCredentials credentials) throws IOException {
+        final ZivaCareCredentials bounded = bound(credentials);
+        if (mStored != null && bounded.toJson().toString()
+                .equals(mStored.toJson().toString())) {
+            return;
+        }
+        writeFile(bounded.toJson().toString());
+        mStored = bounded;
+    }
+
+    /**
+     * Replace the stored credentials with the passed ones on the background
+     * writer thread. If a write is already waiting, only the latest values
+     * are written.
+     *
+     * @param credentials
+     */
+    public void saveAsync(@NonNull ZivaCareCredentials credentials) {
+        synchronized (mPendingLock) {
+            mPending = credentials;
+            if (mWriteScheduled)
+                return;
+            mWriteScheduled = true;
+        }
+        ZivaCareExecutors.diskIo().execute(mWriteTask);
+    }
+
+    /**
+     * Get the latest credentials passed to this store, including the ones that
+     * are still waiting to be written.
+     *
+     * @return ZivaCareCredentials, never null
+     */
+    public ZivaCareCredentials latest() {
+        synchronized (mPendingLock) {
+            if (mPending != null)
+                return mPending;
+        }
+        return load();
+    }
+
+    /**
+     * Remove all the stored credentials and delete the cache file on the
+     * background writer thread. Writes still waiting are dropped.
+     */
+    public void clear() {
+        synchronized (mPendingLock) {
+            mPending = null;
+        }
+        synchronized (this) {
+            mStored = ZivaCareCredentials.EMPTY;
+        }
+        ZivaCareExecutors.diskIo().execute(mClearTask);
+    }
+
+    /**
+     * Block until all the writes requested so far are on disk. Use it before
+     * shutting down or when the cache file has to be read right away.<br>
+     * Called from a task of {@link ZivaCareExecutors#diskIo()}, which can not
+     * wait for the tasks queued after it, the waiting write is made right away
+     * instead.
+     */
+    public void flush() {
+        if (ZivaCareExecutors.isDiskIoThread()) {
+            mWriteTask.run();
+            return;
+        }
+        try {
+            ZivaCareExecutors.diskIo().submit(new Runnable() {
+                @Override
+                public void run() {
+                    // nothing to do, all the tasks before this one are done
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, e.toString());
+        }
+    }
+
+    private void writeFile(String content) throws IOException {
+        final File tempFile = new File(mFile.getPath() + TEMP_SUFFIX);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile, false);
+            out.write(content.getBytes(CHARSET));
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            if (out != null)
+                out.close();
+        }
+        if (!tempFile.renameTo(mFile)) {
+            tempFile.delete();
+            throw new IOException("could not rename " + tempFile.getPath()
+                    + " to " + mFile.getPath());
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(CHARSET);
+        } finally {
+            if (in != null)
+                in.close();
+        }
+    }
+
+    private static ZivaCareCredentials bound(ZivaCareCredentials credentials) {
+        return credentials.withoutValuesLongerThan(MAX_VALUE_LENGTH);
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Immutable snapshot of the user credentials held by a {@link ZivaCareConfig}.<br>
+ * Every change produces a new snapshot, so the getters of {@link ZivaCareConfig}
+ * are plain memory reads and never see a half updated set of values.
+ *
+ * @author abl
+ */
+public final class ZivaCareCredentials {
+
+    private static final int SPECIAL_TOKEN = 0;
+    private static final int CLIENT_SECRET = 1;
+    private static final int CLIENT_ID = 2;
+    private static final int CLIENT_USER_ID = 3;
+    private static final int CLIENT_USER_NAME = 4;
+    private static final int ZIVA_USER_CODE = 5;
+    private static final int ACCESS_TOKEN = 6;
+    private static final int REFRESH_TOKEN = 7;
+    private static final int ACCESS_TOKEN_EXPIRES_AT = 8;
+
+    /**
+     * The known credential keys, indexed by the constants above.
+     */
+    private static final String[] KEYS = new String[]{
+            ZivaCareConfig.SPECIAL_TOKEN,
+            ZivaCareConfig.CLIENT_SECRET,
+            ZivaCareConfig.CLIENT_ID,
+            ZivaCareConfig.CLIENT_USER_ID,
+            ZivaCareConfig.CLIENT_USER_NAME,
+            ZivaCareConfig.ZIVA_USER_CODE,
+            ZivaCareConfig.ACCESS_TOKEN,
+            ZivaCareConfig.REFRESH_TOKEN,
+            ZivaCareConfig.ACCESS_TOKEN_EXPIRES_AT};
+
+    public static final ZivaCareCredentials EMPTY = new ZivaCareCredentials(new String[KEYS.length]);
+
+    private final String[] values;
+
+    private ZivaCareCredentials(String[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Parse all the known credential fields from a Json formated String, like
+     * a server response or the content of the cache file.<br>
+     * The String is read in a single streaming pass. Several Json objects one
+     * after the other are accepted, later values win. If the text is not Json,
+     * it is scanned for the known keys.
+     *
+     * @param responseStr
+     * @return ZivaCareCredentials, never null
+     */
+    public static ZivaCareCredentials fromResponse(String responseStr) {
+        if (responseStr == null || responseStr.trim().isEmpty())
+            return EMPTY;
+        try {
+            return read(new StringReader(responseStr));
+        } catch (IOException e) {
+            ZivaCareLog.debug("json error: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            ZivaCareLog.debug("json error: " + e.getMessage());
+        }
+        final String[] values = new String[KEYS.length];
+        for (int i = 0; i < KEYS.length; i++) {
+            values[i] = extractValue(null, responseStr, KEYS[i]);
+        }
+        return fromValues(values);
+    }
+
+    /**
+     * Read all the known credential fields from a stream of Json objects in a
+     * single pass. Unknown fields are skipped without being parsed.
+     *
+     * @param in
+     * @return ZivaCareCredentials, never null
+     * @throws IOException if the stream is not Json
+     */
+    public static ZivaCareCredentials read(Reader in) throws IOException {
+        final String[] values = new String[KEYS.length];
+        final JsonReader reader = new JsonReader(in);
+        // the old cache file format holds several objects one after the other
+        reader.setLenient(true);
+        try {
+            while (reader.peek() != JsonToken.END_DOCUMENT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    final int index = indexOfKey(reader.nextName());
+                    final JsonToken token = reader.peek();
+                    if (index > -1 && (token == JsonToken.STRING || token == JsonToken.NUMBER)) {
+                        values[index] = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+        } finally {
+            reader.close();
+        }
+        return fromValues(values);
+    }
+
+    /**
+     * Read all the known credential fields from an already parsed Json response.
+     *
+     * @param json
+     * @return ZivaCareCredentials, never null
+     */
+    public static ZivaCareCredentials fromJson(JSONObject json) {
+        if (json == null)
+            return EMPTY;
+        final String[] values = new String[KEYS.length];
+        for (int i = 0; i < KEYS.length; i++) {
+            final Object value = json.opt(KEYS[i]);
+            if (value != null && value != JSONObject.NULL) {
+                values[i] = value.toString();
+            }
+        }
+        return fromValues(values);
+    }
+
+    private static ZivaCareCredentials fromValues(String[] values) {
+        return new ZivaCareCredentials(values);
+    }
+
+    private static int indexOfKey(String key) {
+        for (int i = 0; i < KEYS.length; i++) {
+            if (KEYS[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Read a single String value from a Json formated String. If the Json can
+     * not be parsed or the value is missing, the raw text is scanned for it.
+     *
+     * @param responseStr
+     * @param key
+     * @return String or null if the value was not found
+     */
+    public static String extractValue(String responseStr, String key) {
+        if (responseStr == null)
+            return null;
+        JSONObject json = null;
+        try {
+            json = new JSONObject(responseStr);
+        } catch (Exception e) {
+            ZivaCareLog.debug("json error: " + e.getMessage());
+        }
+        return extractValue(json, responseStr, key);
+    }
+
+    private static String extractValue(JSONObject json, String responseStr, String key) {
+        if (json != null) {
+            Object value = json.opt(key);
+            if (value != null && value != JSONObject.NULL) {
+                return value.toString();
+            }
+        }
+        int index = responseStr.indexOf(key);
+        if (index > -1 && index + key.length() + 3 <= responseStr.length()) {
+            String responseStr1 = responseStr.substring(index + key.length() + 3);
+            int end = responseStr1.indexOf("\"");
+            if (end > -1) {
+                return responseStr1.substring(0, end);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create a new snapshot with the values of this one, overwritten by every
+     * non null value of the passed snapshot.
+     *
+     * @param changes
+     * @return ZivaCareCredentials
+     */
+    public ZivaCareCredentials update(ZivaCareCredentials changes) {
+        if (changes == null || changes == EMPTY)
+            return this;
+        final String[] updated = new String[KEYS.length];
+        for (int i = 0; i < KEYS.length; i++) {
+            updated[i] = changes.values[i] != null ? changes.values[i] : values[i];
+        }
+        return new ZivaCareCredentials(updated);
+    }
+
+    /**
+     * Create a new snapshot without the values longer than the passed length.
+     *
+     * @param maxLength
+     * @return ZivaCareCredentials
+     */
+    public ZivaCareCredentials withoutValuesLongerThan(int maxLength) {
+        final String[] bounded = values.clone();
+        for (int i = 0; i < KEYS.length; i++) {
+            if (bounded[i] != null && bounded[i].length() > maxLength) {
+                bounded[i] = null;
+            }
+        }
+        return new ZivaCareCredentials(bounded);
+    }
+
+    /**
+     * Get the Json representation of this snapshot, holding only the non null
+     * values.
+     *
+     * @return JSONObject
+     */
+    public JSONObject toJson() {
+        final JSONObject json = new JSONObject();
+        try {
+            for (int i = 0; i < KEYS.length; i++) {
+                if (values[i] != null) {
+                    json.put(KEYS[i], values[i]);
+                }
+            }
+        } catch (JSONException e) {
+            ZivaCareLog.debug("json error: " + e.getMessage());
+        }
+        return json;
+    }
+
+    /**
+     * Create a new snapshot with one value changed
+     *
+     * @param key   one of the credential keys of {@link ZivaCareConfig}, like
+     *              {@link ZivaCareConfig#CLIENT_ID}
+     * @param value
+     * @return ZivaCareCredentials
+     */
+    public ZivaCareCredentials with(String key, String value) {
+        final int index = indexOfKey(key);
+        if (index < 0)
+            throw new IllegalArgumentException("unknown credential key: " + key);
+        return with(index, value);
+    }
+
+    private ZivaCareCredentials with(int index, String value) {
+        final String[] changed = values.clone();
+        changed[index] = value;
+        return new ZivaCareCredentials(changed);
+    }
+
+    public ZivaCareCredentials withSpecialToken(String specialToken) {
+        return with(SPECIAL_TOKEN, specialToken);
+    }
+
+    public ZivaCareCredentials withClientSecret(String clientSecret) {
+        return with(CLIENT_SECRET, clientSecret);
+    }
+
+    public ZivaCareCredentials withClientId(String clientId) {
+        return with(CLIENT_ID, clientId);
+    }
+
+    public ZivaCareCredentials withClientUserId(String clientUserId) {
+        return with(CLIENT_USER_ID, clientUserId);
+    }
+
+    public ZivaCareCredentials withClientUserName(String clientUserName) {
+        return with(CLIENT_USER_NAME, clientUserName);
+    }
+
+    public ZivaCareCredentials withZivaUserCode(String zivaUserCode) {
+        return with(ZIVA_USER_CODE, zivaUserCode);
+    }
+
+    public ZivaCareCredentials withAccessToken(String accessToken) {
+        return with(ACCESS_TOKEN, accessToken);
+    }
+
+    public ZivaCareCredentials withRefreshToken(String refreshToken) {
+        return with(REFRESH_TOKEN, refreshToken);
+    }
+
+    /**
+     * @param expiresAt time in milliseconds when the access token expires, 0 if unknown
+     */
+    public ZivaCareCredentials withAccessTokenExpiresAt(long expiresAt) {
+        return with(ACCESS_TOKEN_EXPIRES_AT, expiresAt > 0 ? String.valueOf(expiresAt) : null);
+    }
+
+    public String getSpecialToken() {
+        return values[SPECIAL_TOKEN];
+    }
+
+    public String getClientSecret() {
+        return values[CLIENT_SECRET];
+    }
+
+    public String getClientId() {
+        return values[CLIENT_ID];
+    }
+
+    public String getClientUserId() {
+        return values[CLIENT_USER_ID];
+    }
+
+    public String getClientUserName() {
+        return values[CLIENT_USER_NAME];
+    }
+
+    public String getZivaUserCode() {
+        return values[ZIVA_USER_CODE];
+    }
+
+    public String getAccessToken() {
+        return values[ACCESS_TOKEN];
+    }
+
+    public String getRefreshToken() {
+        return values[REFRESH_TOKEN];
+    }
+
+    /**
+     * Get the time when the access token expires
+     *
+     * @return time in milliseconds, or 0 if it is not known
+     */
+    public long getAccessTokenExpiresAt() {
+        final String expiresAt = values[ACCESS_TOKEN_EXPIRES_AT];
+        if (expiresAt == null)
+            return 0;
+        try {
+            return Long.parseLong(expiresAt);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.android.volley.Cache;
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.NoCache;
+import com.zivacare.android.sdk.network.ZivaCareTransport;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process wide dispatcher of the requests of all the ZivaCareSDK instances.<br>
+ * The requests are split in {@link Lane}s, each with its own Volley request
+ * queue and network threads, so the authorisation requests and the reads are
+ * never stuck behind a backlog of uploads. The instances using equal
+ * transports share the same queues. A queue is stopped, and its threads
+ * released, when it has been idle for a while and it is started again by the
+ * next request.
+ *
+ * @author abl
+ */
+public final class ZivaCareDispatcher {
+
+    private static final String VOLLEY_CACHE_DIR = "volley";
+
+    /**
+     * Concurrency lanes of the requests
+     */
+    public enum Lane {
+        /**
+         * Requests to the developer host: login, token refresh and user
+         * management. Their responses are never cached.
+         */
+        AUTH(2),
+        /**
+         * Reads from the API host
+         */
+        READ(4),
+        /**
+         * Uploads to the API host
+         */
+        WRITE(2);
+
+        private final int mDefaultThreads;
+
+        Lane(int defaultThreads) {
+            mDefaultThreads = defaultThreads;
+        }
+    }
+
+    public static final int DEFAULT_NETWORK_THREADS = Lane.READ.mDefaultThreads;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 60 * 1000;
+    public static final int DEFAULT_CACHE_SIZE = 5 * 1024 * 1024;
+
+    private static final int[] sNetworkThreads = new int[Lane.values().length];
+    private static long sIdleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    private static int sCacheSize = DEFAULT_CACHE_SIZE;
+    private static Cache sCache = null;
+    private static final Map<ZivaCareTransport, Dispatch[]> sQueues =
+            new HashMap<ZivaCareTransport, Dispatch[]>();
+
+    static {
+        for (Lane lane : Lane.values()) {
+            sNetworkThreads[lane.ordinal()] = lane.mDefaultThreads;
+        }
+    }
+
+    private ZivaCareDispatcher() {
+    }
+
+    /**
+     * Set the number of network threads of the reads queue. The queues
+     * already running keep their threads until they are stopped.
+     *
+     * @param networkThreads
+     */
+    public static void setNetworkThreads(int networkThreads) {
+        setNetworkThreads(Lane.READ, networkThreads);
+    }
+
+    /**
+     * Set the number of network threads of a lane. The queues already running
+     * keep their threads until they are stopped.
+     *
+     * @param lane
+     * @param networkThreads
+     */
+    public static synchronized void setNetworkThreads(@NonNull Lane lane, int networkThreads) {
+        if (networkThreads < 1)
+            throw new IllegalArgumentException("networkThreads must be at least 1");
+        sNetworkThreads[lane.ordinal()] = networkThreads;
+    }
+
+    public static synchronized int getNetworkThreads(@NonNull Lane lane) {
+        return sNetworkThreads[lane.ordinal()];
+    }
+
+    /**
+     * Set how long a request queue stays started without any request
+     *
+     * @param idleTimeoutMs
+     */
+    public static synchronized void setIdleTimeout(long idleTimeoutMs) {
+        sIdleTimeoutMs = idleTimeoutMs;
+    }
+
+    private static synchronized long getIdleTimeout() {
+        return sIdleTimeoutMs;
+    }
+
+    /**
+     * Set the size of the disk cache of the responses, the least recently used
+     * responses are removed when it is full. It must be set before the first
+     * request.
+     *
+     * @param maxBytes
+     */
+    public static synchronized void setCacheSize(int maxBytes) {
+        if (sCache != null)
+            throw new IllegalStateException("the cache is already created");
+        sCacheSize = maxBytes;
+    }
+
+    /**
+     * Remove all the cached responses, for example when the user logs out
+     */
+    public static void clearCache() {
+        final Cache cache;
+        synchronized (ZivaCareDispatcher.class) {
+            cache = sCache;
+        }
+        if (cache != null) {
+            ZivaCareExecutors.diskIo().execute(new Runnable() {
+                @Override
+                public void run() {
+                    cache.clear();
+                }
+            });
+        }
+    }
+
+    /**
+     * Add a request to the queue of a transport and lane, starting it if needed
+     *
+     * @param context
+     * @param transport
+     * @param lane
+     * @param request
+     * @return the request
+     */
+    public static synchronized <T> Request<T> add(@NonNull Context context,
+                                                  @NonNull ZivaCareTransport transport,
+                                                  @NonNull Lane lane,
+                                                  @NonNull Request<T> request) {
+        Dispatch[] dispatches = sQueues.get(transport);
+        if (dispatches == null) {
+            dispatches = new Dispatch[Lane.values().length];
+            sQueues.put(transport, dispatches);
+        }
+        Dispatch dispatch = dispatches[lane.ordinal()];
+        if (dispatch == null) {
+            dispatch = new Dispatch(lane == Lane.AUTH ? new NoCache() : getCache(context),
+                    transport, lane);
+            dispatches[lane.ordinal()] = dispatch;
+        }
+        dispatch.add(request, sNetworkThreads[lane.ordinal()]);
+        return request;
+    }
+
+    /**
+     * Cancel all the requests passing the filter, in all the queues
+     *
+     * @param filter
+     */
+    public static synchronized void cancelAll(@NonNull RequestQueue.RequestFilter filter) {
+        for (Dispatch[] dispatches : sQueues.values()) {
+            for (Dispatch dispatch : dispatches) {
+                if (dispatch != null)
+                    dispatch.cancelAll(filter);
+            }
+        }
+    }
+
+    /**
+     * Cancel all the pending requests and stop all the network threads. The
+     * SDK can still be used afterwards, the queues are started again by the
+     * next request.
+     */
+    public static void shutdown() {
+        final List<Dispatch> dispatches = new ArrayList<Dispatch>();
+        synchronized (ZivaCareDispatcher.class) {
+            for (Dispatch[] laneDispatches : sQueues.values()) {
+                for (Dispatch dispatch : laneDispatches) {
+                    if (dispatch != null)
+                        dispatches.add(dispatch);
+                }
+            }
+            sQueues.clear();
+        }
+        // stopped outside of the class lock, Volley calls the finished
+        // listeners while holding its own lock
+        for (Dispatch dispatch : dispatches) {
+            dispatch.shutdown();
+        }
+    }
+
+    /**
+     * Get the number of threads currently started by the SDK: the network
+     * threads and the cache thread of every running queue, plus the threads
+     * of the shared {@link ZivaCareExecutors}. All of them are stopped when
+     * idle.
+     *
+     * @return int
+     */
+    public static int getThreadCount() {
+        int count = ZivaCareExecutors.getThreadCount();
+        synchronized (ZivaCareDispatcher.class) {
+            for (Dispatch[] dispatches : sQueues.values()) {
+                for (Dispatch dispatch : dispatches) {
+                    if (dispatch != null)
+                        count += dispatch.getThreadCount();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the most threads the SDK can start with the current settings, for
+     * every transport in use.
+     *
+     * @return int
+     */
+    public static int getMaxThreadCount() {
+        int perTransport = 0;
+        synchronized (ZivaCareDispatcher.class) {
+            for (Lane lane : Lane.values()) {
+                perTransport += sNetworkThreads[lane.ordinal()] + 1;
+            }
+            return ZivaCareExecutors.getMaxThreadCount()
+                    + perTransport * Math.max(1, sQueues.size());
+        }
+    }
+
+    private static Cache getCache(Context context) {
+        if (sCache == null) {
+            sCache = new DiskBasedCache(new File(context.getApplicationContext().getCacheDir(),
+                    VOLLEY_CACHE_DIR), sCacheSize);
+        }
+        return sCache;
+    }
+
+    /**
+     * The request queue of a transport and lane, started on demand and
+     * stopped when idle.<br>
+     * Its state is guarded by its own lock, never by the class lock: Volley
+     * calls the finished listener while holding its listeners lock, and the
+     * queue is stopped, which takes that same lock, only after releasing ours.
+     */
+    private static class Dispatch {
+        private final Object mLock = new Object();
+        private final Cache mCache;
+        private final ZivaCareTransport mTransport;
+        private final Lane mLane;
+        private RequestQueue mQueue = null;
+        private RequestQueue.RequestFinishedListener<Object> mListener = null;
+        private int mThreads = 0;
+        private int mPending = 0;
+        private ScheduledFuture<?> mIdleStop = null;
+        private int mIdleGeneration = 0;
+
+        Dispatch(Cache cache, ZivaCareTransport transport, Lane lane) {
+            mCache = cache;
+            mTransport = transport;
+            mLane = lane;
+        }
+
+        void add(Request<?> request, int threads) {
+            synchronized (mLock) {
+                if (mIdleStop != null) {
+                    mIdleStop.cancel(false);
+                    mIdleStop = null;
+                    mIdleGeneration++;
+                }
+                if (mQueue == null) {
+                    mThreads = threads;
+                    final RequestQueue queue = new RequestQueue(mCache,
+                            new BasicNetwork(mTransport.createHttpStack()), mThreads,
+                            new ExecutorDelivery(ZivaCareExecutors.immediate()));
+                    // one listener per queue, so the requests finishing on a
+                    // stopped queue are not counted against the new one
+                    mListener = new RequestQueue.RequestFinishedListener<Object>() {
+                        @Override
+                        public void onRequestFinished(Request<Object> request) {
+                            onFinished(queue);
+                        }
+                    };
+                    queue.addRequestFinishedListener(mListener);
+                    queue.start();
+                    mQueue = queue;
+                }
+                mPending++;
+                mQueue.add(request);
+            }
+        }
+
+        void cancelAll(RequestQueue.RequestFilter filter) {
+            synchronized (mLock) {
+                if (mQueue != null)
+                    mQueue.cancelAll(filter);
+            }
+        }
+
+        int getThreadCount() {
+            synchronized (mLock) {
+                return mQueue != null ? mThreads + 1 : 0;
+            }
+        }
+
+        void shutdown() {
+            cancelAll(new RequestQueue.RequestFilter() {
+                @Override
+                public boolean apply(Request<?> request) {
+                    return true;
+                }
+            });
+            final RequestQueue queue;
+            final RequestQueue.RequestFinishedListener<Object> listener;
+            synchronized (mLock) {
+                queue = mQueue;
+                listener = mListener;
+                detach();
+            }
+            stop(queue, listener);
+        }
+
+        /**
+         * Forget the running queue, it must then be stopped outside of the lock
+         */
+        private void detach() {
+            if (mIdleStop != null) {
+                mIdleStop.cancel(false);
+                mIdleStop = null;
+            }
+            mIdleGeneration++;
+            mQueue = null;
+            mListener = null;
+            mPending = 0;
+        }
+
+        private static void stop(RequestQueue queue,
+                                 RequestQueue.RequestFinishedListener<Object> listener) {
+            if (queue != null) {
+                queue.removeRequestFinishedListener(listener);
+                queue.stop();
+            }
+        }
+
+        private void onFinished(RequestQueue queue) {
+            synchronized (mLock) {
+                if (queue != mQueue)
+                    return;
+                mPending = Math.max(0, mPending - 1);
+                if (mPending > 0 || mIdleStop != null)
+                    return;
+                final int generation = ++mIdleGeneration;
+                mIdleStop = ZivaCareExecutors.scheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        stopIfIdle(generation);
+                    }
+                }, getIdleTimeout(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void stopIfIdle(int generation) {
+            final RequestQueue queue;
+            final RequestQueue.RequestFinishedListener<Object> listener;
+            synchronized (mLock) {
+                // a request was added since this stop was scheduled
+                if (generation != mIdleGeneration || mIdleStop == null || mPending > 0)
+                    return;
+                queue = mQueue;
+                listener = mListener;
+                detach();
+            }
+            stop(queue, listener);
+        }
+    }
+}
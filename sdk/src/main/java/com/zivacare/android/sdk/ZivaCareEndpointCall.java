@@ -0,0 +1,328 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.NetworkUtils;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareCompression;
+import com.zivacare.android.sdk.network.ZivaCareGetRequest;
+import com.zivacare.android.sdk.network.ZivaCareJsonRequest;
+import com.zivacare.android.sdk.network.ZivaCarePostRequest;
+import com.zivacare.android.sdk.network.ZivaCareRequest;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+import com.zivacare.android.sdk.network.ZivaCareRetryPolicy;
+
+import org.json.JSONObject;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request to a ZivaCare API endpoint. It waits for a running token refresh
+ * before being sent and, if the access token is rejected, it is sent once
+ * more after the token is refreshed, or right away if another request already
+ * refreshed it. Other failures are retried as decided
+ * by the {@link com.zivacare.android.sdk.network.ZivaCareRetryHandler}.<br>
+ * Several callers can subscribe to the same GET request while it runs, they
+ * all get its result: the same {@link ZivaCareResponse}, holding the same
+ * JSONObject, which they must only read. The request is cancelled when its
+ * last subscriber is.
+ *
+ * @author abl
+ */
+class ZivaCareEndpointCall implements ZivaCareTokenRefresher.Listener {
+
+    private final ZivaCareSDK mSdk;
+    private final String mPath;
+    private final String mKey;
+    private final ZivaCareConfig mCallConfig;
+    private final Map mDataMap;
+    private final boolean mKeepData;
+    private final ZivaCareRetryPolicy mRetryPolicy;
+    private final List<Subscriber> mSubscribers = new ArrayList<Subscriber>();
+    private boolean mFinished = false;
+    private boolean mReplayed = false;
+    private int mRetryCount = 0;
+    private long mRetryDelay = 0;
+    private volatile boolean mCanceled = false;
+    private volatile Request<?> mRequest;
+
+    /**
+     * @param sdk
+     * @param path     endpoint path, without the API URL and the access token
+     * @param key      key of the call among the running calls, or null if it
+     *                 can not be shared
+     * @param config   config holding the access token to use, or null for
+     *                 the config of the ZivaCareSDK instance
+     * @param dataMap  data to POST, or null for a GET request
+     * @param keepData if the response keeps the body as received
+     */
+    ZivaCareEndpointCall(@NonNull ZivaCareSDK sdk, @NonNull String path, String key,
+                         ZivaCareConfig config, Map dataMap, boolean keepData) {
+        mSdk = sdk;
+        mPath = path;
+        mKey = key;
+        mCallConfig = config;
+        mDataMap = dataMap;
+        mKeepData = keepData;
+        mRetryPolicy = sdk.getRetryHandler().getPolicy(ZivaCareEndpoint.getTypeFromUrl(path),
+                dataMap == null ? Request.Method.GET : Request.Method.POST);
+    }
+
+    void start() {
+        mSdk.getTokenRefresher(mCallConfig).whenValid(this);
+    }
+
+    String getKey() {
+        return mKey;
+    }
+
+    /**
+     * Add a caller to the call
+     *
+     * @param tag      tag of the caller, can be null
+     * @param callback callback already bound to its executor
+     * @return the handle of the caller, or null if the call is already finished
+     */
+    ZivaCareCall subscribe(Object tag, @NonNull ZivaCareCallback callback) {
+        synchronized (mSubscribers) {
+            if (mFinished || mCanceled)
+                return null;
+            final Subscriber subscriber = new Subscriber(tag, callback);
+            mSubscribers.add(subscriber);
+            mSdk.register(subscriber);
+            return subscriber;
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        mSdk.unregister(subscriber);
+        synchronized (mSubscribers) {
+            if (!mSubscribers.remove(subscriber) || !mSubscribers.isEmpty() || mFinished)
+                return;
+            mCanceled = true;
+        }
+        mSdk.removeCall(this);
+        final Request<?> request = mRequest;
+        if (request != null)
+            request.cancel();
+    }
+
+    @Override
+    public void onTokenReady(ZivaCareResponse response) {
+        send();
+    }
+
+    @Override
+    public void onTokenError(ZivaCareResponse response) {
+        for (Subscriber subscriber : finish()) {
+            subscriber.mCallback.onError(response);
+        }
+    }
+
+    /**
+     * Mark the call as done, no caller can subscribe to it anymore
+     *
+     * @return the callers to notify
+     */
+    private List<Subscriber> finish() {
+        mSdk.removeCall(this);
+        final List<Subscriber> subscribers;
+        synchronized (mSubscribers) {
+            mFinished = true;
+            subscribers = new ArrayList<Subscriber>(mSubscribers);
+            mSubscribers.clear();
+        }
+        for (Subscriber subscriber : subscribers) {
+            mSdk.unregister(subscriber);
+        }
+        return subscribers;
+    }
+
+    /**
+     * Handle of one caller of the call
+     */
+    private class Subscriber implements ZivaCareCall {
+        private final Object mTag;
+        private final ZivaCareCallback mCallback;
+        private volatile boolean mSubscriberCanceled = false;
+
+        Subscriber(Object tag, ZivaCareCallback callback) {
+            mTag = tag;
+            mCallback = callback;
+        }
+
+        @Override
+        public void cancel() {
+            mSubscriberCanceled = true;
+            unsubscribe(this);
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mSubscriberCanceled;
+        }
+
+        @Override
+        public Object getTag() {
+            return mTag;
+        }
+
+        @Override
+        public String getType() {
+            return ZivaCareEndpoint.getTypeFromUrl(mPath);
+        }
+    }
+
+    private void send() {
+        if (mCanceled)
+            return;
+        final ZivaCareConfig config = mSdk.getConfig();
+        // kept to tell, on a rejection, whether the token was refreshed since
+        final String accessToken = (mCallConfig != null ? mCallConfig : config).getAccessToken();
+        final String url = config.getApiUrl() + mPath
+                + ZivaCareConfig.ACCESS_TOKEN_QUERY_PARAM + accessToken;
+        final Response.ErrorListener errorListener = new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(final VolleyError error) {
+                if (mCanceled)
+                    return;
+                if (mReplayed || !NetworkUtils.isAuthFailure(error)) {
+                    if (!retry(error))
+                        deliverError(error);
+                    return;
+                }
+                mReplayed = true;
+                mSdk.getTokenRefresher(mCallConfig).onTokenRejected(accessToken,
+                        new ZivaCareTokenRefresher.Listener() {
+                            @Override
+                            public void onTokenReady(ZivaCareResponse response) {
+                                send();
+                            }
+
+                            @Override
+                            public void onTokenError(ZivaCareResponse response) {
+                                deliverError(error);
+                            }
+                        });
+            }
+        };
+
+        final Response.Listener<JSONObject> listener = new Response.Listener<JSONObject>() {
+            @Override
+            public void onResponse(JSONObject response) {
+                mSdk.getRetryHandler().onSuccess();
+                // hand over the parsed tree only, no String copy is made; the
+                // subscribers share it, a copy each would cost as much as
+                // the parse
+                final ZivaCareRequest request = (ZivaCareRequest) mRequest;
+                final ZivaCareResponse zivaResponse = new ZivaCareResponse(200, response,
+                        request.getResponseLength(), request.getResponseData());
+                for (Subscriber subscriber : finish()) {
+                    subscriber.mCallback.onSuccess(zivaResponse);
+                }
+            }
+        };
+
+        final String type = ZivaCareEndpoint.getTypeFromUrl(mPath);
+        final ZivaCareCompression compression = mSdk.getCompression();
+        final ZivaCareJsonRequest request;
+        if (mDataMap == null) {
+            final ZivaCareGetRequest getRequest = new ZivaCareGetRequest(url, listener,
+                    errorListener);
+            // reads are shown to the user, they go first
+            getRequest.setPriority(Request.Priority.HIGH);
+            // the cache key holds the user, not the access token, so the cached
+            // responses outlive the token refreshes
+            if (mKey != null)
+                getRequest.setCacheKey(config.getApiUrl() + mKey);
+            getRequest.setCacheFreshness(mSdk.getCachePolicy().getFreshness(type));
+            request = getRequest;
+        } else {
+            final ZivaCarePostRequest postRequest = new ZivaCarePostRequest(url, listener,
+                    errorListener, mDataMap);
+            postRequest.setPriority(Request.Priority.LOW);
+            postRequest.setGzipBody(compression.isGzipRequests(getHost(url)));
+            request = postRequest;
+        }
+        request.setCompression(compression, type);
+        request.setKeepData(mKeepData);
+        // the retries are made by the retry handler, not by Volley
+        request.setRetryPolicy(new DefaultRetryPolicy(mRetryPolicy.getTimeoutMs(), 0, 1f));
+        mRequest = request;
+        mSdk.enqueue(request, mDataMap == null
+                ? ZivaCareDispatcher.Lane.READ : ZivaCareDispatcher.Lane.WRITE);
+        // cancelled while the request was being built
+        if (mCanceled)
+            request.cancel();
+    }
+
+    private static String getHost(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    private void deliverError(VolleyError error) {
+        for (Subscriber subscriber : finish()) {
+            NetworkUtils.getDefaultErrorHandler(subscriber.mCallback).onErrorResponse(error);
+        }
+    }
+
+    /**
+     * Schedule the request to be sent again
+     *
+     * @param error
+     * @return false if the request must not be retried
+     */
+    private boolean retry(VolleyError error) {
+        final long delay = mSdk.getRetryHandler().getRetryDelay(mRetryPolicy, mRetryCount,
+                mRetryDelay, error);
+        if (delay < 0)
+            return false;
+        mRetryCount++;
+        mRetryDelay = delay;
+        ZivaCareLog.debug("retry " + mRetryCount + " of " + mPath + " in " + delay + "ms");
+        ZivaCareExecutors.scheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                send();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        return true;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background executors shared by all the ZivaCareSDK instances.<br>
+ * The threads are daemon threads, they are all stopped when they are idle.
+ *
+ * @author abl
+ */
+public final class ZivaCareExecutors {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Set on the disk thread, its tasks must not wait for the tasks queued
+     * after them
+     */
+    private static final ThreadLocal<Boolean> ON_DISK_IO = new ThreadLocal<Boolean>();
+
+    private static final ThreadPoolExecutor DISK_IO = newDiskIoExecutor();
+    private static final int NETWORK_THREADS = 2;
+
+    private static final ThreadPoolExecutor NETWORK = newFixedThreadExecutor(
+            "ZivaCare-network", NETWORK_THREADS);
+    private static final ScheduledThreadPoolExecutor SCHEDULER = newScheduledExecutor(
+            "ZivaCare-scheduler");
+
+    private static final Executor IMMEDIATE = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private static Executor sMainThread = null;
+
+    private ZivaCareExecutors() {
+    }
+
+    /**
+     * Get the executor running the tasks on the main thread of the app
+     *
+     * @return Executor
+     */
+    public static synchronized Executor mainThread() {
+        if (sMainThread == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            sMainThread = new Executor() {
+                @Override
+                public void execute(@NonNull Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return sMainThread;
+    }
+
+    /**
+     * Get the executor running the tasks right away on the calling thread. As
+     * a callback executor, the callbacks run on the network thread that
+     * parsed the response, they must not block.
+     *
+     * @return Executor
+     */
+    public static Executor immediate() {
+        return IMMEDIATE;
+    }
+
+    /**
+     * Get the executor used for all the SDK file I/O. It runs a single thread,
+     * so the tasks run one at a time in the order they were submitted.
+     *
+     * @return ExecutorService
+     */
+    public static ExecutorService diskIo() {
+        return DISK_IO;
+    }
+
+    /**
+     * Tell if the calling thread is the thread of {@link #diskIo()}. A task of
+     * that thread waiting for another task of it never returns.
+     *
+     * @return boolean
+     */
+    public static boolean isDiskIoThread() {
+        return ON_DISK_IO.get() != null;
+    }
+
+    /**
+     * Get the executor used for the requests made outside of the Volley request
+     * queue, like the streamed endpoint calls.
+     *
+     * @return ExecutorService
+     */
+    public static ExecutorService network() {
+        return NETWORK;
+    }
+
+    /**
+     * Get the executor used for the SDK delayed tasks, like the access token
+     * refresh. The tasks must be short, they share a single thread.
+     *
+     * @return ScheduledExecutorService
+     */
+    public static ScheduledExecutorService scheduler() {
+        return SCHEDULER;
+    }
+
+    /**
+     * Get the number of threads currently started by the shared executors
+     *
+     * @return int
+     */
+    public static int getThreadCount() {
+        return DISK_IO.getPoolSize() + NETWORK.getPoolSize() + SCHEDULER.getPoolSize();
+    }
+
+    /**
+     * Get the most threads the shared executors can start
+     *
+     * @return int
+     */
+    public static int getMaxThreadCount() {
+        return DISK_IO.getMaximumPoolSize() + NETWORK.getMaximumPoolSize()
+                + SCHEDULER.getCorePoolSize();
+    }
+
+    private static ThreadPoolExecutor newDiskIoExecutor() {
+        final ThreadPoolExecutor executor = newSingleThreadExecutor("ZivaCare-disk-io");
+        final ThreadFactory threadFactory = executor.getThreadFactory();
+        executor.setThreadFactory(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable r) {
+                return threadFactory.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        ON_DISK_IO.set(Boolean.TRUE);
+                        r.run();
+                    }
+                });
+            }
+        });
+        return executor;
+    }
+
+    private static ScheduledThreadPoolExecutor newScheduledExecutor(@NonNull String name) {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                1, newThreadFactory(name));
+        executor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        // the thread waits for the next delayed task, it is stopped only when
+        // there is none
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Create a single thread executor with a named daemon thread that is
+     * stopped after being idle for a while.
+     *
+     * @param name
+     * @return ThreadPoolExecutor
+     */
+    public static ThreadPoolExecutor newSingleThreadExecutor(@NonNull String name) {
+        return newFixedThreadExecutor(name, 1);
+    }
+
+    /**
+     * Create an executor with a fixed number of named daemon threads that are
+     * stopped after being idle for a while.
+     *
+     * @param name
+     * @param threads
+     * @return ThreadPoolExecutor
+     */
+    public static ThreadPoolExecutor newFixedThreadExecutor(@NonNull String name, int threads) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), newThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Create a factory for named daemon threads
+     *
+     * @param name
+     * @return ThreadFactory
+     */
+    public static ThreadFactory newThreadFactory(@NonNull final String name) {
+        return new ThreadFactory() {
+            private int mCount = 0;
+
+            @Override
+            public synchronized Thread newThread(@NonNull Runnable r) {
+                final Thread thread = new Thread(r, name + "-" + (++mCount));
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Set of closed intervals of whole numbers, like the days already fetched of
+ * an endpoint type. Overlapping and adjacent intervals are merged, so the set
+ * holds as few intervals as possible. Not thread safe.
+ *
+ * @author abl
+ */
+public class ZivaCareIntervalSet {
+
+    /**
+     * Intervals by start, mapped to their end
+     */
+    private final TreeMap<Long, Long> mIntervals = new TreeMap<Long, Long>();
+
+    /**
+     * Add the interval [from, to]
+     *
+     * @param from
+     * @param to   included
+     */
+    public void add(long from, long to) {
+        if (to < from)
+            return;
+        long start = from;
+        long end = to;
+        // an interval starting before, that touches the new one
+        final Map.Entry<Long, Long> before = mIntervals.floorEntry(from);
+        if (before != null && before.getValue() >= from - 1) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+            mIntervals.remove(before.getKey());
+        }
+        // the intervals starting inside or just after the new one
+        Map.Entry<Long, Long> after = mIntervals.ceilingEntry(start);
+        while (after != null && after.getKey() <= end + 1) {
+            end = Math.max(end, after.getValue());
+            mIntervals.remove(after.getKey());
+            after = mIntervals.ceilingEntry(start);
+        }
+        mIntervals.put(start, end);
+    }
+
+    /**
+     * Check if a value is in the set
+     *
+     * @param value
+     * @return boolean
+     */
+    public boolean contains(long value) {
+        final Map.Entry<Long, Long> interval = mIntervals.floorEntry(value);
+        return interval != null && interval.getValue() >= value;
+    }
+
+    /**
+     * Get the parts of [from, to] that are not in the set
+     *
+     * @param from
+     * @param to   included
+     * @return the gaps as {from, to} pairs, in order
+     */
+    public List<long[]> getGaps(long from, long to) {
+        final List<long[]> gaps = new ArrayList<long[]>();
+        long next = from;
+        final Map.Entry<Long, Long> before = mIntervals.floorEntry(from);
+        if (before != null && before.getValue() >= from)
+            next = before.getValue() + 1;
+        for (Map.Entry<Long, Long> interval : mIntervals.tailMap(from, false).entrySet()) {
+            if (next > to || interval.getKey() > to)
+                break;
+            if (interval.getKey() > next)
+                gaps.add(new long[]{next, interval.getKey() - 1});
+            next = Math.max(next, interval.getValue() + 1);
+        }
+        if (next <= to)
+            gaps.add(new long[]{next, to});
+        return gaps;
+    }
+
+    /**
+     * Get the intervals of the set
+     *
+     * @return the intervals as {from, to} pairs, in order
+     */
+    public List<long[]> getIntervals() {
+        final List<long[]> intervals = new ArrayList<long[]>(mIntervals.size());
+        for (Map.Entry<Long, Long> interval : mIntervals.entrySet()) {
+            intervals.add(new long[]{interval.getKey(), interval.getValue()});
+        }
+        return intervals;
+    }
+
+    public boolean isEmpty() {
+        return mIntervals.isEmpty();
+    }
+
+    public void clear() {
+        mIntervals.clear();
+    }
+
+    /**
+     * Write the set as text, like "16200/16230,16240/16241"
+     *
+     * @return String
+     */
+    public String encode() {
+        final StringBuilder text = new StringBuilder();
+        for (Map.Entry<Long, Long> interval : mIntervals.entrySet()) {
+            if (text.length() > 0)
+                text.append(',');
+            text.append(interval.getKey()).append('/').append(interval.getValue());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Read a set written by {@link #encode()}
+     *
+     * @param text
+     * @return ZivaCareIntervalSet, empty if the text can not be read
+     */
+    public static ZivaCareIntervalSet decode(String text) {
+        final ZivaCareIntervalSet set = new ZivaCareIntervalSet();
+        if (text == null || text.length() == 0)
+            return set;
+        try {
+            for (String interval : text.split(",")) {
+                final int slash = interval.indexOf('/');
+                set.add(Long.parseLong(interval.substring(0, slash)),
+                        Long.parseLong(interval.substring(slash + 1)));
+            }
+        } catch (RuntimeException e) {
+            ZivaCareLog.debug("interval set error: " + e.getMessage());
+            set.clear();
+        }
+        return set;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Local copy of the endpoint records, kept up to date by {@link ZivaCareSync}.
+ *
+ * @author abl
+ */
+public interface ZivaCareLocalStore {
+
+    /**
+     * Add records to the local copy, replacing the records it already holds:
+     * the same records are merged again by every sync, see
+     * {@link ZivaCareSync#setOverlap(long)}. Called on a background thread,
+     * with the records of one response in batches.
+     *
+     * @param userKey key of the user the records belong to
+     * @param type    one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @param records the records, as received
+     */
+    void merge(String userKey, String type, List<JSONObject> records);
+}
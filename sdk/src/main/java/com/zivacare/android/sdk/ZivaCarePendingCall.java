@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+/**
+ * Handle of a call started once its config is loaded, see
+ * {@link ZivaCareConfig#whenLoaded(Runnable)}. Cancelling it before the call
+ * starts keeps it from starting.
+ *
+ * @author abl
+ */
+class ZivaCarePendingCall implements ZivaCareCall {
+
+    private final Object mTag;
+    private final String mType;
+    private ZivaCareCall mCall = null;
+    private volatile boolean mCanceled = false;
+
+    ZivaCarePendingCall(Object tag, String type) {
+        mTag = tag;
+        mType = type;
+    }
+
+    /**
+     * Set the started call, it is cancelled right away if this handle already is
+     *
+     * @param call
+     */
+    void setCall(ZivaCareCall call) {
+        synchronized (this) {
+            if (!mCanceled) {
+                mCall = call;
+                return;
+            }
+        }
+        call.cancel();
+    }
+
+    @Override
+    public void cancel() {
+        final ZivaCareCall call;
+        synchronized (this) {
+            mCanceled = true;
+            call = mCall;
+        }
+        if (call != null)
+            call.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    @Override
+    public Object getTag() {
+        return mTag;
+    }
+
+    @Override
+    public String getType() {
+        return mType;
+    }
+}
@@ -0,0 +1,746 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareRecordCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache of the records of a day or a period, that only downloads
+ * the days it does not hold yet.<br>
+ * For every user and endpoint type a {@link ZivaCareIntervalSet} tells which
+ * days were already fetched. A request streams only the gaps, the days being
+ * fetched by another request are waited for, and the records of all the days
+ * are then stitched together. The {@code getByDate} calls made within a few
+ * milliseconds of each other are answered with as few range requests as
+ * possible, a week of days shown one after the other costs one request.<br>
+ * Today and the future days are never cached, they are fetched every time.
+ * The records without a record time belong to no day, they are kept apart
+ * and delivered with every request of their user and type.<br>
+ * Every range is fetched with a day of margin on both sides, the server may
+ * group the records by days of another time zone; the records of the margin
+ * days are not kept for them, those days are only complete once fetched
+ * themselves.<br>
+ * The records are held in memory, up to {@link #setMaxRecords(int)}; with a
+ * {@link ZivaCareSqliteStore} they are also kept on disk, and so are the
+ * fetched days, so they survive the memory limit and the app restarts. The
+ * disk is only read and written on {@link ZivaCareExecutors#diskIo()}.
+ *
+ * @author abl
+ */
+public class ZivaCareRangeCache {
+
+    private static final String PREFERENCES = "ziva_ranges";
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long NOON_MS = TimeUnit.HOURS.toMillis(12);
+    private static final int DEFAULT_MAX_RECORDS = 200000;
+    private static final long DEFAULT_BATCH_DELAY_MS = 30;
+    private static final int BATCH_SIZE = 500;
+    private static final int VERSION = 1;
+    private static final String ID = "id";
+
+    private final ZivaCareSDK mSdk;
+    private final ZivaCareSqliteStore mDiskStore;
+    private final SharedPreferences mRanges;
+    /**
+     * Cached days by user and type, the least recently used first
+     */
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private int mRecordCount = 0;
+    private int mMaxRecords = DEFAULT_MAX_RECORDS;
+    private long mBatchDelayMs = DEFAULT_BATCH_DELAY_MS;
+    private int mFetchCount = 0;
+
+    /**
+     * Days of a user and type
+     */
+    private class Entry {
+        private final String mKey;
+        private final String mUserKey;
+        private final String mType;
+        private final ZivaCareConfig mConfig;
+        private final ZivaCareIntervalSet mFetched;
+        /**
+         * Days whose records are written to the disk store
+         */
+        private final ZivaCareIntervalSet mStored;
+        /**
+         * Records of the fetched days held in memory, by day
+         */
+        private final TreeMap<Long, List<JSONObject>> mDays = new TreeMap<Long, List<JSONObject>>();
+        /**
+         * Records without a record time held in memory, by record id
+         */
+        private final LinkedHashMap<String, JSONObject> mUntimed =
+                new LinkedHashMap<String, JSONObject>();
+        private final List<Fetch> mFetches = new ArrayList<Fetch>();
+        private final List<Request> mBatch = new ArrayList<Request>();
+        private boolean mBatchScheduled = false;
+        /**
+         * If the fetched days saved on disk are read, on the disk thread
+         */
+        private boolean mRangesLoaded;
+        /**
+         * If mUntimed holds the records of the disk store too
+         */
+        private boolean mUntimedLoaded;
+        /**
+         * Requests not answered yet, their days are kept in memory
+         */
+        private int mActive = 0;
+
+        Entry(String key, String userKey, String type, ZivaCareConfig config) {
+            mKey = key;
+            mUserKey = userKey;
+            mType = type;
+            mConfig = config;
+            mFetched = new ZivaCareIntervalSet();
+            mStored = new ZivaCareIntervalSet();
+            mRangesLoaded = mRanges == null;
+            mUntimedLoaded = mDiskStore == null;
+        }
+    }
+
+    /**
+     * Days asked by a caller
+     */
+    private class Request {
+        private final Entry mEntry;
+        private final long mFirstDay;
+        private final long mLastDay;
+        private final ZivaCareCallback mCallback;
+        private int mWaiting = 0;
+        private boolean mDone = false;
+
+        Request(Entry entry, long firstDay, long lastDay, ZivaCareCallback callback) {
+            mEntry = entry;
+            mFirstDay = firstDay;
+            mLastDay = lastDay;
+            mCallback = callback;
+        }
+    }
+
+    /**
+     * Download of a range of days missing from the cache
+     */
+    private class Fetch implements ZivaCareRecordCallback {
+        private final Entry mEntry;
+        private final long mFirstDay;
+        private final long mLastDay;
+        private final List<Request> mRequests = new ArrayList<Request>();
+        private final TreeMap<Long, List<JSONObject>> mDays = new TreeMap<Long, List<JSONObject>>();
+        private final List<JSONObject> mUntimed = new ArrayList<JSONObject>();
+        private final List<JSONObject> mRecords = new ArrayList<JSONObject>();
+
+        Fetch(Entry entry, long firstDay, long lastDay) {
+            mEntry = entry;
+            mFirstDay = firstDay;
+            mLastDay = lastDay;
+        }
+
+        boolean overlaps(long firstDay, long lastDay) {
+            return mFirstDay <= lastDay && firstDay <= mLastDay;
+        }
+
+        void start() {
+            // a day of margin on both sides, the server days may not be ours
+            ZivaCareEndpoint.create(mSdk, mEntry.mConfig, mEntry.mType).streamByPeriod(VERSION,
+                    getDate(mFirstDay - 1), getDate(mLastDay + 1), BATCH_SIZE, this);
+        }
+
+        @Override
+        public void onRecords(String name, List<JSONObject> records) {
+            for (JSONObject record : records) {
+                final long recordTime = ZivaCareEndpoint.parseRecordTime(
+                        record.optString(ZivaCareEndpoint.RECORD_TIME, null));
+                if (recordTime < 0) {
+                    mUntimed.add(record);
+                    continue;
+                }
+                final long day = getDay(recordTime);
+                // the margin days are incomplete, they only go to the disk
+                // store, which replaces the records it already holds
+                if (day < mFirstDay || day > mLastDay)
+                    continue;
+                List<JSONObject> dayRecords = mDays.get(day);
+                if (dayRecords == null) {
+                    dayRecords = new ArrayList<JSONObject>();
+                    mDays.put(day, dayRecords);
+                }
+                dayRecords.add(record);
+            }
+            mRecords.addAll(records);
+        }
+
+        @Override
+        public void onSuccess(ZivaCareResponse response) {
+            onFetched(this, null);
+        }
+
+        @Override
+        public void onError(ZivaCareResponse response) {
+            onFetched(this, response);
+        }
+    }
+
+    /**
+     * @param sdk
+     * @param diskStore store keeping the records on disk, or null to keep them
+     *                  in memory only
+     */
+    public ZivaCareRangeCache(@NonNull ZivaCareSDK sdk, ZivaCareSqliteStore diskStore) {
+        mSdk = sdk;
+        mDiskStore = diskStore;
+        mRanges = diskStore != null
+                ? sdk.getContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE)
+                : null;
+    }
+
+    /**
+     * Set the most records held in memory, the least recently used users and
+     * types are dropped first
+     *
+     * @param maxRecords
+     */
+    public synchronized void setMaxRecords(int maxRecords) {
+        mMaxRecords = maxRecords;
+        trim();
+    }
+
+    /**
+     * Set how long a {@code getByDate} call waits for the next ones, to fetch
+     * their days in one request
+     *
+     * @param delayMs time in milliseconds, 0 to fetch right away
+     */
+    public synchronized void setBatchDelay(long delayMs) {
+        mBatchDelayMs = delayMs;
+    }
+
+    /**
+     * Get the number of range requests sent so far
+     *
+     * @return int
+     */
+    public synchronized int getFetchCount() {
+        return mFetchCount;
+    }
+
+    /**
+     * Get the records of a day. The days fetched in the meantime are served
+     * from the cache. The records are delivered on the callback executor as a
+     * Json array under the name of the type.
+     *
+     * @param config   config of the user, or null for the config of the
+     *                 ZivaCareSDK instance
+     * @param type     one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @param date
+     * @param callback
+     */
+    public void getByDate(ZivaCareConfig config, @NonNull String type, @NonNull Date date,
+                          @NonNull ZivaCareCallback callback) {
+        final long day = getDay(date.getTime());
+        get(config, type, day, day, callback, true);
+    }
+
+    /**
+     * Get the records of a period, only the days missing from the cache are
+     * fetched. The records are delivered on the callback executor as a Json
+     * array under the name of the type.
+     *
+     * @param config    config of the user, or null for the config of the
+     *                  ZivaCareSDK instance
+     * @param type      one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @param startDate first day of the period
+     * @param endDate   last day of the period
+     * @param callback
+     */
+    public void getByPeriod(ZivaCareConfig config, @NonNull String type, @NonNull Date startDate,
+                            @NonNull Date endDate, @NonNull ZivaCareCallback callback) {
+        final long firstDay = getDay(startDate.getTime());
+        final long lastDay = getDay(endDate.getTime());
+        get(config, type, Math.min(firstDay, lastDay), Math.max(firstDay, lastDay), callback,
+                false);
+    }
+
+    /**
+     * Forget the cached days of a user, they are fetched again. The records
+     * of the user in the disk store are deleted too, see
+     * {@link ZivaCareSqliteStore#clear(ZivaCareConfig)}: the high-water marks
+     * of a {@link ZivaCareSync} sharing the store are not reset.
+     *
+     * @param config config of the user, or null for the config of the
+     *               ZivaCareSDK instance
+     */
+    public synchronized void clear(final ZivaCareConfig config) {
+        final String prefix = mSdk.getUserKey(config) + "|";
+        final Iterator<Entry> entries = mEntries.values().iterator();
+        while (entries.hasNext()) {
+            final Entry entry = entries.next();
+            if (entry.mKey.startsWith(prefix) && entry.mActive == 0 && entry.mFetches.isEmpty()) {
+                mRecordCount -= countRecords(entry);
+                entries.remove();
+            }
+        }
+        if (mRanges != null) {
+            // the preferences are only read on the disk thread
+            ZivaCareExecutors.diskIo().execute(new Runnable() {
+                @Override
+                public void run() {
+                    final SharedPreferences.Editor editor = mRanges.edit();
+                    for (String key : mRanges.getAll().keySet()) {
+                        if (key.startsWith(prefix))
+                            editor.remove(key);
+                    }
+                    editor.apply();
+                }
+            });
+        }
+        if (mDiskStore != null) {
+            // after the writes already queued
+            mDiskStore.clear(config);
+        }
+    }
+
+    private void get(final ZivaCareConfig config, final String type, final long firstDay,
+                     final long lastDay, final ZivaCareCallback callback, final boolean batched) {
+        if (!mSdk.isLoaded(config)) {
+            // the user key is read once the configs are loaded
+            mSdk.whenLoaded(config, new Runnable() {
+                @Override
+                public void run() {
+                    get(config, type, firstDay, lastDay, callback, batched);
+                }
+            });
+            return;
+        }
+        final ZivaCareCallback delivered = mSdk.deliver(callback);
+        final Request request;
+        synchronized (this) {
+            final Entry entry = getEntry(config, type);
+            if (!entry.mRangesLoaded) {
+                ZivaCareExecutors.diskIo().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        loadRanges(entry);
+                        get(config, type, firstDay, lastDay, callback, batched);
+                    }
+                });
+                return;
+            }
+            request = new Request(entry, firstDay, lastDay, delivered);
+            entry.mActive++;
+            if (batched && mBatchDelayMs > 0) {
+                entry.mBatch.add(request);
+                if (!entry.mBatchScheduled) {
+                    entry.mBatchScheduled = true;
+                    ZivaCareExecutors.scheduler().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            flush(entry);
+                        }
+                    }, mBatchDelayMs, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+        process(Collections.singletonList(request));
+    }
+
+    private synchronized Entry getEntry(ZivaCareConfig config, String type) {
+        final String userKey = mSdk.getUserKey(config);
+        final String key = userKey + "|" + type;
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, userKey, type, config);
+            mEntries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Read the days of an entry fetched before the app restart, on the disk
+     * thread
+     */
+    private void loadRanges(Entry entry) {
+        final ZivaCareIntervalSet fetched =
+                ZivaCareIntervalSet.decode(mRanges.getString(entry.mKey, null));
+        synchronized (this) {
+            if (entry.mRangesLoaded)
+                return;
+            for (long[] range : fetched.getIntervals()) {
+                entry.mFetched.add(range[0], range[1]);
+                entry.mStored.add(range[0], range[1]);
+            }
+            entry.mRangesLoaded = true;
+        }
+    }
+
+    private void flush(Entry entry) {
+        final List<Request> batch;
+        synchronized (this) {
+            batch = new ArrayList<Request>(entry.mBatch);
+            entry.mBatch.clear();
+            entry.mBatchScheduled = false;
+        }
+        process(batch);
+    }
+
+    /**
+     * Answer requests of the same user and type: join the running fetches of
+     * their days, fetch the days missing, in as few ranges as possible, and
+     * deliver the requests whose days are all there
+     */
+    private void process(List<Request> requests) {
+        final Entry entry = requests.get(0).mEntry;
+        final long today = getDay(System.currentTimeMillis());
+        final List<Fetch> started = new ArrayList<Fetch>();
+        final List<Request> ready = new ArrayList<Request>();
+        synchronized (this) {
+            // the days no running fetch will bring, over all the requests
+            final ZivaCareIntervalSet missing = new ZivaCareIntervalSet();
+            for (Request request : requests) {
+                for (long[] gap : getMissing(entry, request.mFirstDay, request.mLastDay, today)) {
+                    for (long[] rest : subtractFetches(entry, gap[0], gap[1])) {
+                        missing.add(rest[0], rest[1]);
+                    }
+                }
+            }
+            for (long[] range : missing.getIntervals()) {
+                final Fetch fetch = new Fetch(entry, range[0], range[1]);
+                entry.mFetches.add(fetch);
+                started.add(fetch);
+                mFetchCount++;
+            }
+            for (Request request : requests) {
+                for (Fetch fetch : entry.mFetches) {
+                    if (fetch.overlaps(request.mFirstDay, request.mLastDay)) {
+                        fetch.mRequests.add(request);
+                        request.mWaiting++;
+                    }
+                }
+                if (request.mWaiting == 0)
+                    ready.add(request);
+            }
+        }
+        for (Request request : ready) {
+            deliver(request);
+        }
+        for (Fetch fetch : started) {
+            fetch.start();
+        }
+    }
+
+    /**
+     * Get the days of [firstDay, lastDay] that are not cached, today and the
+     * future days are never cached
+     */
+    private static List<long[]> getMissing(Entry entry, long firstDay, long lastDay, long today) {
+        final List<long[]> missing = entry.mFetched.getGaps(firstDay, Math.min(lastDay, today - 1));
+        if (lastDay >= today)
+            missing.add(new long[]{Math.max(firstDay, today), lastDay});
+        return missing;
+    }
+
+    /**
+     * Get the days of [firstDay, lastDay] that no running fetch brings
+     */
+    private static List<long[]> subtractFetches(Entry entry, long firstDay, long lastDay) {
+        final ZivaCareIntervalSet running = new ZivaCareIntervalSet();
+        for (Fetch fetch : entry.mFetches) {
+            running.add(fetch.mFirstDay, fetch.mLastDay);
+        }
+        return running.getGaps(firstDay, lastDay);
+    }
+
+    private void onFetched(Fetch fetch, ZivaCareResponse error) {
+        final Entry entry = fetch.mEntry;
+        final List<Request> ready = new ArrayList<Request>();
+        final List<Request> failed = new ArrayList<Request>();
+        synchronized (this) {
+            entry.mFetches.remove(fetch);
+            if (error == null) {
+                for (long day = fetch.mFirstDay; day <= fetch.mLastDay; day++) {
+                    final List<JSONObject> records = fetch.mDays.get(day);
+                    putDay(entry, day, records != null ? records : new ArrayList<JSONObject>());
+                }
+                putUntimed(entry, fetch.mUntimed);
+                final long lastCached = Math.min(fetch.mLastDay,
+                        getDay(System.currentTimeMillis()) - 1);
+                if (lastCached >= fetch.mFirstDay)
+                    entry.mFetched.add(fetch.mFirstDay, lastCached);
+                if (mDiskStore != null)
+                    store(fetch, lastCached);
+            }
+            for (Request request : fetch.mRequests) {
+                if (request.mDone)
+                    continue;
+                if (error != null) {
+                    request.mDone = true;
+                    entry.mActive--;
+                    failed.add(request);
+                } else if (--request.mWaiting == 0) {
+                    ready.add(request);
+                }
+            }
+        }
+        for (Request request : failed) {
+            request.mCallback.onError(error);
+        }
+        for (Request request : ready) {
+            deliver(request);
+        }
+        synchronized (this) {
+            trim();
+        }
+    }
+
+    /**
+     * Write the records of a fetch to the disk store, on the disk thread, then
+     * remember its days as stored. The reads of the disk thread come after the
+     * writes already queued, so they always see the records.
+     */
+    private void store(final Fetch fetch, final long lastCached) {
+        final Entry entry = fetch.mEntry;
+        ZivaCareExecutors.diskIo().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!fetch.mRecords.isEmpty())
+                        mDiskStore.merge(entry.mUserKey, entry.mType, fetch.mRecords);
+                } catch (RuntimeException e) {
+                    // the database could not be opened, the days stay in memory only
+                    ZivaCareLog.debug("range cache write error: " + e.getMessage());
+                    return;
+                }
+                if (lastCached < fetch.mFirstDay)
+                    return;
+                final String ranges;
+                synchronized (ZivaCareRangeCache.this) {
+                    entry.mStored.add(fetch.mFirstDay, lastCached);
+                    ranges = entry.mStored.encode();
+                }
+                mRanges.edit().putString(entry.mKey, ranges).apply();
+            }
+        });
+    }
+
+    private void putDay(Entry entry, long day, List<JSONObject> records) {
+        final List<JSONObject> old = entry.mDays.put(day, records);
+        mRecordCount += records.size() - (old != null ? old.size() : 0);
+    }
+
+    /**
+     * Add records without a record time, replacing those of the same id
+     */
+    private void putUntimed(Entry entry, List<JSONObject> records) {
+        for (JSONObject record : records) {
+            final String id = record.has(ID) ? record.optString(ID) : record.toString();
+            if (entry.mUntimed.put(id, record) == null)
+                mRecordCount++;
+        }
+    }
+
+    /**
+     * Stitch the records of the days of a request together and hand them to
+     * its callback. The days dropped from memory are read back from the disk
+     * first, on the disk thread.
+     */
+    private void deliver(final Request request) {
+        final Entry entry = request.mEntry;
+        final List<long[]> notInMemory;
+        final boolean untimedLoaded;
+        synchronized (this) {
+            request.mDone = true;
+            notInMemory = getDaysNotInMemory(entry, request.mFirstDay, request.mLastDay);
+            untimedLoaded = entry.mUntimedLoaded;
+        }
+        if ((notInMemory.isEmpty() && untimedLoaded) || mDiskStore == null) {
+            deliverFromMemory(request);
+            return;
+        }
+        ZivaCareExecutors.diskIo().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load(entry, notInMemory, !untimedLoaded);
+                } catch (RuntimeException e) {
+                    // the database could not be opened
+                    synchronized (ZivaCareRangeCache.this) {
+                        entry.mActive--;
+                    }
+                    request.mCallback.onError(new ZivaCareResponse(-1, e.getMessage()));
+                    return;
+                }
+                deliverFromMemory(request);
+            }
+        });
+    }
+
+    /**
+     * Read days back from the disk store into memory, on the disk thread. The
+     * days stay in memory as long as the request is active.
+     */
+    private void load(Entry entry, List<long[]> ranges, boolean untimed) {
+        if (untimed) {
+            final List<JSONObject> records = mDiskStore.queryUntimed(entry.mConfig, entry.mType);
+            synchronized (this) {
+                if (!entry.mUntimedLoaded) {
+                    // the records fetched in the meantime are newer
+                    final Map<String, JSONObject> fetched =
+                            new LinkedHashMap<String, JSONObject>(entry.mUntimed);
+                    putUntimed(entry, records);
+                    entry.mUntimed.putAll(fetched);
+                    entry.mUntimedLoaded = true;
+                }
+            }
+        }
+        for (long[] range : ranges) {
+            final TreeMap<Long, List<JSONObject>> days = new TreeMap<Long, List<JSONObject>>();
+            for (long day = range[0]; day <= range[1]; day++) {
+                days.put(day, new ArrayList<JSONObject>());
+            }
+            for (JSONObject record : mDiskStore.query(entry.mConfig, entry.mType,
+                    getDayStart(range[0]), getDayStart(range[1] + 1))) {
+                final List<JSONObject> dayRecords = days.get(getDay(
+                        ZivaCareEndpoint.parseRecordTime(record.optString(
+                                ZivaCareEndpoint.RECORD_TIME, null))));
+                if (dayRecords != null)
+                    dayRecords.add(record);
+            }
+            synchronized (this) {
+                for (Map.Entry<Long, List<JSONObject>> day : days.entrySet()) {
+                    if (!entry.mDays.containsKey(day.getKey()))
+                        putDay(entry, day.getKey(), day.getValue());
+                }
+            }
+        }
+    }
+
+    private void deliverFromMemory(Request request) {
+        final Entry entry = request.mEntry;
+        final JSONArray records = new JSONArray();
+        synchronized (this) {
+            for (List<JSONObject> dayRecords : entry.mDays.subMap(request.mFirstDay, true,
+                    request.mLastDay, true).values()) {
+                for (JSONObject record : dayRecords) {
+                    records.put(record);
+                }
+            }
+            for (JSONObject record : entry.mUntimed.values()) {
+                records.put(record);
+            }
+            entry.mActive--;
+        }
+        final JSONObject json = new JSONObject();
+        try {
+            json.put(entry.mType, records);
+        } catch (JSONException e) {
+            ZivaCareLog.debug("json error: " + e.getMessage());
+        }
+        request.mCallback.onSuccess(new ZivaCareResponse(200, json));
+    }
+
+    private static List<long[]> getDaysNotInMemory(Entry entry, long firstDay, long lastDay) {
+        final ZivaCareIntervalSet inMemory = new ZivaCareIntervalSet();
+        for (Long day : entry.mDays.subMap(firstDay, true, lastDay, true).keySet()) {
+            inMemory.add(day, day);
+        }
+        return inMemory.getGaps(firstDay, lastDay);
+    }
+
+    /**
+     * Drop the records of the least recently used users and types until the
+     * memory limit is met. Without a disk store their fetched days are
+     * forgotten too.
+     */
+    private void trim() {
+        final Iterator<Entry> entries = mEntries.values().iterator();
+        while (mRecordCount > mMaxRecords && entries.hasNext()) {
+            final Entry entry = entries.next();
+            if (entry.mActive > 0 || !entry.mFetches.isEmpty())
+                continue;
+            mRecordCount -= countRecords(entry);
+            entry.mDays.clear();
+            entry.mUntimed.clear();
+            entry.mUntimedLoaded = false;
+            if (mDiskStore == null)
+                entries.remove();
+        }
+    }
+
+    private static int countRecords(Entry entry) {
+        int count = 0;
+        for (List<JSONObject> records : entry.mDays.values()) {
+            count += records.size();
+        }
+        return count + entry.mUntimed.size();
+    }
+
+    /**
+     * Get the day of a time in the default time zone, as days since 1970-01-01
+     */
+    private static long getDay(long time) {
+        final long local = time + TimeZone.getDefault().getOffset(time);
+        return local >= 0 ? local / DAY_MS : (local + 1) / DAY_MS - 1;
+    }
+
+    /**
+     * Get the start of a day in the default time zone
+     */
+    private static long getDayStart(long day) {
+        final long utc = day * DAY_MS;
+        return utc - TimeZone.getDefault().getOffset(utc);
+    }
+
+    /**
+     * Get a date within a day, its noon, away from the daylight saving changes
+     */
+    private static Date getDate(long day) {
+        final long noon = day * DAY_MS + NOON_MS;
+        return new Date(noon - TimeZone.getDefault().getOffset(noon));
+    }
+}
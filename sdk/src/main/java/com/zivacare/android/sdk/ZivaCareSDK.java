@@ -27,16 +27,36 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 
 import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
 import com.zivacare.android.sdk.network.NetworkUtils;
 import com.zivacare.android.sdk.network.ZivaCareGetRequest;
+import com.zivacare.android.sdk.network.ZivaCareHurlTransport;
 import com.zivacare.android.sdk.network.ZivaCarePostRequest;
+import com.zivacare.android.sdk.network.ZivaCareCachePolicy;
 import com.zivacare.android.sdk.network.ZivaCareCallback;
-
+import com.zivacare.android.sdk.network.ZivaCareCompression;
+import com.zivacare.android.sdk.network.ZivaCareExecutorCallback;
+import com.zivacare.android.sdk.network.ZivaCareRecordCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+import com.zivacare.android.sdk.network.ZivaCareRetryHandler;
+import com.zivacare.android.sdk.network.ZivaCareSeries;
+import com.zivacare.android.sdk.network.ZivaCareSeriesCallback;
+import com.zivacare.android.sdk.network.ZivaCareSeriesParser;
+import com.zivacare.android.sdk.network.ZivaCareTransport;
+import com.zivacare.android.sdk.network.ZivaCareUploadPolicy;
+import com.zivacare.android.sdk.network.ZivaCareWindowCallback;
+import com.zivacare.android.sdk.network.ZivaCareWindowPolicy;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * Ziva SDK class<br>
@@ -49,27 +69,113 @@ public class ZivaCareSDK {
 
     private static final String LOG_TAG = ZivaCareSDK.class.getSimpleName();
     private ZivaCareConfig mConfig = null;
-    private RequestQueue mRequestQueue;
+    private final Context mContext;
+    private ZivaCareTransport mTransport = new ZivaCareHurlTransport();
+    private ZivaCareTokenRefresher mTokenRefresher = new ZivaCareTokenRefresher(this);
+    private ZivaCareRetryHandler mRetryHandler = new ZivaCareRetryHandler();
+    private ZivaCareCachePolicy mCachePolicy = new ZivaCareCachePolicy();
+    private ZivaCareCompression mCompression = new ZivaCareCompression();
+    private ZivaCareUploadPolicy mUploadPolicy = ZivaCareUploadPolicy.DEFAULT;
+    private ZivaCareWindowPolicy mWindowPolicy = ZivaCareWindowPolicy.DEFAULT;
+    private volatile Executor mCallbackExecutor = ZivaCareExecutors.mainThread();
+    private final Set<ZivaCareCall> mCalls = new HashSet<ZivaCareCall>();
+    private final Map<String, ZivaCareEndpointCall> mRunningCalls =
+            new HashMap<String, ZivaCareEndpointCall>();
 
     /**
-     * ZivaCareSDK constructor
+     * ZivaCareSDK constructor<br>
+     * The requests go through the queue shared by all the instances, see
+     * {@link ZivaCareDispatcher}.
      *
      * @param config
      */
     public ZivaCareSDK(@NonNull Context context, ZivaCareConfig config) {
         mConfig = config;
-        mRequestQueue = Volley.newRequestQueue(context);
+        mContext = getApplicationContext(context);
     }
 
     /**
-     * ZivaCareSDK constructor
+     * ZivaCareSDK constructor<br>
+     * The requests go through the queue shared by all the instances, the
+     * configuration is loaded in the background.
      *
      * @param context Context of the app
      * @param demo    (if true then all get requests will use the demo access token
      */
     public ZivaCareSDK(@NonNull Context context, boolean demo) {
         mConfig = new ZivaCareConfig(context, demo);
-        mRequestQueue = Volley.newRequestQueue(context);
+        mContext = getApplicationContext(context);
+    }
+
+    private static Context getApplicationContext(Context context) {
+        final Context appContext = context.getApplicationContext();
+        return appContext != null ? appContext : context;
+    }
+
+    /**
+     * ZivaCareSDK constructor<br>
+     * The requests go through the queue shared by all the instances, see
+     * {@link ZivaCareDispatcher}.
+     *
+     * @param context
+     * @param config
+     * @param transport HTTP engine used for all the requests
+     */
+    public ZivaCareSDK(@NonNull Context context, ZivaCareConfig config,
+                       @NonNull ZivaCareTransport transport) {
+        this(context, config);
+        mTransport = transport;
+    }
+
+    /**
+     * Add a request to the queue shared by all the ZivaCareSDK instances using
+     * the same transport. Volley delivers the responses right away on its
+     * network threads, the callbacks are then handed to the callback executor.
+     *
+     * @param request
+     * @param lane
+     */
+    void enqueue(Request<?> request, ZivaCareDispatcher.Lane lane) {
+        ZivaCareDispatcher.add(mContext, getTransport(), lane, request);
+    }
+
+    /**
+     * Set the executor running the callbacks of this ZivaCareSDK instance, by
+     * default they run on the main thread. Use a worker pool to post-process
+     * the responses without blocking the UI, or
+     * {@link ZivaCareExecutors#immediate()} to run them on the network thread.
+     * A single call can use another executor with a {@link ZivaCareExecutorCallback}.
+     *
+     * @param executor
+     */
+    public void setCallbackExecutor(@NonNull Executor executor) {
+        mCallbackExecutor = executor;
+    }
+
+    public Executor getCallbackExecutor() {
+        return mCallbackExecutor;
+    }
+
+    /**
+     * Make the passed callback run on the callback executor, unless it already
+     * chose its own executor.
+     *
+     * @param callback
+     * @return ZivaCareCallback
+     */
+    ZivaCareCallback deliver(ZivaCareCallback callback) {
+        if (callback instanceof ZivaCareExecutorCallback)
+            return callback;
+        return new ZivaCareExecutorCallback(mCallbackExecutor, callback);
+    }
+
+    /**
+     * Get the HTTP engine used for the requests
+     *
+     * @return ZivaCareTransport
+     */
+    public synchronized ZivaCareTransport getTransport() {
+        return mTransport;
     }
 
     /**
@@ -78,17 +184,42 @@ public class ZivaCareSDK {
      * @param endpointUrl - from ZivaCareEndpoint abstract class constant
      * @param config      - a ZivaCareConfig instance used in ZivaCareSDK instance
      * @param callback
+     * @return ZivaCareCall handle to cancel the call
      */
-    public void callEndpoint(@NonNull String endpointUrl, @NonNull ZivaCareConfig config,
-                             @NonNull ZivaCareCallback callback) {
-        String formatedEndpointUrl = mConfig.getApiUrl() + endpointUrl
-                + ZivaCareConfig.ACCESS_TOKEN_QUERY_PARAM
-                + (config != null ? config.getAccessToken() : System
-                .getProperty(ZivaCareConfig.ACCESS_TOKEN));
+    public ZivaCareCall callEndpoint(@NonNull String endpointUrl, @NonNull ZivaCareConfig config,
+                                    @NonNull ZivaCareCallback callback) {
+        return callEndpoint(endpointUrl, config, (Object) null, callback);
+    }
 
-        final ZivaCareGetRequest request = new ZivaCareGetRequest(formatedEndpointUrl,
-                NetworkUtils.getDefaultHandler(callback), NetworkUtils.getDefaultErrorHandler(callback));
-        mRequestQueue.add(request);
+    /**
+     * Call a ZivaCare API endpoint.
+     *
+     * @param endpointUrl - from ZivaCareEndpoint abstract class constant
+     * @param config      - a ZivaCareConfig instance used in ZivaCareSDK instance
+     * @param tag         - tag used to cancel the call with {@link #cancelByTag(Object)}, can be null
+     * @param callback
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall callEndpoint(@NonNull String endpointUrl, @NonNull ZivaCareConfig config,
+                                    Object tag, @NonNull ZivaCareCallback callback) {
+        return call(endpointUrl, config, null, tag, false, callback);
+    }
+
+    /**
+     * Call a ZivaCare API endpoint, keeping the bytes of the response body.
+     *
+     * @param endpointUrl - from ZivaCareEndpoint abstract class constant
+     * @param config      - a ZivaCareConfig instance used in ZivaCareSDK instance
+     * @param tag         - tag used to cancel the call with {@link #cancelByTag(Object)}, can be null
+     * @param keepData    - if true the response holds the body as received, see
+     *                    {@link ZivaCareResponse#getResponseData()}
+     * @param callback
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall callEndpoint(@NonNull String endpointUrl, @NonNull ZivaCareConfig config,
+                                    Object tag, boolean keepData,
+                                    @NonNull ZivaCareCallback callback) {
+        return call(endpointUrl, config, null, tag, keepData, callback);
     }
 
     /**
@@ -97,21 +228,325 @@ public class ZivaCareSDK {
      * @param endpoint
      * @param config
      * @param dataMap
-     * @return String response
-     * @throws Exception
+     * @return ZivaCareCall handle to cancel the call
      */
-    public void callEndpoint(@NonNull String endpoint, @NonNull ZivaCareConfig config,
-                             @NonNull Map dataMap,
-                             @NonNull ZivaCareCallback callback) {
+    public ZivaCareCall callEndpoint(@NonNull String endpoint, @NonNull ZivaCareConfig config,
+                                    @NonNull Map dataMap,
+                                    @NonNull ZivaCareCallback callback) {
+        return callEndpoint(endpoint, config, dataMap, null, callback);
+    }
 
+    /**
+     * Call a ZivaCare Api endpoint for POST-ing data
+     *
+     * @param endpoint
+     * @param config
+     * @param dataMap
+     * @param tag      - tag used to cancel the call with {@link #cancelByTag(Object)}, can be null
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall callEndpoint(@NonNull String endpoint, @NonNull ZivaCareConfig config,
+                                    @NonNull Map dataMap, Object tag,
+                                    @NonNull ZivaCareCallback callback) {
+        return call(endpoint, config, dataMap, tag, false, callback);
+    }
 
-        final ZivaCarePostRequest request = new ZivaCarePostRequest(
-                mConfig.getApiUrl() + endpoint + ZivaCareConfig.ACCESS_TOKEN_QUERY_PARAM
-                        + config.getAccessToken(),
-                NetworkUtils.getDefaultHandler(callback),
-                NetworkUtils.getDefaultErrorHandler(callback),
-                dataMap);
-        mRequestQueue.add(request);
+    /**
+     * Call a ZivaCare Api endpoint for POST-ing many rows. The rows are sent in
+     * chunks, a few at a time, as set by the {@link ZivaCareUploadPolicy}; only
+     * the chunks that failed are sent again.
+     *
+     * @param endpoint
+     * @param config
+     * @param dataMap  - the rows are an Object[] under rowsKey, the other values
+     *                 are sent with every chunk
+     * @param rowsKey
+     * @param tag      - tag used to cancel the call with {@link #cancelByTag(Object)}, can be null
+     * @param callback - a {@link ZivaCareUploadCallback} is also told the progress
+     *                 after every chunk
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall uploadEndpoint(@NonNull String endpoint, @NonNull ZivaCareConfig config,
+                                      @NonNull Map dataMap, @NonNull String rowsKey, Object tag,
+                                      @NonNull ZivaCareCallback callback) {
+        return new ZivaCareUploadCall(this, endpoint, config, dataMap, rowsKey, tag, callback)
+                .start();
+    }
+
+    /**
+     * Call a ZivaCare API endpoint for a long period, split into windows of a
+     * few days fetched in parallel, as set by the {@link ZivaCareWindowPolicy}.
+     * The windows are delivered in chronological order.
+     *
+     * @param periodPath - endpoint path of a period without the dates, like
+     *                   "/api/v1/human/heart_rates/period/"
+     * @param config     - a ZivaCareConfig instance used in ZivaCareSDK instance
+     * @param startDate  - first day of the period
+     * @param endDate    - last day of the period
+     * @param tag        - tag used to cancel the call with {@link #cancelByTag(Object)}, can be null
+     * @param callback
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall callEndpointByWindows(@NonNull String periodPath,
+                                             @NonNull ZivaCareConfig config,
+                                             @NonNull Date startDate, @NonNull Date endDate,
+                                             Object tag,
+                                             @NonNull ZivaCareWindowCallback callback) {
+        return new ZivaCareWindowedCall(this, periodPath, config, startDate, endDate, tag,
+                callback).start();
+    }
+
+    /**
+     * Call a ZivaCare API endpoint and read the response as a stream. The
+     * records of the response are delivered in batches while it is read, so
+     * large responses are never held in memory.
+     *
+     * @param endpointUrl - from ZivaCareEndpoint abstract class constant
+     * @param config      - a ZivaCareConfig instance used in ZivaCareSDK instance
+     * @param batchSize   - most records delivered in one call of the callback
+     * @param callback    - called on a background thread
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall streamEndpoint(@NonNull String endpointUrl, @NonNull ZivaCareConfig config,
+                                      int batchSize, @NonNull ZivaCareRecordCallback callback) {
+        return streamEndpoint(endpointUrl, config, batchSize, null, callback);
+    }
+
+    /**
+     * Call a ZivaCare API endpoint and read the response as a stream. The
+     * records of the response are delivered in batches while it is read, so
+     * large responses are never held in memory.
+     *
+     * @param endpointUrl - from ZivaCareEndpoint abstract class constant
+     * @param config      - a ZivaCareConfig instance used in ZivaCareSDK instance
+     * @param batchSize   - most records delivered in one call of the callback
+     * @param tag         - tag used to cancel the call with {@link #cancelByTag(Object)}, can be null
+     * @param callback    - called on a background thread
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall streamEndpoint(@NonNull String endpointUrl, @NonNull ZivaCareConfig config,
+                                      int batchSize, Object tag,
+                                      @NonNull ZivaCareRecordCallback callback) {
+        return new ZivaCareStreamCall(this, endpointUrl, config, batchSize, tag, callback).start();
+    }
+
+    /**
+     * Call a scalar ZivaCare API endpoint, like the heart rates, and read the
+     * response straight into a {@link ZivaCareSeries}: the record times,
+     * values and units are held in primitive arrays, no object is made per
+     * record.
+     *
+     * @param endpointUrl - from ZivaCareEndpoint abstract class constant
+     * @param config      - a ZivaCareConfig instance used in ZivaCareSDK instance
+     * @param tag         - tag used to cancel the call with {@link #cancelByTag(Object)}, can be null
+     * @param callback    - called on the callback executor
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall seriesEndpoint(@NonNull String endpointUrl, @NonNull ZivaCareConfig config,
+                                      Object tag, @NonNull final ZivaCareSeriesCallback callback) {
+        final Executor executor = mCallbackExecutor;
+        final ZivaCareSeriesParser[] parser = new ZivaCareSeriesParser[1];
+        final ZivaCareRecordCallback recordCallback = new ZivaCareRecordCallback() {
+            @Override
+            public void onRecords(String name, List<JSONObject> records) {
+                // the records are read into the series
+            }
+
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                final ZivaCareSeries series = parser[0].getSeries();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(series);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final ZivaCareResponse response) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(response);
+                    }
+                });
+            }
+        };
+        parser[0] = new ZivaCareSeriesParser(ZivaCareEndpoint.getTypeFromUrl(endpointUrl),
+                recordCallback);
+        return new ZivaCareStreamCall(this, endpointUrl, config, parser[0], tag, recordCallback)
+                .start();
+    }
+
+    /**
+     * Start an endpoint call. A GET is shared with the identical GET already
+     * running for the same user, if any.
+     *
+     * @return the handle of the caller
+     */
+    private ZivaCareCall call(final String path, final ZivaCareConfig config,
+                              final Map dataMap, final Object tag, final boolean keepData,
+                              ZivaCareCallback callback) {
+        final ZivaCareCallback delivered = deliver(callback);
+        if (isLoaded(config))
+            return startCall(path, config, dataMap, tag, keepData, delivered);
+        // the user key and the URLs are read once the configs are loaded
+        final ZivaCarePendingCall pending = new ZivaCarePendingCall(tag,
+                ZivaCareEndpoint.getTypeFromUrl(path));
+        register(pending);
+        whenLoaded(config, new Runnable() {
+            @Override
+            public void run() {
+                unregister(pending);
+                if (!pending.isCanceled())
+                    pending.setCall(startCall(path, config, dataMap, tag, keepData, delivered));
+            }
+        });
+        return pending;
+    }
+
+    private ZivaCareCall startCall(String path, ZivaCareConfig config, Map dataMap, Object tag,
+                                   boolean keepData, ZivaCareCallback delivered) {
+        // the callers keeping the body only share the calls keeping it
+        final String key = dataMap == null
+                ? getCallKey(path, config) + (keepData ? "|data" : "") : null;
+        while (true) {
+            ZivaCareEndpointCall call = null;
+            boolean created = false;
+            synchronized (mRunningCalls) {
+                if (key != null)
+                    call = mRunningCalls.get(key);
+                if (call == null) {
+                    call = new ZivaCareEndpointCall(this, path, key, config, dataMap, keepData);
+                    if (key != null)
+                        mRunningCalls.put(key, call);
+                    created = true;
+                }
+            }
+            final ZivaCareCall handle = call.subscribe(tag, delivered);
+            // else the shared call finished in the meantime, start a new one
+            if (handle != null) {
+                if (created)
+                    call.start();
+                return handle;
+            }
+        }
+    }
+
+    /**
+     * Get the key identifying a GET among the running calls: its path, without
+     * the access token, and the user it is made for.
+     */
+    private String getCallKey(String path, ZivaCareConfig config) {
+        return path + "|" + getUserKey(config);
+    }
+
+    /**
+     * Get the key of the user a config is for, independent of its access token.
+     * It is the user key a {@link ZivaCareLocalStore} receives.
+     *
+     * @param config config of the user, or null for the config of this instance
+     * @return String
+     */
+    public String getUserKey(ZivaCareConfig config) {
+        final ZivaCareConfig userConfig = config != null ? config : mConfig;
+        return userConfig.isDemo() + "|" + userConfig.getZivaUserCode()
+                + "|" + userConfig.getClientUserId();
+    }
+
+    Context getContext() {
+        return mContext;
+    }
+
+    /**
+     * Check if the config of this instance and the config of a call are loaded
+     *
+     * @param config config of the call, or null for the config of this instance
+     * @return boolean
+     */
+    boolean isLoaded(ZivaCareConfig config) {
+        return mConfig.isLoaded() && (config == null || config.isLoaded());
+    }
+
+    /**
+     * Run a task once the config of this instance and the config of a call are
+     * loaded, see {@link ZivaCareConfig#whenLoaded(Runnable)}
+     *
+     * @param config config of the call, or null for the config of this instance
+     * @param task
+     */
+    void whenLoaded(final ZivaCareConfig config, @NonNull final Runnable task) {
+        mConfig.whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                if (config == null || config == mConfig) {
+                    task.run();
+                } else {
+                    config.whenLoaded(task);
+                }
+            }
+        });
+    }
+
+    void removeCall(ZivaCareEndpointCall call) {
+        if (call.getKey() == null)
+            return;
+        synchronized (mRunningCalls) {
+            if (mRunningCalls.get(call.getKey()) == call)
+                mRunningCalls.remove(call.getKey());
+        }
+    }
+
+    /**
+     * Cancel all the running calls made with a tag
+     *
+     * @param tag
+     */
+    public void cancelByTag(@NonNull Object tag) {
+        for (ZivaCareCall call : getCalls()) {
+            if (tag.equals(call.getTag()))
+                call.cancel();
+        }
+    }
+
+    /**
+     * Cancel all the running calls to an endpoint type
+     *
+     * @param type - one of the ZivaCareEndpoint.TYPE_ constants
+     */
+    public void cancelByType(@NonNull String type) {
+        for (ZivaCareCall call : getCalls()) {
+            if (type.equals(call.getType()))
+                call.cancel();
+        }
+    }
+
+    /**
+     * Cancel all the running endpoint calls
+     */
+    public void cancelAll() {
+        for (ZivaCareCall call : getCalls()) {
+            call.cancel();
+        }
+    }
+
+    private List<ZivaCareCall> getCalls() {
+        synchronized (mCalls) {
+            return new ArrayList<ZivaCareCall>(mCalls);
+        }
+    }
+
+    void register(ZivaCareCall call) {
+        synchronized (mCalls) {
+            mCalls.add(call);
+        }
+    }
+
+    void unregister(ZivaCareCall call) {
+        synchronized (mCalls) {
+            mCalls.remove(call);
+        }
     }
 
     /**
@@ -123,8 +558,19 @@ public class ZivaCareSDK {
      * @param secret
      * @return Map with keys: @ZivaCareConfig.KEY_RESPONSE_CODE, @ZivaCareConfig.KEY_RESPONSE_STRING
      */
-    public void setUser(@NonNull String dataSourceName, @NonNull String token,
-                        String secret, @NonNull ZivaCareCallback callback) {
+    public void setUser(@NonNull final String dataSourceName, @NonNull final String token,
+                        final String secret, @NonNull ZivaCareCallback callback) {
+        final ZivaCareCallback delivered = deliver(callback);
+        mConfig.whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                sendSetUser(dataSourceName, token, secret, delivered);
+            }
+        });
+    }
+
+    private void sendSetUser(String dataSourceName, String token, String secret,
+                             ZivaCareCallback callback) {
         final Map<String, String> mapParameters = new HashMap<String, String>();
         mapParameters.put(ZivaCareConfig.CLIENT_ID, getConfig().getClientId());
         mapParameters.put(ZivaCareConfig.CLIENT_SECRET, getConfig()
@@ -144,7 +590,8 @@ public class ZivaCareSDK {
                 NetworkUtils.getDefaultErrorHandler(callback),
                 mapParameters);
 
-        mRequestQueue.add(request);
+        request.setPriority(Request.Priority.IMMEDIATE);
+        enqueue(request, ZivaCareDispatcher.Lane.AUTH);
     }
 
     /**
@@ -153,12 +600,17 @@ public class ZivaCareSDK {
      *
      * @throws Exception
      */
-    public void createUser(@NonNull ZivaCareCallback callback) {
-        String clientId = this.getConfig().getClientId();
-        String clientSecret = this.getConfig().getClientSecret();
-        String clientUserId = this.getConfig().getClientUserId();
-        String clientUserName = this.getConfig().getClientUserName();
-        createUser(clientId, clientSecret, clientUserId, clientUserName, callback);
+    public void createUser(@NonNull final ZivaCareCallback callback) {
+        mConfig.whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                String clientId = getConfig().getClientId();
+                String clientSecret = getConfig().getClientSecret();
+                String clientUserId = getConfig().getClientUserId();
+                String clientUserName = getConfig().getClientUserName();
+                createUser(clientId, clientSecret, clientUserId, clientUserName, callback);
+            }
+        });
     }
 
     /**
@@ -169,10 +621,20 @@ public class ZivaCareSDK {
      * @param clientUserId
      * @param clientUserName
      */
-    public void createUser(String clientId, String clientSecret,
-                           String clientUserId, String clientUserName,
+    public void createUser(final String clientId, final String clientSecret,
+                           final String clientUserId, final String clientUserName,
                            @NonNull ZivaCareCallback callback) {
+        final ZivaCareCallback delivered = deliver(callback);
+        mConfig.whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                sendCreateUser(clientId, clientSecret, clientUserId, clientUserName, delivered);
+            }
+        });
+    }
 
+    private void sendCreateUser(String clientId, String clientSecret, String clientUserId,
+                                String clientUserName, ZivaCareCallback callback) {
         final Map<String, String> mapParameters = new HashMap<String, String>();
         mapParameters.put(ZivaCareConfig.CLIENT_ID, clientId);
         mapParameters.put(ZivaCareConfig.CLIENT_SECRET, clientSecret);
@@ -184,16 +646,21 @@ public class ZivaCareSDK {
                 NetworkUtils.getCreateUserHandler(callback, clientSecret, mConfig),
                 NetworkUtils.getDefaultErrorHandler(callback), mapParameters);
 
-        mRequestQueue.add(request);
+        request.setPriority(Request.Priority.IMMEDIATE);
+        enqueue(request, ZivaCareDispatcher.Lane.AUTH);
     }
 
     /**
      * Call the delete user with the data from ZivaCare application settings.<br>
      * This method uses the data from the mConfig and/or mConfig cache.
      */
-    public void deleteUser(@NonNull ZivaCareCallback callback) {
-        String clientId = this.getConfig().getClientId();
-        deleteUser(clientId, callback);
+    public void deleteUser(@NonNull final ZivaCareCallback callback) {
+        mConfig.whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                deleteUser(getConfig().getClientId(), callback);
+            }
+        });
     }
 
     /**
@@ -202,7 +669,17 @@ public class ZivaCareSDK {
      * @param clientId
      * @param callback
      */
-    public void deleteUser(String clientId, @NonNull ZivaCareCallback callback) {
+    public void deleteUser(final String clientId, @NonNull ZivaCareCallback callback) {
+        final ZivaCareCallback delivered = deliver(callback);
+        mConfig.whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                sendDeleteUser(clientId, delivered);
+            }
+        });
+    }
+
+    private void sendDeleteUser(String clientId, ZivaCareCallback callback) {
         final String deleteUserUrl =mConfig.getDevUrl()
                 + String.format(ZivaCareConfig.DELETE_USER_QUERY_PARAM,
                 clientId, getConfig().getZivaUserCode());
@@ -211,7 +688,8 @@ public class ZivaCareSDK {
                 NetworkUtils.getDeleteUserHandler(callback, mConfig),
                 NetworkUtils.getDefaultErrorHandler(callback));
 
-        mRequestQueue.add(request);
+        request.setPriority(Request.Priority.IMMEDIATE);
+        enqueue(request, ZivaCareDispatcher.Lane.AUTH);
     }
 
     /**
@@ -220,16 +698,9 @@ public class ZivaCareSDK {
      * @param endpoint - from ZivaCareEndpoint abstract class constant
      * @param version
      */
-    public void callEndpoint(@NonNull String endpoint, @NonNull int version,
-                             @NonNull ZivaCareCallback callback) {
-        String formatedEndpointUrl = mConfig.getApiUrl()
-                + String.format(endpoint, version)
-                + ZivaCareConfig.ACCESS_TOKEN_QUERY_PARAM
-                + mConfig.getAccessToken();
-        final ZivaCareGetRequest request = new ZivaCareGetRequest(formatedEndpointUrl,
-                NetworkUtils.getDefaultHandler(callback),
-                NetworkUtils.getDefaultErrorHandler(callback));
-        mRequestQueue.add(request);
+    public ZivaCareCall callEndpoint(@NonNull String endpoint, @NonNull int version,
+                                    @NonNull ZivaCareCallback callback) {
+        return call(String.format(endpoint, version), mConfig, null, null, false, callback);
     }
 
     /**
@@ -239,18 +710,10 @@ public class ZivaCareSDK {
      * @param version
      * @param date
      */
-    public void callEndpoint(@NonNull String endpoint, @NonNull int version,
-                             @NonNull Date date,
-                             @NonNull ZivaCareCallback callback) {
-        String formatedEndpointUrl = mConfig.getApiUrl()
-                + String.format(endpoint, version, date)
-                + ZivaCareConfig.ACCESS_TOKEN_QUERY_PARAM
-                + mConfig.getAccessToken();
-
-        final ZivaCareGetRequest request = new ZivaCareGetRequest(formatedEndpointUrl,
-                NetworkUtils.getDefaultHandler(callback),
-                NetworkUtils.getDefaultErrorHandler(callback));
-        mRequestQueue.add(request);
+    public ZivaCareCall callEndpoint(@NonNull String endpoint, @NonNull int version,
+                                    @NonNull Date date,
+                                    @NonNull ZivaCareCallback callback) {
+        return call(String.format(endpoint, version, date), mConfig, null, null, false, callback);
     }
 
     /**
@@ -261,17 +724,11 @@ public class ZivaCareSDK {
      * @param startDate
      * @param endDate
      */
-    public void callEndpoint(@NonNull String endpoint, @NonNull int version,
-                             @NonNull Date startDate, @NonNull Date endDate,
-                             @NonNull ZivaCareCallback callback) throws Exception {
-        String formatedEndpointUrl = mConfig.getApiUrl()
-                + String.format(endpoint, version, startDate, endDate)
-                + ZivaCareConfig.ACCESS_TOKEN_QUERY_PARAM
-                + mConfig.getAccessToken();
-        final ZivaCareGetRequest request = new ZivaCareGetRequest(formatedEndpointUrl,
-                NetworkUtils.getDefaultHandler(callback),
-                NetworkUtils.getDefaultErrorHandler(callback));
-        mRequestQueue.add(request);
+    public ZivaCareCall callEndpoint(@NonNull String endpoint, @NonNull int version,
+                                    @NonNull Date startDate, @NonNull Date endDate,
+                                    @NonNull ZivaCareCallback callback) throws Exception {
+        return call(String.format(endpoint, version, startDate, endDate), mConfig, null, null, false,
+                callback);
     }
 
     /**
@@ -281,28 +738,23 @@ public class ZivaCareSDK {
      * @param version
      * @param code
      */
-    public void callEndpoint(@NonNull String endpoint, @NonNull int version,
-                             @NonNull String code, @NonNull ZivaCareCallback callback)
+    public ZivaCareCall callEndpoint(@NonNull String endpoint, @NonNull int version,
+                                    @NonNull String code, @NonNull ZivaCareCallback callback)
             throws Exception {
-        String formatedEndpointUrl = mConfig.getApiUrl()
-                + String.format(endpoint, version, code)
-                + ZivaCareConfig.ACCESS_TOKEN_QUERY_PARAM
-                + mConfig.getAccessToken();
-
-        final ZivaCareGetRequest request = new ZivaCareGetRequest(formatedEndpointUrl,
-                NetworkUtils.getDefaultHandler(callback),
-                NetworkUtils.getDefaultErrorHandler(callback));
-        mRequestQueue.add(request);
+        return call(String.format(endpoint, version, code), mConfig, null, null, false, callback);
     }
 
     /**
      * Call the login with authorisation to get a access token.<br>
      * This method uses the data from the mConfig and/or mConfig cache.
      */
-    public void login(@NonNull ZivaCareCallback callback) {
-        String clientSecret = this.getConfig().getClientSecret();
-        String specialToken = this.getConfig().getSpecialToken();
-        login(clientSecret, specialToken, callback);
+    public void login(@NonNull final ZivaCareCallback callback) {
+        mConfig.whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                login(getConfig().getClientSecret(), getConfig().getSpecialToken(), callback);
+            }
+        });
     }
 
     /**
@@ -311,30 +763,57 @@ public class ZivaCareSDK {
      * @param clientSecret
      * @param specialToken
      */
-    public void login(String clientSecret, String specialToken,
+    public void login(final String clientSecret, final String specialToken,
                       @NonNull ZivaCareCallback callback) {
+        final ZivaCareCallback delivered = deliver(callback);
+        mConfig.whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                sendLogin(clientSecret, specialToken, delivered);
+            }
+        });
+    }
 
+    private void sendLogin(String clientSecret, String specialToken, ZivaCareCallback callback) {
         final Map<String, String> mapParameters = new HashMap<String, String>();
         mapParameters.put(ZivaCareConfig.SPECIAL_TOKEN, specialToken);
         mapParameters.put(ZivaCareConfig.CLIENT_SECRET, clientSecret);
 
         final ZivaCarePostRequest request = new ZivaCarePostRequest(
                mConfig.getDevUrl() + ZivaCareConfig.URL_AUTH,
-                NetworkUtils.getLoginHandler(callback, mConfig),
+                NetworkUtils.getLoginHandler(getTokenCallback(mConfig, callback), mConfig),
                 NetworkUtils.getDefaultErrorHandler(callback),
                 mapParameters);
 
-        mRequestQueue.add(request);
+        request.setPriority(Request.Priority.IMMEDIATE);
+        enqueue(request, ZivaCareDispatcher.Lane.AUTH);
     }
 
     /**
      * Call a ZivaCare API refresh token.<br>
-     * This method uses the data from the mConfig and/or mConfig cache.
+     * This method uses the data from the mConfig and/or mConfig cache.<br>
+     * The access token is also refreshed automatically before it expires. If a
+     * refresh is already running, the callback is notified when it is done.
      */
     public void refreshToken(@NonNull ZivaCareCallback callback) {
-        refreshToken(mConfig.getClientId(),
-                mConfig.getClientSecret(),
-                callback);
+        final ZivaCareCallback delivered = deliver(callback);
+        final ZivaCareTokenRefresher.Listener listener = new ZivaCareTokenRefresher.Listener() {
+            @Override
+            public void onTokenReady(ZivaCareResponse response) {
+                delivered.onSuccess(response);
+            }
+
+            @Override
+            public void onTokenError(ZivaCareResponse response) {
+                delivered.onError(response);
+            }
+        };
+        mConfig.whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                mTokenRefresher.refresh(listener);
+            }
+        });
     }
 
     /**
@@ -344,16 +823,189 @@ public class ZivaCareSDK {
      * @param clientSecret
      * @param callback
      */
-    public void refreshToken(String clientId, String clientSecret,
+    public void refreshToken(final String clientId, final String clientSecret,
                              @NonNull ZivaCareCallback callback) {
-        final String formatedRefreshUrl =mConfig.getDevUrl()
+        final ZivaCareCallback delivered = deliver(callback);
+        mConfig.whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                sendRefreshToken(mConfig, clientId, clientSecret, delivered);
+            }
+        });
+    }
+
+    /**
+     * Send a refresh token request, the callback runs on the network thread
+     *
+     * @param config       config whose access token is refreshed
+     * @param clientId
+     * @param clientSecret
+     * @param callback
+     */
+    void sendRefreshToken(@NonNull ZivaCareConfig config, String clientId, String clientSecret,
+                          @NonNull ZivaCareCallback callback) {
+        final String formatedRefreshUrl = config.getDevUrl()
                 + String.format(ZivaCareConfig.REFRESH_TOKEN_QUERY_PARAM,
-                clientId, clientSecret);
+                clientId, clientSecret, config.getRefreshToken());
 
         final ZivaCareGetRequest request = new ZivaCareGetRequest(formatedRefreshUrl,
-                NetworkUtils.getDefaultHandler(callback), NetworkUtils.getDefaultErrorHandler(callback));
+                NetworkUtils.getLoginHandler(getTokenCallback(config, callback), config),
+                NetworkUtils.getDefaultErrorHandler(callback));
+
+        request.setPriority(Request.Priority.IMMEDIATE);
+        enqueue(request, ZivaCareDispatcher.Lane.AUTH);
+    }
+
+    /**
+     * Wrap the callback of a login or refresh request, so the refresh of the
+     * new access token is scheduled before the caller is notified.
+     *
+     * @param config   config holding the new access token
+     * @param callback
+     * @return ZivaCareCallback
+     */
+    private ZivaCareCallback getTokenCallback(final ZivaCareConfig config,
+                                              final ZivaCareCallback callback) {
+        return new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                getTokenRefresher(config).schedule();
+                callback.onSuccess(response);
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                callback.onError(response);
+            }
+        };
+    }
+
+    /**
+     * Get the access token refresher of this ZivaCareSDK instance
+     *
+     * @return ZivaCareTokenRefresher
+     */
+    public ZivaCareTokenRefresher getTokenRefresher() {
+        return mTokenRefresher;
+    }
+
+    /**
+     * Get the access token refresher of a config. The config of this
+     * ZivaCareSDK instance uses {@link #getTokenRefresher()}, any other config
+     * its own refresher, created on first use, so the per call configs
+     * refresh their own credentials.
+     *
+     * @param config config of the call, or null for the config of this instance
+     * @return ZivaCareTokenRefresher
+     */
+    public ZivaCareTokenRefresher getTokenRefresher(ZivaCareConfig config) {
+        if (config == null || config == mConfig)
+            return mTokenRefresher;
+        return config.getTokenRefresher(this);
+    }
+
+    /**
+     * Replace the access token refresher of this ZivaCareSDK instance, for
+     * example with one using a different scheduler.
+     *
+     * @param tokenRefresher
+     */
+    public void setTokenRefresher(@NonNull ZivaCareTokenRefresher tokenRefresher) {
+        mTokenRefresher.cancel();
+        mTokenRefresher = tokenRefresher;
+    }
+
+    /**
+     * Get the retry handler of this ZivaCareSDK instance, used to set the
+     * timeouts and retry policies per endpoint type and HTTP method.
+     *
+     * @return ZivaCareRetryHandler
+     */
+    public ZivaCareRetryHandler getRetryHandler() {
+        return mRetryHandler;
+    }
+
+    /**
+     * Get the cache policy of this ZivaCareSDK instance, used to set how long
+     * the responses of each endpoint type are served from the cache.
+     *
+     * @return ZivaCareCachePolicy
+     */
+    public ZivaCareCachePolicy getCachePolicy() {
+        return mCachePolicy;
+    }
+
+    /**
+     * Replace the cache policy of this ZivaCareSDK instance
+     *
+     * @param cachePolicy
+     */
+    public void setCachePolicy(@NonNull ZivaCareCachePolicy cachePolicy) {
+        mCachePolicy = cachePolicy;
+    }
+
+    /**
+     * Get the compression settings of this ZivaCareSDK instance, used to
+     * compress the uploads and to read the bytes saved per endpoint type.
+     *
+     * @return ZivaCareCompression
+     */
+    public ZivaCareCompression getCompression() {
+        return mCompression;
+    }
+
+    /**
+     * Replace the compression settings of this ZivaCareSDK instance
+     *
+     * @param compression
+     */
+    public void setCompression(@NonNull ZivaCareCompression compression) {
+        mCompression = compression;
+    }
 
-        mRequestQueue.add(request);
+    /**
+     * Get the limits of the chunks the uploads are split into
+     *
+     * @return ZivaCareUploadPolicy
+     */
+    public ZivaCareUploadPolicy getUploadPolicy() {
+        return mUploadPolicy;
+    }
+
+    /**
+     * Set the limits of the chunks the uploads are split into
+     *
+     * @param uploadPolicy
+     */
+    public void setUploadPolicy(@NonNull ZivaCareUploadPolicy uploadPolicy) {
+        mUploadPolicy = uploadPolicy;
+    }
+
+    /**
+     * Get the sizing of the windows the long periods are split into
+     *
+     * @return ZivaCareWindowPolicy
+     */
+    public ZivaCareWindowPolicy getWindowPolicy() {
+        return mWindowPolicy;
+    }
+
+    /**
+     * Set the sizing of the windows the long periods are split into
+     *
+     * @param windowPolicy
+     */
+    public void setWindowPolicy(@NonNull ZivaCareWindowPolicy windowPolicy) {
+        mWindowPolicy = windowPolicy;
+    }
+
+    /**
+     * Replace the retry handler of this ZivaCareSDK instance
+     *
+     * @param retryHandler
+     */
+    public void setRetryHandler(@NonNull ZivaCareRetryHandler retryHandler) {
+        mRetryHandler = retryHandler;
     }
 
     /**
@@ -0,0 +1,316 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * {@link ZivaCareLocalStore} keeping the endpoint records in a SQLite database,
+ * so the reads of a day or a period are answered without any request.<br>
+ * A record is keyed by its user, type, record time and "id", or its whole Json
+ * when it has no "id", so distinct records sharing a record time are all kept.
+ * The same key also indexes the range queries. Each merged batch is written in a single transaction
+ * through one compiled statement, with write-ahead logging so the reads are
+ * not blocked by a running sync.
+ *
+ * @author abl
+ */
+public class ZivaCareSqliteStore extends SQLiteOpenHelper implements ZivaCareLocalStore {
+
+    private static final String DATABASE = "ziva_store.db";
+    private static final int VERSION = 3;
+
+    private static final String TABLE = "records";
+    private static final String USER = "user";
+    private static final String TYPE = "type";
+    private static final String RECORD_TIME = "record_time";
+    private static final String RECORD_ID = "record_id";
+    private static final String JSON = "json";
+    private static final String ID = "id";
+
+    /**
+     * Record time of the records without one
+     */
+    private static final long NO_TIME = -1;
+
+    private static final String SQL_INSERT = "INSERT OR REPLACE INTO " + TABLE + " ("
+            + USER + ", " + TYPE + ", " + RECORD_TIME + ", " + RECORD_ID + ", " + JSON
+            + ") VALUES (?, ?, ?, ?, ?)";
+    private static final String SQL_RANGE = "SELECT " + JSON + " FROM " + TABLE
+            + " WHERE " + USER + " = ? AND " + TYPE + " = ? AND " + RECORD_TIME + " >= ? AND "
+            + RECORD_TIME + " < ? ORDER BY " + RECORD_TIME;
+    private static final String SQL_ALL = "SELECT " + JSON + " FROM " + TABLE
+            + " WHERE " + USER + " = ? AND " + TYPE + " = ? ORDER BY " + RECORD_TIME;
+    private static final String SQL_UNTIMED = "SELECT " + JSON + " FROM " + TABLE
+            + " WHERE " + USER + " = ? AND " + TYPE + " = ? AND " + RECORD_TIME + " = " + NO_TIME;
+
+    private final ZivaCareSDK mSdk;
+
+    public ZivaCareSqliteStore(@NonNull ZivaCareSDK sdk) {
+        super(sdk.getContext(), DATABASE, null, VERSION);
+        mSdk = sdk;
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + USER + " TEXT NOT NULL, "
+                + TYPE + " TEXT NOT NULL, "
+                + RECORD_TIME + " INTEGER NOT NULL, "
+                + RECORD_ID + " TEXT NOT NULL, "
+                + JSON + " TEXT NOT NULL)");
+        // the key of the records: a record whose record time changed on the
+        // server replaces its old copy
+        db.execSQL("CREATE UNIQUE INDEX " + TABLE + "_key ON " + TABLE + " ("
+                + USER + ", " + TYPE + ", " + RECORD_ID + ")");
+        // the index of the range queries
+        db.execSQL("CREATE INDEX " + TABLE + "_time ON " + TABLE + " ("
+                + USER + ", " + TYPE + ", " + RECORD_TIME + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // the store is a copy of the server data, it is simply synced again
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    /**
+     * Add or replace records in a single transaction
+     *
+     * @param userKey key of the user the records belong to
+     * @param type    one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @param records the records, as received
+     */
+    @Override
+    public void merge(String userKey, String type, List<JSONObject> records) {
+        final SQLiteDatabase db = getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        final SQLiteStatement insert = db.compileStatement(SQL_INSERT);
+        try {
+            for (JSONObject record : records) {
+                final String json = record.toString();
+                final long recordTime = ZivaCareEndpoint.parseRecordTime(
+                        record.optString(ZivaCareEndpoint.RECORD_TIME, null));
+                final String recordId = record.has(ID) ? record.optString(ID) : json;
+                insert.bindString(1, userKey);
+                insert.bindString(2, type);
+                insert.bindLong(3, recordTime >= 0 ? recordTime : NO_TIME);
+                insert.bindString(4, recordId);
+                insert.bindString(5, json);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Get the stored records of a user and type whose record time is in a
+     * range, in the order of their record time. It reads the database on the
+     * calling thread: call it from a worker thread only, or use
+     * {@link #getByPeriod(ZivaCareConfig, String, Date, Date, ZivaCareCallback)}.
+     *
+     * @param config config of the user, or null for the config of the
+     *               ZivaCareSDK instance
+     * @param type   one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @param from   first time included, in milliseconds
+     * @param to     first time excluded, in milliseconds
+     * @return the records
+     */
+    @WorkerThread
+    public List<JSONObject> query(ZivaCareConfig config, @NonNull String type, long from,
+                                  long to) {
+        return read(SQL_RANGE, new String[]{mSdk.getUserKey(config), type,
+                String.valueOf(from), String.valueOf(to)});
+    }
+
+    /**
+     * Get all the stored records of a user and type, in the order of their
+     * record time. It reads the database on the calling thread: call it from a
+     * worker thread only.
+     *
+     * @param config config of the user, or null for the config of the
+     *               ZivaCareSDK instance
+     * @param type   one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @return the records
+     */
+    @WorkerThread
+    public List<JSONObject> queryAll(ZivaCareConfig config, @NonNull String type) {
+        return read(SQL_ALL, new String[]{mSdk.getUserKey(config), type});
+    }
+
+    /**
+     * Get the stored records of a user and type that have no record time,
+     * none of the range queries returns them. It reads the database on the
+     * calling thread.
+     *
+     * @param config config of the user, or null for the config of the
+     *               ZivaCareSDK instance
+     * @param type   one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @return the records
+     */
+    @WorkerThread
+    List<JSONObject> queryUntimed(ZivaCareConfig config, @NonNull String type) {
+        return read(SQL_UNTIMED, new String[]{mSdk.getUserKey(config), type});
+    }
+
+    private List<JSONObject> read(String sql, String[] args) {
+        final List<JSONObject> records = new ArrayList<JSONObject>();
+        final Cursor cursor = getReadableDatabase().rawQuery(sql, args);
+        try {
+            while (cursor.moveToNext()) {
+                try {
+                    records.add(new JSONObject(cursor.getString(0)));
+                } catch (JSONException e) {
+                    ZivaCareLog.debug("json error: " + e.getMessage());
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return records;
+    }
+
+    /**
+     * Get the stored records of a day, like
+     * {@link ZivaCareEndpoint#getByDate(int, Date, ZivaCareCallback)} but
+     * without any request. The records are read on
+     * {@link ZivaCareExecutors#diskIo()} and delivered on the callback
+     * executor, as a Json array under the name of the type.
+     *
+     * @param config   config of the user, or null for the config of the
+     *                 ZivaCareSDK instance
+     * @param type     one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @param date
+     * @param callback
+     */
+    public void getByDate(ZivaCareConfig config, @NonNull String type, @NonNull Date date,
+                          @NonNull ZivaCareCallback callback) {
+        getByPeriod(config, type, date, date, callback);
+    }
+
+    /**
+     * Get the stored records of a period, like
+     * {@link ZivaCareEndpoint#getByPeriod(int, Date, Date, ZivaCareCallback)}
+     * but without any request. The records are read on
+     * {@link ZivaCareExecutors#diskIo()} and delivered on the callback
+     * executor, as a Json array under the name of the type.
+     *
+     * @param config    config of the user, or null for the config of the
+     *                  ZivaCareSDK instance
+     * @param type      one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @param startDate first day of the period
+     * @param endDate   last day of the period
+     * @param callback
+     */
+    public void getByPeriod(final ZivaCareConfig config, @NonNull final String type,
+                            @NonNull Date startDate, @NonNull Date endDate,
+                            @NonNull ZivaCareCallback callback) {
+        final long from = getDayStart(startDate, 0);
+        final long to = getDayStart(endDate, 1);
+        final ZivaCareCallback delivered = mSdk.deliver(callback);
+        ZivaCareExecutors.diskIo().execute(new Runnable() {
+            @Override
+            public void run() {
+                final JSONObject json = new JSONObject();
+                try {
+                    json.put(type, new JSONArray(query(config, type, from, to)));
+                } catch (JSONException e) {
+                    delivered.onError(new ZivaCareResponse(-1, e.getMessage()));
+                    return;
+                } catch (RuntimeException e) {
+                    // the database could not be opened
+                    delivered.onError(new ZivaCareResponse(-1, e.getMessage()));
+                    return;
+                }
+                delivered.onSuccess(new ZivaCareResponse(200, json));
+            }
+        });
+    }
+
+    /**
+     * Delete all the stored records of a user. They are deleted on
+     * {@link ZivaCareExecutors#diskIo()}, after the writes of a
+     * {@link ZivaCareRangeCache} already queued there. A {@link ZivaCareSync}
+     * merges on its network threads instead: cancel its running sync first,
+     * or its next batches are stored after the delete.<br>
+     * The high-water marks of the syncs are kept, call
+     * {@link ZivaCareSync#resetMarks(ZivaCareConfig)} too or the next sync
+     * only downloads the records after them.
+     *
+     * @param config config of the user, or null for the config of the
+     *               ZivaCareSDK instance
+     */
+    public void clear(final ZivaCareConfig config) {
+        ZivaCareExecutors.diskIo().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getWritableDatabase().delete(TABLE, USER + " = ?",
+                            new String[]{mSdk.getUserKey(config)});
+                } catch (RuntimeException e) {
+                    // the database could not be opened
+                    ZivaCareLog.debug("store clear error: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the start of a day in the default time zone, like the dates of the
+     * endpoint paths
+     */
+    private static long getDayStart(Date date, int addDays) {
+        final Calendar day = Calendar.getInstance();
+        day.setTime(date);
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+        day.add(Calendar.DAY_OF_MONTH, addDays);
+        return day.getTimeInMillis();
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.NetworkUtils;
+import com.zivacare.android.sdk.network.ZivaCareCompression;
+import com.zivacare.android.sdk.network.ZivaCareRecordCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+import com.zivacare.android.sdk.network.ZivaCareRetryPolicy;
+import com.zivacare.android.sdk.network.ZivaCareStreamParser;
+
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A GET request to a ZivaCare API endpoint whose response is read as a stream
+ * on {@link ZivaCareExecutors#network()}, outside of the Volley request queue.<br>
+ * Like the other endpoint calls it waits for a running token refresh, is sent
+ * once more if the access token is rejected and is retried as decided by the
+ * {@link com.zivacare.android.sdk.network.ZivaCareRetryHandler}, but only as
+ * long as no record was delivered.
+ *
+ * @author abl
+ */
+class ZivaCareStreamCall implements ZivaCareCall, ZivaCareTokenRefresher.Listener, Runnable {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_ERROR_BODY = 64 * 1024;
+
+    private final ZivaCareSDK mSdk;
+    private final String mPath;
+    private final ZivaCareConfig mCallConfig;
+    private final ZivaCareStreamParser mParser;
+    private final ZivaCareRecordCallback mCallback;
+    private final ZivaCareRetryPolicy mRetryPolicy;
+    private final String mType;
+    private final Object mTag;
+    private volatile HttpURLConnection mConnection;
+    private volatile String mAccessToken;
+    private boolean mReplayed = false;
+    private int mRetryCount = 0;
+    private long mRetryDelay = 0;
+
+    /**
+     * @param sdk
+     * @param path      endpoint path, without the API URL and the access token
+     * @param config    config holding the access token to use, or null for the
+     *                  config of the ZivaCareSDK instance
+     * @param batchSize most records delivered in one call of the callback
+     * @param tag       tag of the call, can be null
+     * @param callback
+     */
+    ZivaCareStreamCall(@NonNull ZivaCareSDK sdk, @NonNull String path, ZivaCareConfig config,
+                       int batchSize, Object tag, @NonNull ZivaCareRecordCallback callback) {
+        this(sdk, path, config, new ZivaCareStreamParser(batchSize, callback), tag, callback);
+    }
+
+    /**
+     * @param sdk
+     * @param path     endpoint path, without the API URL and the access token
+     * @param config   config holding the access token to use, or null for the
+     *                 config of the ZivaCareSDK instance
+     * @param parser   parser of the response, bound to the callback
+     * @param tag      tag of the call, can be null
+     * @param callback
+     */
+    ZivaCareStreamCall(@NonNull ZivaCareSDK sdk, @NonNull String path, ZivaCareConfig config,
+                       @NonNull ZivaCareStreamParser parser, Object tag,
+                       @NonNull ZivaCareRecordCallback callback) {
+        mSdk = sdk;
+        mPath = path;
+        mCallConfig = config;
+        mTag = tag;
+        mType = ZivaCareEndpoint.getTypeFromUrl(path);
+        mCallback = callback;
+        mParser = parser;
+        mRetryPolicy = sdk.getRetryHandler().getPolicy(mType, Request.Method.GET);
+    }
+
+    ZivaCareStreamCall start() {
+        mSdk.register(this);
+        // the token expiry is read once the configs are loaded
+        mSdk.whenLoaded(mCallConfig, new Runnable() {
+            @Override
+            public void run() {
+                if (!mParser.isCanceled())
+                    mSdk.getTokenRefresher(mCallConfig).whenValid(ZivaCareStreamCall.this);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Stop reading the response and close the connection, no callback method
+     * is called afterwards
+     */
+    @Override
+    public void cancel() {
+        mParser.cancel();
+        final HttpURLConnection connection = mConnection;
+        if (connection != null)
+            connection.disconnect();
+        mSdk.unregister(this);
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return mParser.isCanceled();
+    }
+
+    @Override
+    public Object getTag() {
+        return mTag;
+    }
+
+    @Override
+    public String getType() {
+        return mType;
+    }
+
+    @Override
+    public void onTokenReady(ZivaCareResponse response) {
+        ZivaCareExecutors.network().execute(this);
+    }
+
+    @Override
+    public void onTokenError(ZivaCareResponse response) {
+        mSdk.unregister(this);
+        if (!mParser.isCanceled())
+            mCallback.onError(response);
+    }
+
+    @Override
+    public void run() {
+        if (mParser.isCanceled())
+            return;
+        final ZivaCareConfig config = mCallConfig != null ? mCallConfig : mSdk.getConfig();
+        HttpURLConnection connection = null;
+        try {
+            mAccessToken = config.getAccessToken();
+            final URL url = new URL(mSdk.getConfig().getApiUrl() + mPath
+                    + ZivaCareConfig.ACCESS_TOKEN_QUERY_PARAM + mAccessToken);
+            connection = mSdk.getTransport().openConnection(url);
+            mConnection = connection;
+            if (mParser.isCanceled())
+                return;
+            connection.setConnectTimeout(mRetryPolicy.getTimeoutMs());
+            connection.setReadTimeout(mRetryPolicy.getTimeoutMs());
+            connection.setRequestProperty("Accept", "application/json");
+            // set explicitly, so the transport hands over the compressed bytes to count them
+            connection.setRequestProperty(ZivaCareCompression.HEADER_ACCEPT_ENCODING,
+                    ZivaCareCompression.GZIP);
+
+            final int statusCode = connection.getResponseCode();
+            final Map<String, String> headers = getHeaders(connection);
+            if (statusCode < 200 || statusCode > 299) {
+                fail(new ServerError(new NetworkResponse(statusCode,
+                        readErrorBody(connection), headers, false)));
+                return;
+            }
+
+            final String charset = HttpHeaderParser.parseCharset(headers, "UTF-8");
+            final ZivaCareCompression.CountingInputStream wire =
+                    new ZivaCareCompression.CountingInputStream(connection.getInputStream());
+            final ZivaCareCompression.CountingInputStream decoded =
+                    new ZivaCareCompression.CountingInputStream(ZivaCareCompression.decode(
+                            new BufferedInputStream(wire, BUFFER_SIZE), headers));
+            final JSONObject summary = mParser.parse(new InputStreamReader(decoded, charset));
+            mSdk.getCompression().countResponse(mType, decoded.getCount(), wire.getCount());
+            if (mParser.isCanceled())
+                return;
+            mSdk.getRetryHandler().onSuccess();
+            mSdk.unregister(this);
+            mCallback.onSuccess(new ZivaCareResponse(statusCode, summary));
+        } catch (SocketTimeoutException e) {
+            fail(new TimeoutError());
+        } catch (IOException e) {
+            fail(new NetworkError(e));
+        } finally {
+            mConnection = null;
+            if (connection != null)
+                connection.disconnect();
+        }
+    }
+
+    private void fail(final VolleyError error) {
+        if (mParser.isCanceled())
+            return;
+        // the records already delivered can not be taken back
+        if (mParser.getRecordCount() == 0) {
+            if (!mReplayed && NetworkUtils.isAuthFailure(error)) {
+                mReplayed = true;
+                mSdk.getTokenRefresher(mCallConfig).onTokenRejected(mAccessToken,
+                        new ZivaCareTokenRefresher.Listener() {
+                            @Override
+                            public void onTokenReady(ZivaCareResponse response) {
+                                ZivaCareExecutors.network().execute(ZivaCareStreamCall.this);
+                            }
+
+                            @Override
+                            public void onTokenError(ZivaCareResponse response) {
+                                mSdk.unregister(ZivaCareStreamCall.this);
+                                if (!mParser.isCanceled())
+                                    mCallback.onError(toResponse(error));
+                            }
+                        });
+                return;
+            }
+            final long delay = mSdk.getRetryHandler().getRetryDelay(mRetryPolicy, mRetryCount,
+                    mRetryDelay, error);
+            if (delay >= 0) {
+                mRetryCount++;
+                mRetryDelay = delay;
+                ZivaCareExecutors.scheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        ZivaCareExecutors.network().execute(ZivaCareStreamCall.this);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        mSdk.unregister(this);
+        mCallback.onError(toResponse(error));
+    }
+
+    private static ZivaCareResponse toResponse(VolleyError error) {
+        if (error.networkResponse != null) {
+            final NetworkResponse response = error.networkResponse;
+            return new ZivaCareResponse(response.statusCode, new String(response.data));
+        }
+        return new ZivaCareResponse(-1, error.getMessage());
+    }
+
+    /**
+     * Get the first value of every response header. The names are compared
+     * without case, the servers and proxies do not all send them alike.
+     */
+    private static Map<String, String> getHeaders(HttpURLConnection connection) {
+        final Map<String, String> headers =
+                new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null && header.getValue() != null
+                    && !header.getValue().isEmpty()) {
+                headers.put(header.getKey(), header.getValue().get(0));
+            }
+        }
+        return headers;
+    }
+
+    private static byte[] readErrorBody(HttpURLConnection connection) {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        InputStream in = null;
+        try {
+            in = connection.getErrorStream();
+            if (in == null)
+                return new byte[0];
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while (body.size() < MAX_ERROR_BODY && (read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            ZivaCareLog.debug("stream error: " + e.getMessage());
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // nothing more to read
+                }
+            }
+        }
+        return body.toByteArray();
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareRecordCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Incremental download of the endpoint records into a {@link ZivaCareLocalStore}.<br>
+ * For every user and endpoint type it keeps the latest record time seen, its
+ * high-water mark. The next sync only asks the period from the mark, less an
+ * overlap, until tomorrow, so a returning user only downloads the recent
+ * records. The records of the overlap are merged again: a record uploaded late
+ * with an older record time is still synced as long as it falls in the
+ * overlap, see {@link #setOverlap(long)}, and the store replaces the records
+ * it already holds. The types whose records have no record time are
+ * downloaded whole every time.<br>
+ * The types are streamed a few at a time, see {@link #setParallelism(int)}.
+ * A mark only moves once all the records of its type were merged, so a failed
+ * or cancelled sync is simply resumed by the next one.
+ *
+ * @author abl
+ */
+public class ZivaCareSync {
+
+    public static final String KEY_FAILED = "failed";
+
+    private static final String PREFERENCES = "ziva_sync";
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    public static final long DEFAULT_OVERLAP_MS = 7 * DAY_MS;
+    private static final int DEFAULT_PARALLELISM = 3;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int DEFAULT_VERSION = 1;
+
+    private final ZivaCareSDK mSdk;
+    private final ZivaCareLocalStore mStore;
+    private final SharedPreferences mMarks;
+    private volatile int mParallelism = DEFAULT_PARALLELISM;
+    private volatile int mBatchSize = DEFAULT_BATCH_SIZE;
+    private volatile int mVersion = DEFAULT_VERSION;
+    private volatile String[] mTypes = ZivaCareEndpoint.TYPES;
+    private volatile long mOverlapMs = DEFAULT_OVERLAP_MS;
+
+    public ZivaCareSync(@NonNull ZivaCareSDK sdk, @NonNull ZivaCareLocalStore store) {
+        mSdk = sdk;
+        mStore = store;
+        mMarks = sdk.getContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Set how many endpoint types are downloaded at the same time
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        mParallelism = parallelism;
+    }
+
+    /**
+     * Set how many records are handed to the store at once
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be positive");
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Set how far before the high-water mark every sync reads again, 7 days
+     * by default. The records uploaded to the server later than that after
+     * their record time are only synced after {@link #resetMarks(ZivaCareConfig)}.
+     *
+     * @param overlapMs
+     */
+    public void setOverlap(long overlapMs) {
+        if (overlapMs < 0)
+            throw new IllegalArgumentException("overlapMs must not be negative");
+        mOverlapMs = overlapMs;
+    }
+
+    /**
+     * Set the endpoint version downloaded, 1 by default
+     *
+     * @param version
+     */
+    public void setVersion(int version) {
+        mVersion = version;
+    }
+
+    /**
+     * Set the endpoint types downloaded, all of them by default
+     *
+     * @param types {@code ZivaCareEndpoint.TYPE_} constants
+     */
+    public void setTypes(@NonNull String... types) {
+        mTypes = types.clone();
+    }
+
+    /**
+     * Download the new records of all the types for the user of the ZivaCareSDK
+     * instance
+     *
+     * @param callback called with the number of records merged for every
+     *                 type, onError if a type failed
+     * @return ZivaCareCall handle to cancel the sync
+     */
+    public ZivaCareCall sync(@NonNull ZivaCareCallback callback) {
+        return sync(null, callback);
+    }
+
+    /**
+     * Download the new records of all the types for a user
+     *
+     * @param config   config of the user, or null for the config of the
+     *                 ZivaCareSDK instance
+     * @param callback called with the number of records merged for every
+     *                 type, onError if a type failed
+     * @return ZivaCareCall handle to cancel the sync
+     */
+    public ZivaCareCall sync(ZivaCareConfig config, @NonNull ZivaCareCallback callback) {
+        return new Run(config, mSdk.deliver(callback)).start();
+    }
+
+    /**
+     * Get the high-water mark of a user and type
+     *
+     * @param config config of the user, or null for the config of the
+     *               ZivaCareSDK instance
+     * @param type
+     * @return time in milliseconds of the latest record downloaded, or -1 if
+     * the type was never synced
+     */
+    public long getMark(ZivaCareConfig config, @NonNull String type) {
+        return mMarks.getLong(getMarkKey(mSdk.getUserKey(config), type), -1);
+    }
+
+    /**
+     * Forget the high-water marks of a user, the next sync downloads all the
+     * records again
+     *
+     * @param config config of the user, or null for the config of the
+     *               ZivaCareSDK instance
+     */
+    public void resetMarks(ZivaCareConfig config) {
+        final String prefix = getMarkKey(mSdk.getUserKey(config), "");
+        final SharedPreferences.Editor editor = mMarks.edit();
+        for (String key : mMarks.getAll().keySet()) {
+            if (key.startsWith(prefix))
+                editor.remove(key);
+        }
+        editor.apply();
+    }
+
+    private static String getMarkKey(String userKey, String type) {
+        return userKey + "|" + type;
+    }
+
+    /**
+     * One sync of all the types
+     */
+    private class Run implements ZivaCareCall {
+        private final ZivaCareConfig mConfig;
+        private volatile String mUserKey;
+        private final ZivaCareCallback mCallback;
+        private final LinkedList<String> mPending;
+        private final List<TypeSync> mRunning = new ArrayList<TypeSync>();
+        private final JSONObject mResult = new JSONObject();
+        private final JSONArray mFailed = new JSONArray();
+        private ZivaCareResponse mFirstError;
+        private boolean mFinished = false;
+        private volatile boolean mCanceled = false;
+
+        Run(ZivaCareConfig config, ZivaCareCallback callback) {
+            mConfig = config;
+            mCallback = callback;
+            mPending = new LinkedList<String>(Arrays.asList(mTypes));
+        }
+
+        Run start() {
+            mSdk.register(this);
+            // the user key is read once the configs are loaded
+            mSdk.whenLoaded(mConfig, new Runnable() {
+                @Override
+                public void run() {
+                    mUserKey = mSdk.getUserKey(mConfig);
+                    next();
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Start the next types, or deliver the result once all are done
+         */
+        private void next() {
+            final List<TypeSync> toStart = new ArrayList<TypeSync>();
+            final boolean done;
+            synchronized (this) {
+                if (mCanceled || mFinished)
+                    return;
+                while (mRunning.size() < mParallelism && !mPending.isEmpty()) {
+                    final TypeSync typeSync = new TypeSync(this, mPending.removeFirst());
+                    mRunning.add(typeSync);
+                    toStart.add(typeSync);
+                }
+                done = mRunning.isEmpty() && mPending.isEmpty();
+                if (done)
+                    mFinished = true;
+            }
+            if (done) {
+                finish();
+                return;
+            }
+            for (TypeSync typeSync : toStart) {
+                typeSync.start();
+            }
+        }
+
+        private void onTypeDone(TypeSync typeSync, ZivaCareResponse error) {
+            synchronized (this) {
+                if (mCanceled || !mRunning.remove(typeSync))
+                    return;
+                try {
+                    if (error == null) {
+                        mResult.put(typeSync.mType, typeSync.mMerged);
+                    } else {
+                        mFailed.put(typeSync.mType);
+                        if (mFirstError == null)
+                            mFirstError = error;
+                    }
+                } catch (JSONException e) {
+                    ZivaCareLog.debug("json error: " + e.getMessage());
+                }
+            }
+            next();
+        }
+
+        private void finish() {
+            mSdk.unregister(this);
+            if (mFirstError == null) {
+                mCallback.onSuccess(new ZivaCareResponse(200, mResult));
+                return;
+            }
+            try {
+                mResult.put(KEY_FAILED, mFailed);
+            } catch (JSONException e) {
+                ZivaCareLog.debug("json error: " + e.getMessage());
+            }
+            mCallback.onError(new ZivaCareResponse(mFirstError.getResponseCode(), mResult));
+        }
+
+        /**
+         * Stop the sync, the records already merged stay in the store and no
+         * callback method is called afterwards
+         */
+        @Override
+        public void cancel() {
+            final List<TypeSync> running;
+            synchronized (this) {
+                if (mCanceled || mFinished)
+                    return;
+                mCanceled = true;
+                mPending.clear();
+                running = new ArrayList<TypeSync>(mRunning);
+                mRunning.clear();
+            }
+            for (TypeSync typeSync : running) {
+                typeSync.cancel();
+            }
+            mSdk.unregister(this);
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+
+        @Override
+        public Object getTag() {
+            return null;
+        }
+
+        @Override
+        public String getType() {
+            return null;
+        }
+    }
+
+    /**
+     * Download of the new records of one type, streamed into the store
+     */
+    private class TypeSync implements ZivaCareRecordCallback {
+        private final Run mRun;
+        private final String mType;
+        private final String mMarkKey;
+        private final long mMark;
+        private volatile long mNewMark;
+        private volatile int mMerged = 0;
+        private ZivaCareCall mCall;
+
+        TypeSync(Run run, String type) {
+            mRun = run;
+            mType = type;
+            mMarkKey = getMarkKey(run.mUserKey, type);
+            mMark = mMarks.getLong(mMarkKey, -1);
+            mNewMark = mMark;
+        }
+
+        void start() {
+            final ZivaCareEndpoint endpoint = ZivaCareEndpoint.create(mSdk, mRun.mConfig, mType);
+            final ZivaCareCall call;
+            if (mMark < 0) {
+                call = endpoint.streamAll(mVersion, mBatchSize, this);
+            } else {
+                // the overlap catches the records uploaded late, plus a day
+                // of margin on both sides, the server may group the records
+                // by days of another time zone
+                final long now = System.currentTimeMillis();
+                call = endpoint.streamByPeriod(mVersion, new Date(mMark - mOverlapMs - DAY_MS),
+                        new Date(Math.max(now, mMark) + DAY_MS), mBatchSize, this);
+            }
+            // a cancel of the run before this point found no call to stop
+            synchronized (this) {
+                mCall = call;
+                if (mRun.isCanceled())
+                    call.cancel();
+            }
+        }
+
+        synchronized void cancel() {
+            if (mCall != null)
+                mCall.cancel();
+        }
+
+        @Override
+        public void onRecords(String name, List<JSONObject> records) {
+            // the mark only moves past the records that are in the store
+            if (records.isEmpty() || mRun.isCanceled())
+                return;
+            long newMark = mNewMark;
+            for (JSONObject record : records) {
+                final long recordTime = ZivaCareEndpoint.parseRecordTime(
+                        record.optString(ZivaCareEndpoint.RECORD_TIME, null));
+                if (recordTime > newMark)
+                    newMark = recordTime;
+            }
+            // all the records of the period are merged, the older ones may
+            // have been uploaded since the last sync and the store replaces
+            // the ones it already holds
+            mStore.merge(mRun.mUserKey, mType, records);
+            mMerged += records.size();
+            mNewMark = newMark;
+        }
+
+        @Override
+        public void onSuccess(ZivaCareResponse response) {
+            if (mNewMark > mMark && !mRun.isCanceled())
+                mMarks.edit().putLong(mMarkKey, mNewMark).apply();
+            mRun.onTypeDone(this, null);
+        }
+
+        @Override
+        public void onError(ZivaCareResponse response) {
+            mRun.onTypeDone(this, response);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes the access token of a {@link ZivaCareSDK} before it expires.<br>
+ * The expiry time is read from the "expires_in" value of the login and refresh
+ * responses. A refresh is scheduled a margin before that time, so the requests
+ * built by the SDK always carry a valid token.<br>
+ * Only one refresh runs at a time. Requests made while it runs, or rejected
+ * because the token expired, wait for it and are sent again with the new token.<br>
+ * A failed refresh is tried again later, with a growing delay. A refresh token
+ * rejected by the server is not sent again, the user must log in.<br>
+ * Every {@link ZivaCareConfig} used by a ZivaCareSDK instance has its own
+ * refresher, see {@link ZivaCareSDK#getTokenRefresher(ZivaCareConfig)}.
+ *
+ * @author abl
+ */
+public class ZivaCareTokenRefresher {
+
+    /**
+     * Notified when the access token can be used again.
+     */
+    public interface Listener {
+
+        /**
+         * @param response the response of the refresh request, or null if no
+         *                 refresh was needed
+         */
+        void onTokenReady(ZivaCareResponse response);
+
+        void onTokenError(ZivaCareResponse response);
+    }
+
+    private static final String LOG_TAG = ZivaCareTokenRefresher.class.getSimpleName();
+
+    public static final long DEFAULT_REFRESH_MARGIN_MS = 60 * 1000;
+    public static final long RETRY_DELAY_MS = 30 * 1000;
+    public static final long MAX_RETRY_DELAY_MS = 30 * 60 * 1000;
+
+    private static final Listener SCHEDULED_LISTENER = new Listener() {
+        @Override
+        public void onTokenReady(ZivaCareResponse response) {
+            // the SDK schedules the next refresh for the new token
+        }
+
+        @Override
+        public void onTokenError(ZivaCareResponse response) {
+            Log.e(LOG_TAG, "token refresh failed: " + response.getResponseCode());
+        }
+    };
+
+    private final ZivaCareSDK mSdk;
+    private final ZivaCareConfig mConfig;
+    private final ScheduledExecutorService mScheduler;
+    private long mRefreshMarginMs = DEFAULT_REFRESH_MARGIN_MS;
+    private long mRetryDelayMs = 0;
+    /**
+     * Refresh token rejected by the server, never sent again
+     */
+    private String mRejectedRefreshToken = null;
+    private ScheduledFuture<?> mScheduled = null;
+    private boolean mRefreshing = false;
+    private final List<Listener> mWaiting = new ArrayList<Listener>();
+
+    private final Runnable mRefreshTask = new Runnable() {
+        @Override
+        public void run() {
+            refresh(SCHEDULED_LISTENER);
+        }
+    };
+
+    public ZivaCareTokenRefresher(@NonNull ZivaCareSDK sdk) {
+        this(sdk, ZivaCareExecutors.scheduler());
+    }
+
+    /**
+     * @param sdk
+     * @param scheduler executor running the scheduled refreshes
+     */
+    public ZivaCareTokenRefresher(@NonNull ZivaCareSDK sdk,
+                                  @NonNull ScheduledExecutorService scheduler) {
+        this(sdk, null, scheduler);
+    }
+
+    /**
+     * @param sdk
+     * @param config    config whose access token is refreshed, or null for the
+     *                  config of the ZivaCareSDK instance
+     * @param scheduler executor running the scheduled refreshes
+     */
+    public ZivaCareTokenRefresher(@NonNull ZivaCareSDK sdk, ZivaCareConfig config,
+                                  @NonNull ScheduledExecutorService scheduler) {
+        mSdk = sdk;
+        mConfig = config;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Get the config whose access token is refreshed
+     *
+     * @return ZivaCareConfig
+     */
+    public ZivaCareConfig getConfig() {
+        return mConfig != null ? mConfig : mSdk.getConfig();
+    }
+
+    /**
+     * Set how long before the expiry the access token is refreshed
+     *
+     * @param refreshMarginMs
+     */
+    public synchronized void setRefreshMargin(long refreshMarginMs) {
+        mRefreshMarginMs = refreshMarginMs;
+    }
+
+    /**
+     * Schedule the refresh for the current access token expiry, replacing the
+     * one scheduled before. Nothing is scheduled in demo mode or when the
+     * expiry time or the refresh token are not known.
+     */
+    public synchronized void schedule() {
+        cancel();
+        final ZivaCareConfig config = getConfig();
+        final long expiresAt = config.getAccessTokenExpiresAt();
+        if (!canRefresh() || expiresAt <= 0)
+            return;
+        final long delay = expiresAt - mRefreshMarginMs - config.getClock().currentTimeMillis();
+        scheduleIn(Math.max(0, delay));
+    }
+
+    /**
+     * Notify the listener once the access token can be used. This happens right
+     * away, unless a refresh is running or the token is about to expire, for
+     * example because the device was asleep when the refresh was scheduled.
+     * Then the listener waits for the refresh.
+     *
+     * @param listener
+     */
+    public void whenValid(@NonNull Listener listener) {
+        final boolean ready;
+        final boolean start;
+        synchronized (this) {
+            ready = !mRefreshing && !(canRefresh() && isExpiring());
+            if (ready) {
+                if (mScheduled == null) {
+                    schedule();
+                }
+                start = false;
+            } else {
+                mWaiting.add(listener);
+                start = startRefresh();
+            }
+        }
+        if (ready) {
+            listener.onTokenReady(null);
+        } else if (start) {
+            sendRefresh();
+        }
+    }
+
+    /**
+     * Refresh the access token now and notify the listener when done. If a
+     * refresh is already running, the listener waits for that one instead.
+     *
+     * @param listener
+     */
+    public void refresh(@NonNull Listener listener) {
+        refresh(null, listener);
+    }
+
+    /**
+     * Handle an access token rejected by the server. The token is refreshed
+     * only if it is still the current one: when it was already replaced since
+     * the request was sent, the listener is notified right away, or once the
+     * running refresh is done. So the requests rejected together, even those
+     * whose rejection arrives after the refresh, cause a single refresh.
+     *
+     * @param accessToken access token the rejected request was sent with
+     * @param listener
+     */
+    public void onTokenRejected(String accessToken, @NonNull Listener listener) {
+        refresh(accessToken, listener);
+    }
+
+    private void refresh(String rejectedToken, Listener listener) {
+        final boolean start;
+        ZivaCareResponse error = null;
+        synchronized (this) {
+            if (mRefreshing) {
+                mWaiting.add(listener);
+                return;
+            }
+            if (rejectedToken != null
+                    && !rejectedToken.equals(getConfig().getAccessToken())) {
+                // replaced since the request was sent, it can be replayed
+                start = false;
+            } else if (!canRefresh()) {
+                start = false;
+                error = new ZivaCareResponse(-1, "no refresh token");
+            } else {
+                mWaiting.add(listener);
+                start = startRefresh();
+            }
+        }
+        if (start) {
+            sendRefresh();
+        } else if (error != null) {
+            listener.onTokenError(error);
+        } else {
+            listener.onTokenReady(null);
+        }
+    }
+
+    /**
+     * Check if the access token expires within the refresh margin
+     *
+     * @return boolean, false if the expiry time is not known
+     */
+    public synchronized boolean isExpiring() {
+        final ZivaCareConfig config = getConfig();
+        final long expiresAt = config.getAccessTokenExpiresAt();
+        return expiresAt > 0
+                && config.getClock().currentTimeMillis() >= expiresAt - mRefreshMarginMs;
+    }
+
+    /**
+     * Check if a refresh is running
+     *
+     * @return boolean
+     */
+    public synchronized boolean isRefreshing() {
+        return mRefreshing;
+    }
+
+    /**
+     * Cancel the scheduled refresh
+     */
+    public synchronized void cancel() {
+        if (mScheduled != null) {
+            mScheduled.cancel(false);
+            mScheduled = null;
+        }
+    }
+
+    private boolean canRefresh() {
+        final ZivaCareConfig config = getConfig();
+        final String refreshToken = config.getRefreshToken();
+        return !config.isDemo() && refreshToken != null
+                && !refreshToken.equals(mRejectedRefreshToken);
+    }
+
+    private void scheduleIn(long delayMs) {
+        mScheduled = mScheduler.schedule(mRefreshTask, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Mark the refresh as running, must hold the lock.
+     *
+     * @return true if the refresh request has to be sent by the caller
+     */
+    private boolean startRefresh() {
+        if (mRefreshing)
+            return false;
+        mRefreshing = true;
+        cancel();
+        return true;
+    }
+
+    private void sendRefresh() {
+        sendRefresh(new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                finishRefresh(response, true);
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                finishRefresh(response, false);
+            }
+        });
+    }
+
+    /**
+     * Send the refresh request. The callback must only be called once the
+     * new credentials are set in the config. Override to get the token some
+     * other way.
+     *
+     * @param callback
+     */
+    protected void sendRefresh(@NonNull ZivaCareCallback callback) {
+        final ZivaCareConfig config = getConfig();
+        mSdk.sendRefreshToken(config, config.getClientId(), config.getClientSecret(), callback);
+    }
+
+    /**
+     * Check if a refresh failed for good, like an "invalid_grant" or a revoked
+     * refresh token, rather than for a network or server error
+     */
+    private static boolean isRejected(ZivaCareResponse response) {
+        final int code = response.getResponseCode();
+        return code >= 400 && code < 500 && code != 408 && code != 429;
+    }
+
+    private void finishRefresh(ZivaCareResponse response, boolean success) {
+        final List<Listener> waiting;
+        synchronized (this) {
+            mRefreshing = false;
+            waiting = new ArrayList<Listener>(mWaiting);
+            mWaiting.clear();
+            if (success) {
+                mRetryDelayMs = 0;
+                // the SDK schedules the refresh of a token it received, a
+                // token set some other way is scheduled here
+                if (mScheduled == null)
+                    schedule();
+            } else if (isRejected(response)) {
+                // polling would only spend it again, the user must log in
+                mRejectedRefreshToken = getConfig().getRefreshToken();
+                mRetryDelayMs = 0;
+            } else {
+                mRetryDelayMs = mRetryDelayMs == 0
+                        ? RETRY_DELAY_MS : Math.min(mRetryDelayMs * 2, MAX_RETRY_DELAY_MS);
+                cancel();
+                scheduleIn(mRetryDelayMs);
+            }
+        }
+        for (Listener listener : waiting) {
+            if (success) {
+                listener.onTokenReady(response);
+            } else {
+                listener.onTokenError(response);
+            }
+        }
+    }
+}
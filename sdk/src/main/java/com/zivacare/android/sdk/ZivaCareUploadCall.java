@@ -0,0 +1,406 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareExecutorCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+import com.zivacare.android.sdk.network.ZivaCareUploadCallback;
+import com.zivacare.android.sdk.network.ZivaCareUploadPolicy;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * An upload of many rows to a ZivaCare API endpoint, split into chunks as set
+ * by the {@link ZivaCareUploadPolicy} of the ZivaCareSDK instance.<br>
+ * The chunks are POST-ed a few at a time, each one as an endpoint call of its
+ * own, so a failed chunk is retried by the
+ * {@link com.zivacare.android.sdk.network.ZivaCareRetryHandler} without sending
+ * the other ones again. A chunk rejected with "413 Request Entity Too Large"
+ * is split in two. The chunks left are still sent when one failed; the final
+ * callback tells which rows were not uploaded.
+ *
+ * @author abl
+ */
+class ZivaCareUploadCall implements ZivaCareCall {
+
+    private static final int HTTP_ENTITY_TOO_LARGE = 413;
+
+    private final ZivaCareSDK mSdk;
+    private final String mPath;
+    private final ZivaCareConfig mCallConfig;
+    private final Map mDataMap;
+    private final String mRowsKey;
+    private final Object[] mRows;
+    private final Object mTag;
+    private final String mType;
+    private final ZivaCareUploadPolicy mPolicy;
+    private final ZivaCareCallback mCallback;
+    private final ZivaCareUploadCallback mProgressCallback;
+    private final Executor mProgressExecutor;
+    private final LinkedList<Chunk> mPending = new LinkedList<Chunk>();
+    private final List<Chunk> mRunning = new ArrayList<Chunk>();
+    private final List<Chunk> mFailed = new ArrayList<Chunk>();
+    private int mChunkCount = 0;
+    private int mUploadedRows = 0;
+    private ZivaCareResponse mLastResponse;
+    private ZivaCareResponse mFirstError;
+    private boolean mFinished = false;
+    private volatile boolean mCanceled = false;
+
+    /**
+     * Rows of the upload sent in one request
+     */
+    private class Chunk implements ZivaCareCallback {
+        private final int mFirst;
+        private final int mCount;
+        private ZivaCareCall mHandle;
+
+        Chunk(int first, int count) {
+            mFirst = first;
+            mCount = count;
+        }
+
+        @Override
+        public void onSuccess(ZivaCareResponse response) {
+            onChunkSuccess(this, response);
+        }
+
+        @Override
+        public void onError(ZivaCareResponse response) {
+            onChunkError(this, response);
+        }
+    }
+
+    /**
+     * @param sdk
+     * @param path     endpoint path, without the API URL and the access token
+     * @param config   config holding the access token to use, or null for the
+     *                 config of the ZivaCareSDK instance
+     * @param dataMap  data to POST, the rows are in an Object[] under rowsKey,
+     *                 the other values are sent with every chunk
+     * @param rowsKey
+     * @param tag      tag of the call, can be null
+     * @param callback
+     */
+    ZivaCareUploadCall(@NonNull ZivaCareSDK sdk, @NonNull String path, ZivaCareConfig config,
+                       @NonNull Map dataMap, @NonNull String rowsKey, Object tag,
+                       @NonNull ZivaCareCallback callback) {
+        mSdk = sdk;
+        mPath = path;
+        mCallConfig = config;
+        mDataMap = dataMap;
+        mRowsKey = rowsKey;
+        final Object rows = dataMap.get(rowsKey);
+        mRows = rows instanceof Object[] ? (Object[]) rows : new Object[0];
+        mTag = tag;
+        mType = ZivaCareEndpoint.getTypeFromUrl(path);
+        mPolicy = sdk.getUploadPolicy();
+        mProgressCallback = callback instanceof ZivaCareUploadCallback
+                ? (ZivaCareUploadCallback) callback : null;
+        mProgressExecutor = sdk.getCallbackExecutor();
+        mCallback = sdk.deliver(callback);
+    }
+
+    ZivaCareUploadCall start() {
+        mSdk.register(this);
+        synchronized (this) {
+            split();
+        }
+        sendNext();
+        return this;
+    }
+
+    /**
+     * Split the rows in chunks within the row and byte limits of the policy
+     */
+    private void split() {
+        int first = 0;
+        int bytes = 0;
+        for (int i = 0; i < mRows.length; i++) {
+            final int rowBytes = estimateSize(mRows[i]);
+            final int count = i - first;
+            if (count > 0 && (count == mPolicy.getMaxRows()
+                    || bytes + rowBytes > mPolicy.getMaxBytes())) {
+                mPending.add(new Chunk(first, count));
+                first = i;
+                bytes = 0;
+            }
+            bytes += rowBytes;
+        }
+        // an upload without rows is still sent, as a single request
+        mPending.add(new Chunk(first, mRows.length - first));
+        mChunkCount = mPending.size();
+    }
+
+    private static int estimateSize(Object row) {
+        // the separating comma included
+        return estimateJsonSize(row) + 1;
+    }
+
+    /**
+     * Estimate the size of a value once written in Json, from the lengths of
+     * its keys and values, without writing it. The escaped characters are not
+     * counted: a chunk found too large by the server is split in two.
+     */
+    private static int estimateJsonSize(Object value) {
+        if (value instanceof Map) {
+            int size = 2;
+            for (Object entry : ((Map) value).entrySet()) {
+                final Map.Entry mapEntry = (Map.Entry) entry;
+                // quotes, colon and comma
+                size += String.valueOf(mapEntry.getKey()).length() + 4
+                        + estimateJsonSize(mapEntry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Object[]) {
+            int size = 2;
+            for (Object item : (Object[]) value) {
+                size += estimateJsonSize(item) + 1;
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            int size = 2;
+            for (Object item : (Collection) value) {
+                size += estimateJsonSize(item) + 1;
+            }
+            return size;
+        }
+        if (value instanceof CharSequence)
+            return ((CharSequence) value).length() + 2;
+        if (value instanceof Integer || value instanceof Long)
+            return countDigits(((Number) value).longValue());
+        return String.valueOf(value).length();
+    }
+
+    private static int countDigits(long value) {
+        int digits = value < 0 ? 2 : 1;
+        while (value >= 10 || value <= -10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * Send the pending chunks, as long as fewer than the parallelism of the
+     * policy are running
+     */
+    private void sendNext() {
+        final List<Chunk> toSend = new ArrayList<Chunk>();
+        synchronized (this) {
+            if (mCanceled)
+                return;
+            while (mRunning.size() < mPolicy.getParallelism() && !mPending.isEmpty()) {
+                final Chunk chunk = mPending.removeFirst();
+                mRunning.add(chunk);
+                toSend.add(chunk);
+            }
+        }
+        for (Chunk chunk : toSend) {
+            send(chunk);
+        }
+    }
+
+    private void send(Chunk chunk) {
+        final Map<Object, Object> dataMap = new LinkedHashMap<Object, Object>(mDataMap);
+        dataMap.put(mRowsKey, Arrays.copyOfRange(mRows, chunk.mFirst, chunk.mFirst + chunk.mCount));
+        final ZivaCareEndpointCall call = new ZivaCareEndpointCall(mSdk, mPath, null,
+                mCallConfig, dataMap, false);
+        // the chunk results are handled where they arrive, only the final
+        // result goes to the callback executor
+        final ZivaCareCall handle = call.subscribe(null,
+                new ZivaCareExecutorCallback(ZivaCareExecutors.immediate(), chunk));
+        synchronized (this) {
+            chunk.mHandle = handle;
+            if (mCanceled) {
+                handle.cancel();
+                return;
+            }
+        }
+        call.start();
+    }
+
+    private void onChunkSuccess(Chunk chunk, final ZivaCareResponse response) {
+        final int uploadedRows;
+        synchronized (this) {
+            if (mCanceled || !mRunning.remove(chunk))
+                return;
+            mUploadedRows += chunk.mCount;
+            mLastResponse = response;
+            uploadedRows = mUploadedRows;
+        }
+        if (mProgressCallback != null) {
+            mProgressExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCanceled)
+                        mProgressCallback.onProgress(uploadedRows, mRows.length, response);
+                }
+            });
+        }
+        next();
+    }
+
+    private void onChunkError(Chunk chunk, ZivaCareResponse response) {
+        synchronized (this) {
+            if (mCanceled || !mRunning.remove(chunk))
+                return;
+            if (response.getResponseCode() == HTTP_ENTITY_TOO_LARGE && chunk.mCount > 1) {
+                // send the two halves first, they are next in the order of the rows
+                final int half = chunk.mCount / 2;
+                mPending.addFirst(new Chunk(chunk.mFirst + half, chunk.mCount - half));
+                mPending.addFirst(new Chunk(chunk.mFirst, half));
+                mChunkCount++;
+            } else {
+                mFailed.add(chunk);
+                if (mFirstError == null)
+                    mFirstError = response;
+                mLastResponse = response;
+            }
+        }
+        next();
+    }
+
+    /**
+     * Send the next chunks, or deliver the result once all the chunks are done
+     */
+    private void next() {
+        final ZivaCareResponse result;
+        final boolean success;
+        synchronized (this) {
+            if (mFinished)
+                return;
+            if (!mRunning.isEmpty() || !mPending.isEmpty()) {
+                result = null;
+                success = false;
+            } else {
+                mFinished = true;
+                success = mFailed.isEmpty();
+                result = getResult();
+            }
+        }
+        if (result == null) {
+            sendNext();
+            return;
+        }
+        mSdk.unregister(this);
+        if (success) {
+            mCallback.onSuccess(result);
+        } else {
+            mCallback.onError(result);
+        }
+    }
+
+    /**
+     * Get the final response: the response to the request if the upload was
+     * sent in one, else a summary of the chunks
+     */
+    private ZivaCareResponse getResult() {
+        if (mChunkCount == 1)
+            return mLastResponse;
+        final JSONObject json = new JSONObject();
+        try {
+            json.put(ZivaCareUploadCallback.KEY_CHUNKS, mChunkCount);
+            json.put(ZivaCareUploadCallback.KEY_ROWS, mRows.length);
+            json.put(ZivaCareUploadCallback.KEY_UPLOADED_ROWS, mUploadedRows);
+            if (mFirstError != null) {
+                // the failed rows as [first, last] ranges, in the order of the rows
+                final List<Chunk> failed = new ArrayList<Chunk>(mFailed);
+                Collections.sort(failed, new Comparator<Chunk>() {
+                    @Override
+                    public int compare(Chunk lhs, Chunk rhs) {
+                        return lhs.mFirst < rhs.mFirst ? -1 : (lhs.mFirst == rhs.mFirst ? 0 : 1);
+                    }
+                });
+                final JSONArray ranges = new JSONArray();
+                for (Chunk chunk : failed) {
+                    ranges.put(new JSONArray().put(chunk.mFirst)
+                            .put(chunk.mFirst + chunk.mCount - 1));
+                }
+                json.put(ZivaCareUploadCallback.KEY_FAILED_ROWS, ranges);
+                json.put(ZivaCareUploadCallback.KEY_ERROR, mFirstError.getResponseString());
+            }
+        } catch (JSONException e) {
+            ZivaCareLog.debug("json error: " + e.getMessage());
+        }
+        return new ZivaCareResponse(mFirstError != null ? mFirstError.getResponseCode() : 200,
+                json);
+    }
+
+    /**
+     * Stop the upload, the chunks already uploaded are not taken back and no
+     * callback method is called afterwards
+     */
+    @Override
+    public void cancel() {
+        final List<Chunk> running;
+        synchronized (this) {
+            if (mCanceled || mFinished)
+                return;
+            mCanceled = true;
+            mPending.clear();
+            running = new ArrayList<Chunk>(mRunning);
+            mRunning.clear();
+        }
+        for (Chunk chunk : running) {
+            if (chunk.mHandle != null)
+                chunk.mHandle.cancel();
+        }
+        mSdk.unregister(this);
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    @Override
+    public Object getTag() {
+        return mTag;
+    }
+
+    @Override
+    public String getType() {
+        return mType;
+    }
+}
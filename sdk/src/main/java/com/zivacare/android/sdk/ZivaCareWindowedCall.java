@@ -0,0 +1,436 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk;
+
+import android.support.annotation.NonNull;
+
+import com.android.volley.Request;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareExecutorCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+import com.zivacare.android.sdk.network.ZivaCareRetryHandler;
+import com.zivacare.android.sdk.network.ZivaCareRetryPolicy;
+import com.zivacare.android.sdk.network.ZivaCareWindowCallback;
+import com.zivacare.android.sdk.network.ZivaCareWindowPolicy;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A GET of a long period of an endpoint, split into windows of a few days
+ * fetched a few at a time, as set by the {@link ZivaCareWindowPolicy} of the
+ * ZivaCareSDK instance.<br>
+ * Every window is an endpoint call of its own, so it is shared, cached and
+ * retried like any other GET. A window that still fails is split in two and
+ * fetched again, down to a single day; the other failures are retried as
+ * decided by the {@link ZivaCareRetryHandler}. The windows are delivered in
+ * chronological order as soon as all the windows before them arrived, and no
+ * new window is started while twice the parallelism of the policy are already
+ * fetched or waiting for an earlier one, so few windows are held at a time.
+ *
+ * @author abl
+ */
+class ZivaCareWindowedCall implements ZivaCareCall {
+
+    private static final int HTTP_ENTITY_TOO_LARGE = 413;
+
+    /**
+     * Windows running or waiting to be delivered, per window fetched in parallel
+     */
+    private static final int WINDOWS_AHEAD = 2;
+
+    private final ZivaCareSDK mSdk;
+    private final String mPeriodPath;
+    private final ZivaCareConfig mCallConfig;
+    private final Calendar mStart;
+    private final int mTotalDays;
+    private final Object mTag;
+    private final String mType;
+    private final ZivaCareWindowPolicy mPolicy;
+    private final ZivaCareRetryPolicy mRetryPolicy;
+    private final ZivaCareWindowCallback mCallback;
+    private final Executor mExecutor;
+    private final DateFormat mDateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+    /**
+     * Windows split after a failure, fetched before any new window
+     */
+    private final LinkedList<Window> mRetries = new LinkedList<Window>();
+    private final List<Window> mRunning = new ArrayList<Window>();
+    /**
+     * Windows fetched but not delivered yet, by first day
+     */
+    private final TreeMap<Integer, Window> mDone = new TreeMap<Integer, Window>();
+    /**
+     * Windows and final result waiting to be handed to the callback, in order
+     */
+    private final Queue<Runnable> mDeliveries = new ConcurrentLinkedQueue<Runnable>();
+    private int mWindowDays;
+    private int mNextDay = 0;
+    private int mNextDeliveryDay = 0;
+    private int mWindowCount = 0;
+    /**
+     * Windows waiting for their retry delay
+     */
+    private int mDelayedCount = 0;
+    private boolean mFinished = false;
+    private volatile boolean mCanceled = false;
+
+    /**
+     * Days of the period fetched in one request
+     */
+    private class Window implements ZivaCareCallback {
+        private final int mFirstDay;
+        private final int mDays;
+        private ZivaCareCall mHandle;
+        private long mStartTime;
+        private ZivaCareResponse mResponse;
+        private int mRetryCount = 0;
+        private long mRetryDelay = 0;
+
+        Window(int firstDay, int days) {
+            mFirstDay = firstDay;
+            mDays = days;
+        }
+
+        @Override
+        public void onSuccess(ZivaCareResponse response) {
+            onWindowSuccess(this, response);
+        }
+
+        @Override
+        public void onError(ZivaCareResponse response) {
+            onWindowError(this, response);
+        }
+    }
+
+    /**
+     * @param sdk
+     * @param periodPath endpoint path of a period, without the dates, like
+     *                   "/api/v1/human/heart_rates/period/"
+     * @param config     config holding the access token to use, or null for
+     *                   the config of the ZivaCareSDK instance
+     * @param startDate  first day of the period
+     * @param endDate    last day of the period
+     * @param tag        tag of the call, can be null
+     * @param callback
+     */
+    ZivaCareWindowedCall(@NonNull ZivaCareSDK sdk, @NonNull String periodPath,
+                         ZivaCareConfig config, @NonNull Date startDate, @NonNull Date endDate,
+                         Object tag, @NonNull ZivaCareWindowCallback callback) {
+        mSdk = sdk;
+        mPeriodPath = periodPath;
+        mCallConfig = config;
+        mStart = getDay(startDate);
+        mTotalDays = countDays(mStart, getDay(endDate));
+        mTag = tag;
+        mType = ZivaCareEndpoint.getTypeFromUrl(periodPath);
+        mPolicy = sdk.getWindowPolicy();
+        mRetryPolicy = sdk.getRetryHandler().getPolicy(mType, Request.Method.GET);
+        mWindowDays = mPolicy.getInitialDays();
+        mCallback = callback;
+        mExecutor = sdk.getCallbackExecutor();
+    }
+
+    private static Calendar getDay(Date date) {
+        final Calendar day = Calendar.getInstance();
+        day.setTime(date);
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+        return day;
+    }
+
+    /**
+     * Count the days from start to end, both included, at least one
+     */
+    private static int countDays(Calendar start, Calendar end) {
+        final Calendar day = (Calendar) start.clone();
+        int days = 0;
+        while (!day.after(end)) {
+            day.add(Calendar.DAY_OF_MONTH, 1);
+            days++;
+        }
+        return Math.max(1, days);
+    }
+
+    private Date getDate(int dayOffset) {
+        final Calendar day = (Calendar) mStart.clone();
+        day.add(Calendar.DAY_OF_MONTH, dayOffset);
+        return day.getTime();
+    }
+
+    ZivaCareWindowedCall start() {
+        mSdk.register(this);
+        sendNext();
+        return this;
+    }
+
+    /**
+     * Send the split windows, then new ones, as long as fewer than the
+     * parallelism of the policy are running and the windows held are within
+     * {@link #WINDOWS_AHEAD} per parallel window
+     */
+    private void sendNext() {
+        final List<Window> toSend = new ArrayList<Window>();
+        synchronized (this) {
+            if (mCanceled || mFinished)
+                return;
+            while (mRunning.size() < mPolicy.getParallelism()) {
+                final Window window;
+                if (!mRetries.isEmpty()) {
+                    window = mRetries.removeFirst();
+                } else if (mNextDay < mTotalDays && mRunning.size() + mDone.size()
+                        + mDelayedCount < WINDOWS_AHEAD * mPolicy.getParallelism()) {
+                    window = new Window(mNextDay, Math.min(mWindowDays, mTotalDays - mNextDay));
+                    mNextDay += window.mDays;
+                    mWindowCount++;
+                } else {
+                    break;
+                }
+                mRunning.add(window);
+                toSend.add(window);
+            }
+        }
+        for (Window window : toSend) {
+            send(window);
+        }
+    }
+
+    private void send(Window window) {
+        final String path;
+        synchronized (mDateFormat) {
+            path = mPeriodPath + mDateFormat.format(getDate(window.mFirstDay)) + "/"
+                    + mDateFormat.format(getDate(window.mFirstDay + window.mDays - 1));
+        }
+        window.mStartTime = System.currentTimeMillis();
+        // the window results are handled where they arrive, the callback
+        // executor only gets them in order
+        final ZivaCareCall handle = mSdk.callEndpoint(path, mCallConfig,
+                new ZivaCareExecutorCallback(ZivaCareExecutors.immediate(), window));
+        synchronized (this) {
+            window.mHandle = handle;
+            if (!mCanceled)
+                return;
+        }
+        handle.cancel();
+    }
+
+    private void onWindowSuccess(Window window, ZivaCareResponse response) {
+        final boolean finished;
+        synchronized (this) {
+            if (mCanceled || mFinished || !mRunning.remove(window))
+                return;
+            window.mResponse = response;
+            mDone.put(window.mFirstDay, window);
+            final long bytes = Math.max(0, response.getResponseLength());
+            mWindowDays = mPolicy.getNextDays(mWindowDays, window.mDays, bytes,
+                    System.currentTimeMillis() - window.mStartTime);
+            // hand over the windows that are now next in order
+            while (!mDone.isEmpty() && mDone.firstKey() == mNextDeliveryDay) {
+                final Window next = mDone.remove(mNextDeliveryDay);
+                mNextDeliveryDay += next.mDays;
+                mDeliveries.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        mCallback.onWindow(getDate(next.mFirstDay),
+                                getDate(next.mFirstDay + next.mDays - 1), next.mResponse);
+                    }
+                });
+            }
+            if (mNextDeliveryDay >= mTotalDays) {
+                mFinished = true;
+                mDeliveries.add(getResult());
+            }
+            finished = mFinished;
+        }
+        if (finished)
+            mSdk.unregister(this);
+        deliver();
+        sendNext();
+    }
+
+    private void onWindowError(Window window, final ZivaCareResponse response) {
+        final List<Window> running;
+        synchronized (this) {
+            if (mCanceled || mFinished || !mRunning.remove(window))
+                return;
+            if (window.mDays > 1 && isSplittable(response)) {
+                // a smaller window may get through, the next ones are made smaller too
+                final int half = window.mDays / 2;
+                mRetries.addFirst(new Window(window.mFirstDay + half, window.mDays - half));
+                mRetries.addFirst(new Window(window.mFirstDay, half));
+                mWindowCount++;
+                mWindowDays = Math.max(mPolicy.getMinDays(), Math.min(mWindowDays, half));
+                running = null;
+            } else if (scheduleRetry(window, response)) {
+                running = null;
+            } else {
+                // the windows after it can not be delivered in order anymore
+                mFinished = true;
+                running = new ArrayList<Window>(mRunning);
+                mRunning.clear();
+                mRetries.clear();
+                mDone.clear();
+                mDeliveries.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        mCallback.onError(response);
+                    }
+                });
+            }
+        }
+        if (running == null) {
+            sendNext();
+            return;
+        }
+        mSdk.unregister(this);
+        for (Window other : running) {
+            if (other.mHandle != null)
+                other.mHandle.cancel();
+        }
+        deliver();
+    }
+
+    /**
+     * Fetch a failed window again after the delay set by the retry handler
+     *
+     * @return false if the window must not be retried
+     */
+    private boolean scheduleRetry(final Window window, ZivaCareResponse response) {
+        final long delay = mSdk.getRetryHandler().getRetryDelay(mRetryPolicy,
+                window.mRetryCount, window.mRetryDelay, response);
+        if (delay < 0)
+            return false;
+        window.mRetryCount++;
+        window.mRetryDelay = delay;
+        mDelayedCount++;
+        ZivaCareExecutors.scheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ZivaCareWindowedCall.this) {
+                    mDelayedCount--;
+                    if (mCanceled || mFinished)
+                        return;
+                    mRetries.addFirst(window);
+                }
+                sendNext();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Check if a failure may go away with a shorter period: the request
+     * timed out, failed to connect, or the response was too large
+     */
+    private static boolean isSplittable(ZivaCareResponse response) {
+        final int code = response.getResponseCode();
+        return code == -1 || code == HTTP_ENTITY_TOO_LARGE || code >= 500;
+    }
+
+    private Runnable getResult() {
+        final JSONObject json = new JSONObject();
+        try {
+            json.put(ZivaCareWindowCallback.KEY_WINDOWS, mWindowCount);
+        } catch (JSONException e) {
+            ZivaCareLog.debug("json error: " + e.getMessage());
+        }
+        return new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onSuccess(new ZivaCareResponse(200, json));
+            }
+        };
+    }
+
+    /**
+     * Hand the waiting windows to the callback executor. They are taken one
+     * by one under a lock, so they stay in order even on a thread pool.
+     */
+    private void deliver() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mDeliveries) {
+                    Runnable delivery;
+                    while (!mCanceled && (delivery = mDeliveries.poll()) != null) {
+                        delivery.run();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop fetching the windows, no callback method is called afterwards
+     */
+    @Override
+    public void cancel() {
+        final List<Window> running;
+        synchronized (this) {
+            if (mCanceled)
+                return;
+            mCanceled = true;
+            running = new ArrayList<Window>(mRunning);
+            mRunning.clear();
+            mRetries.clear();
+        }
+        for (Window window : running) {
+            if (window.mHandle != null)
+                window.mHandle.cancel();
+        }
+        mSdk.unregister(this);
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    @Override
+    public Object getTag() {
+        return mTag;
+    }
+
+    @Override
+    public String getType() {
+        return mType;
+    }
+}
@@ -31,7 +31,7 @@ import com.zivacare.android.sdk.ZivaCareSDK;
 /**
  * Created by Stelian Morariu on 22/6/2015.
  */
-public class ZivaCareBodyFatsEndpoint extends ZivaCareEndpoint {
+public class ZivaCareBodyFatsEndpoint extends ZivaCareScalarEndpoint {
     public static final String[] DATA_NAMES = new String[]{"value",
             "unit", "record_time"};
 
@@ -25,9 +25,12 @@ package com.zivacare.android.sdk.endpoints;
 
 import android.support.annotation.NonNull;
 
+import com.zivacare.android.sdk.ZivaCareCall;
 import com.zivacare.android.sdk.ZivaCareConfig;
 import com.zivacare.android.sdk.ZivaCareSDK;
 import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareRecordCallback;
+import com.zivacare.android.sdk.network.ZivaCareWindowCallback;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -59,27 +62,52 @@ public abstract class ZivaCareEndpoint {
     public static final String TYPE_STEPS = "steps";
     public static final String TYPE_WEIGHTS = "weights";
 
+    /**
+     * All the endpoint types
+     */
+    public static final String[] TYPES = new String[]{TYPE_PROFILE, TYPE_ACTIVITIES,
+            TYPE_BLOOD_GLUCOSES, TYPE_BLOOD_OXYGENS, TYPE_BLOOD_PRESSURES, TYPE_FALLS,
+            TYPE_BODY_FATS, TYPE_BMIS, TYPE_GENETICS, TYPE_HEART_RATES, TYPE_HEIGHTS,
+            TYPE_LOCATIONS, TYPE_MEALS, TYPE_RESPIRATION_RATES, TYPE_SLEEPS, TYPE_SLEEP_SUMMARY,
+            TYPE_STEPS, TYPE_WEIGHTS};
+
+    /**
+     * Name of the time field of the records, like "2014-09-16T15:52:01+0000"
+     */
+    public static final String RECORD_TIME = "record_time";
+
     public static final String OP_INSERT = "insert";
     public static final String OP_UPDATE = "update";
 
-    private static final String API_URL_GENERAL = "/api/v%s/human/%s";
+    protected static final String API_URL_GENERAL = "/api/v%s/human/%s";
     private static final String API_URL_CODE = "/api/v%s/human/%s/%s";
     private static final String API_URL_DATE = "/api/v%s/human/%s/daily/%s";
-    private static final String API_URL_PERIOD = "/api/v%s/human/%s/period/%s/%s";
+    protected static final String API_URL_PERIOD = "/api/v%s/human/%s/period/%s/%s";
+    private static final String API_URL_PERIOD_WINDOWED = "/api/v%s/human/%s/period/";
+
+    private static final String HUMAN_PATH = "/human/";
 
     private static final String USER_CODE = "user_code";
     private static final String SOURCE = "source";
     private static final String DATA = "data";
     private static final String OP = "op";
 
-    private static final DateFormat DATE_FORMAT = new SimpleDateFormat(
-            "yyyy-MM-dd");
-
-    static {
-        DATE_FORMAT.setLenient(true);
-    }
+    /**
+     * One format per thread, SimpleDateFormat is not thread safe and the
+     * endpoints are called from the SDK background threads too
+     */
+    private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+            dateFormat.setLenient(true);
+            return dateFormat;
+        }
+    };
 
     protected ZivaCareConfig config = null;
+    protected Object tag = null;
+    protected boolean keepData = false;
     protected ZivaCareSDK mSdk;
 
     public ZivaCareEndpoint(@NonNull ZivaCareSDK sdk) {
@@ -90,10 +118,12 @@ public abstract class ZivaCareEndpoint {
      * Get all endpoint data
      *
      * @param version
+     * @return ZivaCareCall handle to cancel the call
      */
-    public void getAll(@NonNull int version, @NonNull ZivaCareCallback callback) {
-        mSdk.callEndpoint(
-                String.format(API_URL_GENERAL, version, getType()), config, callback);
+    public ZivaCareCall getAll(@NonNull int version, @NonNull ZivaCareCallback callback) {
+        return mSdk.callEndpoint(
+                String.format(API_URL_GENERAL, version, getType()), config, tag, keepData,
+                callback);
     }
 
     /**
@@ -101,10 +131,12 @@ public abstract class ZivaCareEndpoint {
      *
      * @param version
      * @param code
+     * @return ZivaCareCall handle to cancel the call
      */
-    public void getByCode(int version, String code, @NonNull ZivaCareCallback callback) {
-        mSdk.callEndpoint(
-                String.format(API_URL_CODE, version, getType(), code), config, callback);
+    public ZivaCareCall getByCode(int version, String code, @NonNull ZivaCareCallback callback) {
+        return mSdk.callEndpoint(
+                String.format(API_URL_CODE, version, getType(), code), config, tag, keepData,
+                callback);
     }
 
     /**
@@ -112,11 +144,12 @@ public abstract class ZivaCareEndpoint {
      *
      * @param version
      * @param date
+     * @return ZivaCareCall handle to cancel the call
      */
-    public void getByDate(int version, Date date, @NonNull ZivaCareCallback callback) {
-        mSdk.callEndpoint(
+    public ZivaCareCall getByDate(int version, Date date, @NonNull ZivaCareCallback callback) {
+        return mSdk.callEndpoint(
                 String.format(API_URL_DATE, version, getType(),
-                        DATE_FORMAT.format(date)), config, callback);
+                        formatDate(date)), config, tag, keepData, callback);
     }
 
     /**
@@ -125,22 +158,232 @@ public abstract class ZivaCareEndpoint {
      * @param version
      * @param startDate
      * @param endDate
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall getByPeriod(int version, Date startDate,
+                                    Date endDate, @NonNull ZivaCareCallback callback) {
+        return mSdk.callEndpoint(
+                String.format(API_URL_PERIOD, version, getType(),
+                        formatDate(startDate),
+                        formatDate(endDate)), config, tag, keepData, callback);
+    }
+
+    /**
+     * Get all endpoint data filtered by a long period, fetched in windows of a
+     * few days at a time. The windows are delivered in chronological order as
+     * soon as they arrive, see
+     * {@link com.zivacare.android.sdk.network.ZivaCareWindowPolicy}
+     *
+     * @param version
+     * @param startDate
+     * @param endDate
+     * @param callback
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall getByPeriodWindowed(int version, Date startDate, Date endDate,
+                                            @NonNull ZivaCareWindowCallback callback) {
+        return mSdk.callEndpointByWindows(
+                String.format(API_URL_PERIOD_WINDOWED, version, getType()), config,
+                startDate, endDate, tag, callback);
+    }
+
+    /**
+     * Stream all endpoint data, the records are delivered in batches while the
+     * response is read
+     *
+     * @param version
+     * @param batchSize most records delivered in one call of the callback
+     * @param callback  called on a background thread
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall streamAll(int version, int batchSize,
+                                  @NonNull ZivaCareRecordCallback callback) {
+        return mSdk.streamEndpoint(
+                String.format(API_URL_GENERAL, version, getType()), config, batchSize, tag,
+                callback);
+    }
+
+    /**
+     * Stream all endpoint data filtered by period, the records are delivered in
+     * batches while the response is read
+     *
+     * @param version
+     * @param startDate
+     * @param endDate
+     * @param batchSize most records delivered in one call of the callback
+     * @param callback  called on a background thread
+     * @return ZivaCareCall handle to cancel the call
      */
-    public void getByPeriod(int version, Date startDate,
-                            Date endDate, @NonNull ZivaCareCallback callback) {
-        mSdk.callEndpoint(
+    public ZivaCareCall streamByPeriod(int version, Date startDate, Date endDate, int batchSize,
+                                       @NonNull ZivaCareRecordCallback callback) {
+        return mSdk.streamEndpoint(
                 String.format(API_URL_PERIOD, version, getType(),
-                        DATE_FORMAT.format(startDate),
-                        DATE_FORMAT.format(endDate)), config, callback);
+                        formatDate(startDate),
+                        formatDate(endDate)), config, batchSize, tag, callback);
     }
 
     /**
      * Get the default ZivaCareSDK date format to be used
      *
-     * @return DateFormat
+     * @return a new DateFormat on every call, the caller may keep it but not
+     * share it with other threads
+     * @deprecated the endpoint methods take Dates and format them themselves
      */
+    @Deprecated
     public static DateFormat getEndpointDateFormat() {
-        return DATE_FORMAT;
+        return (DateFormat) DATE_FORMAT.get().clone();
+    }
+
+    /**
+     * Format a date for an endpoint path, safe to call from any thread
+     *
+     * @param date
+     * @return String like "2015-06-04"
+     */
+    protected static String formatDate(Date date) {
+        return DATE_FORMAT.get().format(date);
+    }
+
+    /**
+     * Get the endpoint type (TYPE constant) of an endpoint path or URL
+     *
+     * @param url
+     * @return String or null if the URL is not an endpoint URL
+     */
+    public static String getTypeFromUrl(String url) {
+        if (url == null)
+            return null;
+        final int index = url.indexOf(HUMAN_PATH);
+        if (index < 0)
+            return null;
+        final int start = index + HUMAN_PATH.length();
+        int end = start;
+        while (end < url.length() && "/?".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        return end > start ? url.substring(start, end) : null;
+    }
+
+    /**
+     * Create the endpoint of a type
+     *
+     * @param sdk
+     * @param config not mandatory, if null the config of the ZivaCareSDK instance is used
+     * @param type   one of the TYPE constants
+     * @return ZivaCareEndpoint
+     */
+    public static ZivaCareEndpoint create(@NonNull ZivaCareSDK sdk, ZivaCareConfig config,
+                                          @NonNull String type) {
+        if (TYPE_PROFILE.equals(type))
+            return new ZivaCareProfileEndpoint(sdk, config);
+        if (TYPE_ACTIVITIES.equals(type))
+            return new ZivaCareActivitiesEndpoint(sdk, config);
+        if (TYPE_BLOOD_GLUCOSES.equals(type))
+            return new ZivaCareBloodGlucosesEndpoint(sdk, config);
+        if (TYPE_BLOOD_OXYGENS.equals(type))
+            return new ZivaCareBloodOxygensEndpoint(sdk, config);
+        if (TYPE_BLOOD_PRESSURES.equals(type))
+            return new ZivaCareBloodPressuresEndpoint(sdk, config);
+        if (TYPE_FALLS.equals(type))
+            return new ZivaCareFallsEndpoint(sdk, config);
+        if (TYPE_BODY_FATS.equals(type))
+            return new ZivaCareBodyFatsEndpoint(sdk, config);
+        if (TYPE_BMIS.equals(type))
+            return new ZivaCareBmisEndpoint(sdk, config);
+        if (TYPE_GENETICS.equals(type))
+            return new ZivaCareGeneticsEndpoint(sdk, config);
+        if (TYPE_HEART_RATES.equals(type))
+            return new ZivaCareHeartRatesEndpoint(sdk, config);
+        if (TYPE_HEIGHTS.equals(type))
+            return new ZivaCareHeightsEndpoint(sdk, config);
+        if (TYPE_LOCATIONS.equals(type))
+            return new ZivaCareLocationsEndpoint(sdk, config);
+        if (TYPE_MEALS.equals(type))
+            return new ZivaCareMealsEndpoint(sdk, config);
+        if (TYPE_RESPIRATION_RATES.equals(type))
+            return new ZivaCareRespirationRatesEndpoint(sdk, config);
+        if (TYPE_SLEEPS.equals(type))
+            return new ZivaCareSleepsEndpoint(sdk, config);
+        if (TYPE_SLEEP_SUMMARY.equals(type))
+            return new ZivaCareSleepSummaryEndpoint(sdk, config);
+        if (TYPE_STEPS.equals(type))
+            return new ZivaCareStepsEndpoint(sdk, config);
+        if (TYPE_WEIGHTS.equals(type))
+            return new ZivaCareWeightsEndpoint(sdk, config);
+        throw new IllegalArgumentException("unknown endpoint type: " + type);
+    }
+
+    /**
+     * Parse the record time of a record, like "2014-09-16T15:52:01+0000". The
+     * fixed layout is read without a DateFormat, so it is cheap enough for
+     * every record of a large response. The offset can also be "+00:00", "Z",
+     * or missing for UTC.
+     *
+     * @param recordTime
+     * @return time in milliseconds, or -1 if it can not be parsed
+     */
+    public static long parseRecordTime(String recordTime) {
+        if (recordTime == null || recordTime.length() < 19)
+            return -1;
+        final int year = parseDigits(recordTime, 0, 4);
+        final int month = parseDigits(recordTime, 5, 2);
+        final int day = parseDigits(recordTime, 8, 2);
+        final int hour = parseDigits(recordTime, 11, 2);
+        final int minute = parseDigits(recordTime, 14, 2);
+        final int second = parseDigits(recordTime, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 60
+                || recordTime.charAt(4) != '-' || recordTime.charAt(7) != '-'
+                || recordTime.charAt(13) != ':' || recordTime.charAt(16) != ':')
+            return -1;
+        int index = 19;
+        // fraction of a second, ignored
+        if (index < recordTime.length() && recordTime.charAt(index) == '.') {
+            index++;
+            while (index < recordTime.length() && Character.isDigit(recordTime.charAt(index))) {
+                index++;
+            }
+        }
+        int offsetMinutes = 0;
+        if (index < recordTime.length() && recordTime.charAt(index) != 'Z') {
+            final char sign = recordTime.charAt(index);
+            if (sign != '+' && sign != '-')
+                return -1;
+            final int offsetHours = parseDigits(recordTime, index + 1, 2);
+            final int colon = index + 3 < recordTime.length()
+                    && recordTime.charAt(index + 3) == ':' ? 1 : 0;
+            final int offsetMins = parseDigits(recordTime, index + 3 + colon, 2);
+            if (offsetHours < 0 || offsetMins < 0)
+                return -1;
+            offsetMinutes = (offsetHours * 60 + offsetMins) * (sign == '-' ? -1 : 1);
+        }
+        final long days = daysFromCivil(year, month, day);
+        return ((days * 24 + hour) * 60 + minute - offsetMinutes) * 60000L + second * 1000L;
+    }
+
+    private static int parseDigits(String text, int start, int count) {
+        if (start + count > text.length())
+            return -1;
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Days from 1970-01-01 to a date of the proleptic Gregorian calendar
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
     }
 
     /**
@@ -156,8 +399,8 @@ public abstract class ZivaCareEndpoint {
     public abstract String getType();
 
     /**
-     * Setting the config is not mandatory if there is a system property
-     * "access_token" set up and valid
+     * Setting the config is not mandatory, if it is not set the config of the
+     * ZivaCareSDK instance is used
      *
      * @param config
      */
@@ -165,6 +408,33 @@ public abstract class ZivaCareEndpoint {
         this.config = config;
     }
 
+    /**
+     * Set the tag of the calls made by this endpoint, they can then be
+     * cancelled together with {@link ZivaCareSDK#cancelByTag(Object)}, for
+     * example when the screen showing them is closed.
+     *
+     * @param tag
+     */
+    public void setTag(Object tag) {
+        this.tag = tag;
+    }
+
+    public Object getTag() {
+        return tag;
+    }
+
+    /**
+     * Set if the responses of the GET calls made by this endpoint keep their
+     * body as received, for
+     * {@link com.zivacare.android.sdk.network.ZivaCareResponse#getResponseData()}. The
+     * body is dropped by default, the parsed Json holds the same data.
+     *
+     * @param keepData
+     */
+    public void setKeepResponseData(boolean keepData) {
+        this.keepData = keepData;
+    }
+
     /**
      * Send data to the endpoint to update or insert
      *
@@ -173,14 +443,16 @@ public abstract class ZivaCareEndpoint {
      * @param source     - source from where the data is sent
      * @param dataValues - an array of arrays with the parameter values <b>without
      *                   <i>user_code & source</i></b>
+     * @return ZivaCareCall handle to cancel the call
      */
-    public void setData(int version, String operation,
-                        String source, Object[][] dataValues, @NonNull ZivaCareCallback callback) {
-        setData(version, operation, source, null, dataValues, callback);
+    public ZivaCareCall setData(int version, String operation,
+                                String source, Object[][] dataValues, @NonNull ZivaCareCallback callback) {
+        return setData(version, operation, source, null, dataValues, callback);
     }
 
     /**
-     * Send data to the endpoint to update or insert
+     * Send data to the endpoint to update or insert. Many rows are sent in
+     * chunks, see {@link com.zivacare.android.sdk.network.ZivaCareUploadPolicy}
      *
      * @param version    - endpoint version
      * @param operation  - OP_INSERT or OP_UPDATE
@@ -192,10 +464,11 @@ public abstract class ZivaCareEndpoint {
      *                   source</i></b>
      * @param dataValues - an array of arrays with the parameter values <b>without
      *                   <i>user_code & source</i></b>
+     * @return ZivaCareCall handle to cancel the call
      */
-    public void setData(@NonNull int version, @NonNull String operation,
-                        @NonNull String source,  String[] dataNames,
-                        @NonNull Object[][] dataValues, @NonNull ZivaCareCallback callback) {
+    public ZivaCareCall setData(@NonNull int version, @NonNull String operation,
+                                @NonNull String source,  String[] dataNames,
+                                @NonNull Object[][] dataValues, @NonNull ZivaCareCallback callback) {
         Object[] dataArray = new Object[dataValues.length];
         for (int x = 0; x < dataValues.length; x++) {
             Map<String, Object> innerDataMap = new LinkedHashMap<String, Object>();
@@ -213,8 +486,8 @@ public abstract class ZivaCareEndpoint {
         dataMap.put(OP, operation);
         dataMap.put(DATA, dataArray);
 
-        mSdk.callEndpoint(String.format(API_URL_GENERAL, version, getType()),
-                config,dataMap, callback);
+        return mSdk.uploadEndpoint(String.format(API_URL_GENERAL, version, getType()),
+                config, dataMap, DATA, tag, callback);
     }
 
 }
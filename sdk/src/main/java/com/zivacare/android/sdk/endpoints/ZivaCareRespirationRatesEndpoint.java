@@ -32,7 +32,7 @@ import com.zivacare.android.sdk.ZivaCareSDK;
  * Created by Stelian Morariu on 22/6/2015.
  */
 public class ZivaCareRespirationRatesEndpoint extends
-        ZivaCareEndpoint {
+        ZivaCareScalarEndpoint {
     public static final String[] DATA_NAMES = new String[]{};
 
     public ZivaCareRespirationRatesEndpoint(@NonNull ZivaCareSDK sdk,ZivaCareConfig config) {
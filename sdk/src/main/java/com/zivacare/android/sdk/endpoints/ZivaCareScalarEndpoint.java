@@ -0,0 +1,74 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.endpoints;
+
+import android.support.annotation.NonNull;
+
+import com.zivacare.android.sdk.ZivaCareCall;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.network.ZivaCareSeriesCallback;
+
+import java.util.Date;
+
+/**
+ * Endpoint whose records are single values, holding a "value", a "unit" and a
+ * "record_time". Their data can also be read as a
+ * {@link com.zivacare.android.sdk.network.ZivaCareSeries}, which holds a year
+ * of samples in a few primitive arrays.
+ *
+ * @author abl
+ */
+public abstract class ZivaCareScalarEndpoint extends ZivaCareEndpoint {
+
+    public ZivaCareScalarEndpoint(@NonNull ZivaCareSDK sdk) {
+        super(sdk);
+    }
+
+    /**
+     * Get all endpoint data as a series
+     *
+     * @param version
+     * @param callback
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall getSeriesAll(int version, @NonNull ZivaCareSeriesCallback callback) {
+        return mSdk.seriesEndpoint(String.format(API_URL_GENERAL, version, getType()), config,
+                tag, callback);
+    }
+
+    /**
+     * Get all endpoint data filtered by period as a series
+     *
+     * @param version
+     * @param startDate
+     * @param endDate
+     * @param callback
+     * @return ZivaCareCall handle to cancel the call
+     */
+    public ZivaCareCall getSeriesByPeriod(int version, Date startDate, Date endDate,
+                                          @NonNull ZivaCareSeriesCallback callback) {
+        return mSdk.seriesEndpoint(String.format(API_URL_PERIOD, version, getType(),
+                formatDate(startDate), formatDate(endDate)), config, tag, callback);
+    }
+}
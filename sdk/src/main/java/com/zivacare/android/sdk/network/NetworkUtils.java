@@ -23,16 +23,12 @@
  */
 package com.zivacare.android.sdk.network;
 
-import android.util.Log;
-
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
 import com.zivacare.android.sdk.ZivaCareConfig;
 
 import org.json.JSONObject;
 
-import java.io.IOException;
-
 /**
  * Created by Stelian Morariu on 23/6/2015.
  */
@@ -51,16 +47,11 @@ public class NetworkUtils {
         return new Response.Listener<JSONObject>() {
             @Override
             public void onResponse(JSONObject response) {
-                String message = "";
-                if (response != null) {
-                    message = response.toString();
-                }
-                callback.onSuccess(new ZivaCareResponse(200, message));
+                callback.onSuccess(new ZivaCareResponse(200, response));
             }
         };
     }
 
-
     /**
      * Get a default handler for failed network requests. This handler will call
      * the {@code onError()} method of the passed {@link ZivaCareCallback}.
@@ -91,23 +82,13 @@ public class NetworkUtils {
         return new Response.Listener<JSONObject>() {
             @Override
             public void onResponse(JSONObject response) {
-                callback.onSuccess(new ZivaCareResponse(200, response.toString()));
-
                 // Get client secret and put them in cache
                 mConfig.setClientSecret(clientSecret);
-                try {
-                    mConfig.writeCacheFile(
-                            "{\"" + ZivaCareConfig.CLIENT_SECRET + "\":\""
-                                    + clientSecret + "\"}", false);
-                    // Get special token and client data and put them in cache
-                    mConfig.setSpecialTokenFromResponse(response.toString());
-                    mConfig.setClientIdFromResponse(response.toString());
-                    mConfig.setClientUserIdFromResponse(response.toString());
-                    mConfig.setClientUserNameFromResponse(response.toString());
-                    mConfig.writeCacheFile(response.toString(), true);
-                } catch (IOException e) {
-                    Log.e(LOG_TAG, e.toString());
-                }
+                // Get special token and client data and put them in cache
+                mConfig.setCredentialsFromResponse(response);
+                mConfig.saveCredentials();
+
+                callback.onSuccess(new ZivaCareResponse(200, response));
             }
         };
     }
@@ -125,23 +106,19 @@ public class NetworkUtils {
         return new Response.Listener<JSONObject>() {
             @Override
             public void onResponse(JSONObject response) {
-                callback.onSuccess(new ZivaCareResponse(200, response.toString()));
-
-                try {
-                    mConfig.writeCacheFile("", false);
-                } catch (IOException e) {
-                    Log.e(LOG_TAG, e.toString());
-                } finally {
-                    mConfig.clean();
-                }
+                mConfig.clearCache();
+                mConfig.clean();
+
+                callback.onSuccess(new ZivaCareResponse(200, response));
             }
         };
     }
 
     /**
-     * Get a handler for successful login requests. This handler will call
-     * the {@code onSuccess()} method of the passed {@link ZivaCareCallback} and will also
-     * save the access token in the current {@link ZivaCareConfig} and write it to cache.
+     * Get a handler for successful login and token refresh requests. This handler will call
+     * the {@code onSuccess()} method of the passed {@link ZivaCareCallback} after it
+     * saves the access token, refresh token and expiry time in the current
+     * {@link ZivaCareConfig} and writes them to cache.
      *
      * @param callback
      * @return
@@ -151,16 +128,11 @@ public class NetworkUtils {
         return new Response.Listener<JSONObject>() {
             @Override
             public void onResponse(JSONObject response) {
-                callback.onSuccess(new ZivaCareResponse(200, response.toString()));
-
                 // Get access token and put it in cache
-                mConfig.setAccessTokenFromResponse(response.toString());
+                mConfig.setCredentialsFromResponse(response);
+                mConfig.saveCredentials();
 
-                try {
-                    mConfig.writeCacheFile(response.toString(), true);
-                } catch (IOException e) {
-                    Log.e(LOG_TAG, e.toString());
-                }
+                callback.onSuccess(new ZivaCareResponse(200, response));
             }
         };
     }
@@ -178,17 +150,24 @@ public class NetworkUtils {
         return new Response.Listener<JSONObject>() {
             @Override
             public void onResponse(JSONObject response) {
-                callback.onSuccess(new ZivaCareResponse(200, response.toString()));
+                mConfig.setCredentialsFromResponse(response);
+                mConfig.saveCredentials();
 
-                try {
-                    mConfig.writeCacheFile(response.toString(), true);
-                } catch (IOException e) {
-                    Log.e(LOG_TAG, e.toString());
-                }
+                callback.onSuccess(new ZivaCareResponse(200, response));
             }
         };
     }
 
+    /**
+     * Check if a request failed because the access token was rejected
+     *
+     * @param error
+     * @return boolean
+     */
+    public static boolean isAuthFailure(VolleyError error) {
+        return getSafeStatusCode(error) == 401;
+    }
+
     private static int getSafeStatusCode(VolleyError error) {
         int code = -1;
         if (error != null) {
@@ -0,0 +1,80 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Freshness rules of the cached endpoint responses.<br>
+ * While a cached response is fresh it is returned without any request. Once
+ * it is stale, the request is sent with the "If-None-Match" and
+ * "If-Modified-Since" headers of the cached response, so an unchanged
+ * response costs a "304 Not Modified" instead of the whole body.
+ */
+public class ZivaCareCachePolicy {
+
+    /**
+     * Freshness meaning that the cache headers of the server are used
+     */
+    public static final long SERVER_FRESHNESS = -1;
+
+    private final Map<String, Long> mFreshness = new HashMap<String, Long>();
+    private long mDefaultFreshnessMs = SERVER_FRESHNESS;
+
+    /**
+     * Set how long the responses are fresh when no rule is set for their type
+     *
+     * @param freshnessMs time in milliseconds, 0 to always revalidate, or
+     *                    {@link #SERVER_FRESHNESS}
+     */
+    public synchronized void setDefaultFreshness(long freshnessMs) {
+        mDefaultFreshnessMs = freshnessMs;
+    }
+
+    /**
+     * Set how long the responses of an endpoint type are fresh, for example
+     * a long time for the genetics and a short one for the steps.
+     *
+     * @param type        one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @param freshnessMs time in milliseconds, 0 to always revalidate, or
+     *                    {@link #SERVER_FRESHNESS}
+     */
+    public synchronized void setFreshness(@NonNull String type, long freshnessMs) {
+        mFreshness.put(type, freshnessMs);
+    }
+
+    /**
+     * Get how long the responses of an endpoint type are fresh
+     *
+     * @param type endpoint type, can be null
+     * @return time in milliseconds, or {@link #SERVER_FRESHNESS}
+     */
+    public synchronized long getFreshness(String type) {
+        final Long freshness = type != null ? mFreshness.get(type) : null;
+        return freshness != null ? freshness : mDefaultFreshnessMs;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of the requests and responses of the ZivaCare API.<br>
+ * All the responses are asked gzip compressed and are decompressed by the
+ * SDK. Request bodies are only compressed for the hosts that accept it, see
+ * {@link #setGzipRequests(String, boolean)}. The bytes sent and received are
+ * counted per endpoint type, before and after compression.
+ */
+public class ZivaCareCompression {
+
+    public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    public static final String GZIP = "gzip";
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final String UNKNOWN_TYPE = "";
+
+    private final Set<String> mGzipHosts = new HashSet<String>();
+    private final Map<String, Savings> mSavings = new HashMap<String, Savings>();
+
+    /**
+     * Byte counters of an endpoint type
+     */
+    public static class Savings {
+        private final AtomicLong mRequestBytes = new AtomicLong();
+        private final AtomicLong mRequestWireBytes = new AtomicLong();
+        private final AtomicLong mResponseBytes = new AtomicLong();
+        private final AtomicLong mResponseWireBytes = new AtomicLong();
+
+        /**
+         * @return size of the request bodies before compression
+         */
+        public long getRequestBytes() {
+            return mRequestBytes.get();
+        }
+
+        /**
+         * @return size of the request bodies sent
+         */
+        public long getRequestWireBytes() {
+            return mRequestWireBytes.get();
+        }
+
+        /**
+         * @return size of the response bodies after decompression
+         */
+        public long getResponseBytes() {
+            return mResponseBytes.get();
+        }
+
+        /**
+         * @return size of the response bodies received
+         */
+        public long getResponseWireBytes() {
+            return mResponseWireBytes.get();
+        }
+
+        /**
+         * @return bytes that did not go over the network thanks to the compression
+         */
+        public long getSavedBytes() {
+            return getRequestBytes() - getRequestWireBytes()
+                    + getResponseBytes() - getResponseWireBytes();
+        }
+    }
+
+    /**
+     * Set if the request bodies sent to a host are gzip compressed. The host
+     * must accept "Content-Encoding: gzip" requests.
+     *
+     * @param host  host name, like "api.zivacare.com"
+     * @param gzip
+     */
+    public synchronized void setGzipRequests(@NonNull String host, boolean gzip) {
+        if (gzip) {
+            mGzipHosts.add(host.toLowerCase());
+        } else {
+            mGzipHosts.remove(host.toLowerCase());
+        }
+    }
+
+    public synchronized boolean isGzipRequests(String host) {
+        return host != null && mGzipHosts.contains(host.toLowerCase());
+    }
+
+    /**
+     * Get the byte counters of an endpoint type
+     *
+     * @param type one of the {@code ZivaCareEndpoint.TYPE_} constants, or null
+     *             for the requests that are not endpoint calls
+     * @return Savings
+     */
+    public synchronized Savings getSavings(String type) {
+        final String key = type != null ? type : UNKNOWN_TYPE;
+        Savings savings = mSavings.get(key);
+        if (savings == null) {
+            savings = new Savings();
+            mSavings.put(key, savings);
+        }
+        return savings;
+    }
+
+    /**
+     * Count a request body
+     *
+     * @param type      endpoint type, can be null
+     * @param bytes     size before compression
+     * @param wireBytes size sent
+     */
+    public void countRequest(String type, long bytes, long wireBytes) {
+        final Savings savings = getSavings(type);
+        savings.mRequestBytes.addAndGet(bytes);
+        savings.mRequestWireBytes.addAndGet(wireBytes);
+    }
+
+    /**
+     * Count a response body
+     *
+     * @param type      endpoint type, can be null
+     * @param bytes     size after decompression
+     * @param wireBytes size received
+     */
+    public void countResponse(String type, long bytes, long wireBytes) {
+        final Savings savings = getSavings(type);
+        savings.mResponseBytes.addAndGet(bytes);
+        savings.mResponseWireBytes.addAndGet(wireBytes);
+    }
+
+    /**
+     * Gzip compress a request body
+     *
+     * @param body
+     * @return the compressed body
+     */
+    public static byte[] gzip(@NonNull byte[] body) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try {
+            final GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+            gzip.write(body);
+            gzip.close();
+        } catch (IOException e) {
+            // not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompress a response body if its headers say it is compressed
+     *
+     * @param data    response body as received
+     * @param headers response headers
+     * @return the decompressed body
+     * @throws IOException if the body is not valid gzip
+     */
+    public static byte[] decode(@NonNull byte[] data, Map<String, String> headers)
+            throws IOException {
+        if (!isGzip(headers) || data.length == 0)
+            return data;
+        final InputStream in = new GZIPInputStream(new ByteArrayInputStream(data), BUFFER_SIZE);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompress a response stream while it is read, if its headers say it
+     * is compressed
+     *
+     * @param in      response body as received
+     * @param headers response headers
+     * @return InputStream
+     * @throws IOException if the body is not valid gzip
+     */
+    public static InputStream decode(@NonNull InputStream in, Map<String, String> headers)
+            throws IOException {
+        return isGzip(headers) ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+    }
+
+    /**
+     * Check if the headers of a response say its body is gzip compressed
+     *
+     * @param headers
+     * @return boolean
+     */
+    public static boolean isGzip(Map<String, String> headers) {
+        if (headers == null)
+            return false;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (HEADER_CONTENT_ENCODING.equalsIgnoreCase(header.getKey())) {
+                return header.getValue() != null
+                        && header.getValue().toLowerCase().contains(GZIP);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stream counting the bytes read from it
+     */
+    public static class CountingInputStream extends FilterInputStream {
+        private long mCount = 0;
+
+        public CountingInputStream(@NonNull InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1)
+                mCount++;
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int count) throws IOException {
+            final int read = super.read(buffer, offset, count);
+            if (read > 0)
+                mCount += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            final long skipped = super.skip(count);
+            mCount += skipped;
+            return skipped;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+    }
+}
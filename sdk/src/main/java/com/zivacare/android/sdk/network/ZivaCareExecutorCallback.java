@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@link ZivaCareCallback} that calls another callback on an {@link Executor}.<br>
+ * Pass one to any SDK or endpoint method to choose the thread of a single call,
+ * it overrides the callback executor of the {@link com.zivacare.android.sdk.ZivaCareSDK}.
+ */
+public class ZivaCareExecutorCallback implements ZivaCareCallback {
+
+    private final Executor mExecutor;
+    private final ZivaCareCallback mCallback;
+
+    /**
+     * @param executor executor running the callback methods
+     * @param callback
+     */
+    public ZivaCareExecutorCallback(@NonNull Executor executor,
+                                    @NonNull ZivaCareCallback callback) {
+        mExecutor = executor;
+        mCallback = callback;
+    }
+
+    @Override
+    public void onSuccess(final ZivaCareResponse response) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onSuccess(response);
+            }
+        });
+    }
+
+    @Override
+    public void onError(final ZivaCareResponse response) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onError(response);
+            }
+        });
+    }
+
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+}
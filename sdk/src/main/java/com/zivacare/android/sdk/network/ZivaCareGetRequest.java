@@ -23,17 +23,20 @@
  */
 package com.zivacare.android.sdk.network;
 
-import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Cache;
+import com.android.volley.NetworkResponse;
 import com.android.volley.Response;
-import com.android.volley.RetryPolicy;
-import com.android.volley.toolbox.JsonObjectRequest;
+import com.android.volley.toolbox.HttpHeaderParser;
 
 import org.json.JSONObject;
 
 /**
  * Created by Stelian Morariu on 23/6/2015.
  */
-public class ZivaCareGetRequest extends JsonObjectRequest {
+public class ZivaCareGetRequest extends ZivaCareJsonRequest {
+
+    private String mCacheKey = null;
+    private long mCacheFreshnessMs = ZivaCareCachePolicy.SERVER_FRESHNESS;
 
     /**
      * Creates a new GET request.
@@ -73,12 +76,38 @@ public class ZivaCareGetRequest extends JsonObjectRequest {
     }
 
     @Override
-    public RetryPolicy getRetryPolicy() {
+    protected Cache.Entry parseCacheEntry(NetworkResponse response) {
+        final Cache.Entry entry = HttpHeaderParser.parseCacheHeaders(response);
+        if (entry != null && mCacheFreshnessMs != ZivaCareCachePolicy.SERVER_FRESHNESS) {
+            entry.softTtl = System.currentTimeMillis() + mCacheFreshnessMs;
+            entry.ttl = entry.softTtl;
+        }
+        return entry;
+    }
+
+    /**
+     * Set the key of the response in the cache. By default it is the URL,
+     * which holds the access token for the endpoint calls.
+     *
+     * @param cacheKey
+     */
+    public void setCacheKey(String cacheKey) {
+        mCacheKey = cacheKey;
+    }
 
-        return new DefaultRetryPolicy(
-                15000,
-                DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
-                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT);
+    @Override
+    public String getCacheKey() {
+        return mCacheKey != null ? mCacheKey : super.getCacheKey();
     }
 
+    /**
+     * Set how long the response stays fresh in the cache
+     *
+     * @param freshnessMs time in milliseconds, or
+     *                    {@link ZivaCareCachePolicy#SERVER_FRESHNESS} to use the
+     *                    cache headers of the server
+     */
+    public void setCacheFreshness(long freshnessMs) {
+        mCacheFreshnessMs = freshnessMs;
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import android.support.annotation.NonNull;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Request;
+import com.android.volley.toolbox.HurlStack;
+
+import org.apache.http.HttpResponse;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Volley stack opening its connections through a {@link ZivaCareTransport}.<br>
+ * The connection of every {@link ZivaCareRequest} is handed to the request, so
+ * cancelling the request also aborts its transfer.
+ */
+public class ZivaCareHurlStack extends HurlStack {
+
+    private static final ThreadLocal<Request<?>> sCurrentRequest = new ThreadLocal<Request<?>>();
+
+    private final ZivaCareTransport mTransport;
+
+    /**
+     * @param transport transport opening the connections
+     */
+    public ZivaCareHurlStack(@NonNull ZivaCareTransport transport) {
+        mTransport = transport;
+    }
+
+    @Override
+    public HttpResponse performRequest(Request<?> request, Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        sCurrentRequest.set(request);
+        try {
+            return super.performRequest(request, additionalHeaders);
+        } finally {
+            sCurrentRequest.remove();
+        }
+    }
+
+    @Override
+    protected HttpURLConnection createConnection(URL url) throws IOException {
+        final HttpURLConnection connection = mTransport.openConnection(url);
+        final Request<?> request = sCurrentRequest.get();
+        if (request instanceof ZivaCareRequest)
+            ((ZivaCareRequest) request).onConnectionOpened(connection);
+        return connection;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Cache;
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.JsonObjectRequest;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What the GET and POST requests to the ZivaCare servers share: the
+ * decompression and byte counts of the responses, the priority, and the
+ * cancel that aborts the transfer in progress.
+ */
+public abstract class ZivaCareJsonRequest extends JsonObjectRequest implements ZivaCareRequest {
+
+    private static final String CACHE_HIT_MARKER = "cache-hit";
+
+    private volatile long mResponseLength = -1;
+    private volatile boolean mKeepData = false;
+    private volatile byte[] mResponseData = null;
+    private Priority mPriority = Priority.NORMAL;
+    private volatile HttpURLConnection mConnection;
+    private ZivaCareCompression mCompression = null;
+    private String mType = null;
+    private volatile boolean mCacheHit = false;
+
+    protected ZivaCareJsonRequest(int method, String url, Response.Listener<JSONObject> listener,
+                                  Response.ErrorListener errorListener) {
+        super(method, url, listener, errorListener);
+        setRetryPolicy(newDefaultRetryPolicy());
+    }
+
+    protected ZivaCareJsonRequest(int method, String url, JSONObject jsonRequest,
+                                  Response.Listener<JSONObject> listener,
+                                  Response.ErrorListener errorListener) {
+        super(method, url, jsonRequest, listener, errorListener);
+        setRetryPolicy(newDefaultRetryPolicy());
+    }
+
+    @Override
+    protected Response<JSONObject> parseNetworkResponse(NetworkResponse response) {
+        // a cancelled request is never delivered, do not parse it
+        if (isCanceled())
+            return Response.error(new VolleyError("request cancelled"));
+        try {
+            // unless asked otherwise the body is only kept until it is parsed
+            final byte[] data = decode(response);
+            mResponseLength = data.length;
+            if (mKeepData)
+                mResponseData = data;
+            final String jsonString = new String(data,
+                    HttpHeaderParser.parseCharset(response.headers, PROTOCOL_CHARSET));
+            return Response.success(parseJson(response, jsonString), parseCacheEntry(response));
+        } catch (UnsupportedEncodingException e) {
+            return Response.error(new ParseError(e));
+        } catch (IOException e) {
+            return Response.error(new ParseError(e));
+        } catch (JSONException je) {
+            return Response.error(new ParseError(je));
+        }
+    }
+
+    /**
+     * Parse the body of a response
+     *
+     * @param response
+     * @param jsonString the body, decompressed
+     * @return JSONObject
+     * @throws JSONException
+     */
+    protected JSONObject parseJson(NetworkResponse response, String jsonString)
+            throws JSONException {
+        return new JSONObject(jsonString);
+    }
+
+    /**
+     * Get the cache entry of a response
+     *
+     * @param response
+     * @return Cache.Entry, or null if the response is not cached
+     */
+    protected Cache.Entry parseCacheEntry(NetworkResponse response) {
+        return HttpHeaderParser.parseCacheHeaders(response);
+    }
+
+    /**
+     * Set where the bytes of the request are counted
+     *
+     * @param compression
+     * @param type        endpoint type of the request, can be null
+     */
+    public void setCompression(ZivaCareCompression compression, String type) {
+        mCompression = compression;
+        mType = type;
+    }
+
+    /**
+     * Count the bytes of a request body
+     *
+     * @param bytes     size of the body
+     * @param wireBytes size of the body as sent
+     */
+    protected void countRequest(long bytes, long wireBytes) {
+        if (mCompression != null)
+            mCompression.countRequest(mType, bytes, wireBytes);
+    }
+
+    @Override
+    public void addMarker(String tag) {
+        super.addMarker(tag);
+        if (CACHE_HIT_MARKER.equals(tag))
+            mCacheHit = true;
+    }
+
+    /**
+     * Decompress the body of a response and count its bytes
+     */
+    private byte[] decode(NetworkResponse response) throws IOException {
+        final byte[] data = ZivaCareCompression.decode(response.data, response.headers);
+        if (mCompression != null) {
+            // a response from the cache or a 304 did not bring the body over the network
+            final long wireBytes = mCacheHit || response.notModified ? 0 : response.data.length;
+            mCompression.countResponse(mType, data.length, wireBytes);
+        }
+        return data;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() throws AuthFailureError {
+        final Map<String, String> headers = new HashMap<String, String>(super.getHeaders());
+        headers.put(ZivaCareCompression.HEADER_ACCEPT_ENCODING, ZivaCareCompression.GZIP);
+        return headers;
+    }
+
+    @Override
+    public long getResponseLength() {
+        return mResponseLength;
+    }
+
+    /**
+     * Set if the response body is kept once parsed, for
+     * {@link #getResponseData()}
+     *
+     * @param keepData
+     */
+    public void setKeepData(boolean keepData) {
+        mKeepData = keepData;
+    }
+
+    @Override
+    public byte[] getResponseData() {
+        return mResponseData;
+    }
+
+    /**
+     * The retry policy set on new requests, it can be replaced with
+     * {@link #setRetryPolicy(com.android.volley.RetryPolicy)}
+     */
+    static DefaultRetryPolicy newDefaultRetryPolicy() {
+        return new DefaultRetryPolicy(
+                ZivaCareRetryPolicy.DEFAULT_TIMEOUT_MS,
+                DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
+                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT);
+    }
+
+    /**
+     * Set the priority of the request in its queue
+     *
+     * @param priority
+     */
+    public void setPriority(Priority priority) {
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
+
+    @Override
+    public void onConnectionOpened(HttpURLConnection connection) {
+        mConnection = connection;
+        if (isCanceled())
+            connection.disconnect();
+    }
+
+    /**
+     * Cancel the request, the transfer in progress is aborted
+     */
+    @Override
+    public void cancel() {
+        super.cancel();
+        final HttpURLConnection connection = mConnection;
+        if (connection != null)
+            connection.disconnect();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import android.support.annotation.NonNull;
+
+import com.android.volley.toolbox.HttpStack;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.OkUrlFactory;
+import com.squareup.okhttp.Protocol;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * {@link ZivaCareTransport} backed by OkHttp.<br>
+ * All the instances created with the default constructor share one client and
+ * its connection pool, so the SDK keeps a few open connections to the API and
+ * developer servers. Requests to the same host are multiplexed over a single
+ * connection when HTTP/2 is negotiated. The transports using the same client
+ * are equal, so they share one request queue.
+ */
+public class ZivaCareOkHttpTransport implements ZivaCareTransport {
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public static final long DEFAULT_KEEP_ALIVE_MS = 5 * 60 * 1000;
+
+    private static OkHttpClient sDefaultClient = null;
+
+    private final OkHttpClient mClient;
+    private final OkUrlFactory mUrlFactory;
+
+    /**
+     * Create a transport using the client shared by the SDK
+     */
+    public ZivaCareOkHttpTransport() {
+        this(getDefaultClient());
+    }
+
+    /**
+     * Create a transport using the passed client, for example one with a
+     * different connection pool or certificate pinning.
+     *
+     * @param client
+     */
+    public ZivaCareOkHttpTransport(@NonNull OkHttpClient client) {
+        mClient = client;
+        mUrlFactory = new OkUrlFactory(client);
+    }
+
+    /**
+     * Get the client shared by the transports created with the default constructor
+     *
+     * @return OkHttpClient
+     */
+    public static synchronized OkHttpClient getDefaultClient() {
+        if (sDefaultClient == null) {
+            sDefaultClient = new OkHttpClient();
+            sDefaultClient.setProtocols(Arrays.asList(
+                    Protocol.HTTP_2, Protocol.SPDY_3, Protocol.HTTP_1_1));
+            sDefaultClient.setConnectionPool(new ConnectionPool(
+                    DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_MS));
+        }
+        return sDefaultClient;
+    }
+
+    @Override
+    public HttpStack createHttpStack() {
+        return new ZivaCareHurlStack(this);
+    }
+
+    @Override
+    public HttpURLConnection openConnection(URL url) throws IOException {
+        return mUrlFactory.open(url);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ZivaCareOkHttpTransport
+                && ((ZivaCareOkHttpTransport) o).mClient == mClient;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(mClient);
+    }
+}
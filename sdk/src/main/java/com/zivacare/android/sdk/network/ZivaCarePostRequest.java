@@ -25,24 +25,22 @@ package com.zivacare.android.sdk.network;
 
 import android.text.TextUtils;
 
-import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.AuthFailureError;
 import com.android.volley.NetworkResponse;
-import com.android.volley.ParseError;
 import com.android.volley.Response;
-import com.android.volley.RetryPolicy;
-import com.android.volley.toolbox.HttpHeaderParser;
-import com.android.volley.toolbox.JsonObjectRequest;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.UnsupportedEncodingException;
 import java.util.Map;
 
 /**
  * Created by Stelian Morariu on 23/6/2015.
  */
-public class ZivaCarePostRequest extends JsonObjectRequest {
+public class ZivaCarePostRequest extends ZivaCareJsonRequest {
+
+    private boolean mGzipBody = false;
+    private byte[] mBody = null;
 
     /**
      * Creates a new GET request.
@@ -55,33 +53,46 @@ public class ZivaCarePostRequest extends JsonObjectRequest {
                                Response.ErrorListener errorListener,
                                Map<String, String> params) {
         super(Method.POST, url, new JSONObject(params), listener, errorListener);
+        // Volley caches by URL whatever the method, a POST must always be sent
+        setShouldCache(false);
     }
 
     @Override
-    public RetryPolicy getRetryPolicy() {
+    protected JSONObject parseJson(NetworkResponse response, String jsonString)
+            throws JSONException {
+        if ((response.statusCode == 200 || response.statusCode == 204) &&
+                TextUtils.isEmpty(jsonString)) {
+            jsonString = "{}";
+        }
+        return super.parseJson(response, jsonString);
+    }
 
-        return new DefaultRetryPolicy(
-                15000,
-                DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
-                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT);
+    /**
+     * Set if the body is sent gzip compressed, the server must accept it
+     *
+     * @param gzipBody
+     */
+    public void setGzipBody(boolean gzipBody) {
+        mGzipBody = gzipBody;
     }
 
     @Override
-    protected Response<JSONObject> parseNetworkResponse(NetworkResponse response) {
-        try {
-            String jsonString = new String(response.data,
-                    HttpHeaderParser.parseCharset(response.headers, PROTOCOL_CHARSET));
-            if ((response.statusCode == 200 || response.statusCode == 204) &&
-                    TextUtils.isEmpty(jsonString)) {
-                jsonString = "{}";
-            }
+    public Map<String, String> getHeaders() throws AuthFailureError {
+        final Map<String, String> headers = super.getHeaders();
+        if (mGzipBody)
+            headers.put(ZivaCareCompression.HEADER_CONTENT_ENCODING, ZivaCareCompression.GZIP);
+        return headers;
+    }
 
-            return Response.success(new JSONObject(jsonString),
-                    HttpHeaderParser.parseCacheHeaders(response));
-        } catch (UnsupportedEncodingException e) {
-            return Response.error(new ParseError(e));
-        } catch (JSONException je) {
-            return Response.error(new ParseError(je));
+    @Override
+    public synchronized byte[] getBody() {
+        if (mBody == null) {
+            final byte[] body = super.getBody();
+            if (body == null)
+                return null;
+            mBody = mGzipBody ? ZivaCareCompression.gzip(body) : body;
+            countRequest(body.length, mBody.length);
         }
+        return mBody;
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Callback for streamed endpoint calls, the records of the response are
+ * delivered in small batches while the response is read, so the whole
+ * response is never held in memory.<br>
+ * The methods are called on the thread reading the response, one after the
+ * other. The next batch is only read when {@link #onRecords(String, List)}
+ * returns.
+ */
+public interface ZivaCareRecordCallback {
+
+    /**
+     * Called for every batch of records
+     *
+     * @param name    name of the Json array holding the records, or null if the
+     *                response itself is an array
+     * @param records the records, the list is not reused
+     */
+    void onRecords(String name, List<JSONObject> records);
+
+    /**
+     * Called when the whole response was read
+     *
+     * @param response holds the status code and the values of the response
+     *                 that are not records
+     */
+    void onSuccess(ZivaCareResponse response);
+
+    /**
+     * Called if the request failed, no other method is called after it
+     *
+     * @param response
+     */
+    void onError(ZivaCareResponse response);
+}
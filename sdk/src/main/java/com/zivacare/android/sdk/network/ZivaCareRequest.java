@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import java.net.HttpURLConnection;
+
+/**
+ * A request to the ZivaCare servers that tells the size of its response body,
+ * and that aborts its transfer when it is cancelled.
+ */
+public interface ZivaCareRequest {
+
+    /**
+     * Get the size of the response body, once decompressed. Unless the
+     * request keeps it, the body itself is dropped as soon as it is parsed.
+     *
+     * @return number of bytes, or -1 if no response was parsed yet
+     */
+    long getResponseLength();
+
+    /**
+     * Get the response body, once decompressed, if the request was asked to
+     * keep it
+     *
+     * @return the bytes, or null if they are not kept or no response was
+     * parsed yet
+     */
+    byte[] getResponseData();
+
+    /**
+     * Called by the {@link ZivaCareHurlStack} when the connection of the request
+     * is opened. If the request is cancelled, the connection is closed.
+     *
+     * @param connection
+     */
+    void onConnectionOpened(HttpURLConnection connection);
+}
@@ -23,18 +23,63 @@
  */
 package com.zivacare.android.sdk.network;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 /**
  * Created by Stelian Morariu on 23/6/2015.
  */
 public class ZivaCareResponse {
     private int responseCode;
     private String responseString;
+    private JSONObject json;
+    private long length = -1;
+    private byte[] data;
 
     public ZivaCareResponse(int responseCode, String responseStr) {
         this.responseCode = responseCode;
         this.responseString = responseStr;
     }
 
+    /**
+     * Create a response holding the already parsed Json, the String is only
+     * built if {@link #getResponseString()} is called.
+     *
+     * @param responseCode
+     * @param json
+     */
+    public ZivaCareResponse(int responseCode, JSONObject json) {
+        this.responseCode = responseCode;
+        this.json = json;
+    }
+
+    /**
+     * Create a response holding the already parsed Json and the size of the
+     * response body. The body itself is not kept, the tree holds the same data.
+     *
+     * @param responseCode
+     * @param json
+     * @param length       size of the response body in bytes, or -1 if unknown
+     */
+    public ZivaCareResponse(int responseCode, JSONObject json, long length) {
+        this.responseCode = responseCode;
+        this.json = json;
+        this.length = length;
+    }
+
+    /**
+     * Create a response holding the already parsed Json and the response body
+     *
+     * @param responseCode
+     * @param json
+     * @param length       size of the response body in bytes, or -1 if unknown
+     * @param data         the response body, or null if it is not kept
+     */
+    public ZivaCareResponse(int responseCode, JSONObject json, long length, byte[] data) {
+        this(responseCode, json, length);
+        this.data = data;
+    }
+
     public int getResponseCode() {
         return responseCode;
     }
@@ -43,11 +88,64 @@ public class ZivaCareResponse {
         this.responseCode = responseCode;
     }
 
+    /**
+     * Get the response as a String. For successful requests the String is
+     * written from the parsed Json the first time it is asked for, use
+     * {@link #getJson()} to avoid that copy.
+     *
+     * @return String
+     */
     public String getResponseString() {
+        if (responseString == null && json != null)
+            responseString = json.toString();
         return responseString;
     }
 
     public void setResponseString(String responseString) {
         this.responseString = responseString;
+        this.json = null;
+        this.length = -1;
+        this.data = null;
+    }
+
+    /**
+     * Get the parsed response. The callers of identical GET requests made at
+     * the same time all get the same response and the same JSONObject, maybe
+     * on several threads at once: read it, but do not modify it.
+     *
+     * @return JSONObject or null if the response is not a Json object
+     */
+    public JSONObject getJson() {
+        if (json == null && responseString != null) {
+            try {
+                json = new JSONObject(responseString);
+            } catch (JSONException e) {
+                return null;
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Get the size of the response body as received from the server, once
+     * decompressed
+     *
+     * @return number of bytes, or -1 if it is not known
+     */
+    public long getResponseLength() {
+        return length;
+    }
+
+    /**
+     * Get the response body as received from the server, once decompressed.
+     * It is only kept for the calls that asked for it, see
+     * {@link com.zivacare.android.sdk.endpoints.ZivaCareEndpoint#setKeepResponseData(boolean)}.
+     * The array is the same for all the callers of a shared call, it must not
+     * be modified.
+     *
+     * @return the bytes, or null if they were not kept
+     */
+    public byte[] getResponseData() {
+        return data;
     }
 }
@@ -0,0 +1,244 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import android.support.annotation.NonNull;
+
+import com.android.volley.NetworkError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Decides if and when a failed request to a ZivaCare API endpoint is sent again.<br>
+ * The {@link ZivaCareRetryPolicy} is picked by endpoint type and HTTP method, and
+ * a server "Retry-After" header is honoured. All retries share a budget that is
+ * refilled by successful requests, so when the servers are failing the retries
+ * stop instead of multiplying the load.
+ */
+public class ZivaCareRetryHandler {
+
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    /**
+     * Most retries that can be made in a row when no request succeeds
+     */
+    public static final double DEFAULT_BUDGET_MAX = 10;
+    /**
+     * Part of a retry that is earned back by every successful request
+     */
+    public static final double DEFAULT_BUDGET_RATIO = 0.1;
+
+    private final Map<String, ZivaCareRetryPolicy> mPolicies =
+            new HashMap<String, ZivaCareRetryPolicy>();
+    private ZivaCareRetryPolicy mDefaultPolicy = ZivaCareRetryPolicy.DEFAULT;
+    private final Random mRandom = new Random();
+    private double mBudgetMax = DEFAULT_BUDGET_MAX;
+    private double mBudgetRatio = DEFAULT_BUDGET_RATIO;
+    private double mBudget = DEFAULT_BUDGET_MAX;
+
+    /**
+     * Set the policy used when no other one matches
+     *
+     * @param policy
+     */
+    public synchronized void setDefaultPolicy(@NonNull ZivaCareRetryPolicy policy) {
+        mDefaultPolicy = policy;
+    }
+
+    /**
+     * Set the policy for all the requests with an HTTP method
+     *
+     * @param method one of {@code Request.Method}
+     * @param policy
+     */
+    public synchronized void setPolicy(int method, @NonNull ZivaCareRetryPolicy policy) {
+        mPolicies.put(getKey(null, method), policy);
+    }
+
+    /**
+     * Set the policy for all the requests to an endpoint type
+     *
+     * @param type   one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @param policy
+     */
+    public synchronized void setPolicy(@NonNull String type, @NonNull ZivaCareRetryPolicy policy) {
+        mPolicies.put(getKey(type, null), policy);
+    }
+
+    /**
+     * Set the policy for the requests to an endpoint type with an HTTP method
+     *
+     * @param type   one of the {@code ZivaCareEndpoint.TYPE_} constants
+     * @param method one of {@code Request.Method}
+     * @param policy
+     */
+    public synchronized void setPolicy(@NonNull String type, int method,
+                                       @NonNull ZivaCareRetryPolicy policy) {
+        mPolicies.put(getKey(type, method), policy);
+    }
+
+    /**
+     * Set the retry budget
+     *
+     * @param max   most retries that can be made in a row when no request succeeds
+     * @param ratio part of a retry earned back by every successful request
+     */
+    public synchronized void setBudget(double max, double ratio) {
+        mBudgetMax = max;
+        mBudgetRatio = ratio;
+        mBudget = Math.min(mBudget, max);
+    }
+
+    /**
+     * Get the policy for a request, the most specific one that was set wins.
+     *
+     * @param type   endpoint type, can be null
+     * @param method
+     * @return ZivaCareRetryPolicy
+     */
+    public synchronized ZivaCareRetryPolicy getPolicy(String type, int method) {
+        ZivaCareRetryPolicy policy = null;
+        if (type != null) {
+            policy = mPolicies.get(getKey(type, method));
+            if (policy == null)
+                policy = mPolicies.get(getKey(type, null));
+        }
+        if (policy == null)
+            policy = mPolicies.get(getKey(null, method));
+        return policy != null ? policy : mDefaultPolicy;
+    }
+
+    /**
+     * Called for every successful request, refills the retry budget.
+     */
+    public synchronized void onSuccess() {
+        mBudget = Math.min(mBudgetMax, mBudget + mBudgetRatio);
+    }
+
+    /**
+     * Get the delay before a failed request is sent again.
+     *
+     * @param policy          policy of the request
+     * @param retryCount      retries already made for the request
+     * @param previousDelayMs delay used before the previous retry, 0 if none
+     * @param error           the failure
+     * @return delay in milliseconds, or -1 if the request must not be retried
+     */
+    public synchronized long getRetryDelay(@NonNull ZivaCareRetryPolicy policy, int retryCount,
+                                           long previousDelayMs, VolleyError error) {
+        if (retryCount >= policy.getMaxRetries() || !isRetryable(error) || mBudget < 1)
+            return -1;
+
+        long delay = policy.getNextDelay(previousDelayMs, mRandom);
+        final long retryAfter = getRetryAfter(error);
+        if (retryAfter > policy.getMaxDelayMs())
+            return -1;
+        delay = Math.max(delay, retryAfter);
+
+        mBudget -= 1;
+        return delay;
+    }
+
+    /**
+     * Get the delay before a failed call is made again, for the failures
+     * already handed to a callback
+     *
+     * @param policy          policy of the call
+     * @param retryCount      retries already made for the call
+     * @param previousDelayMs delay used before the previous retry, 0 if none
+     * @param response        the failure
+     * @return delay in milliseconds, or -1 if the call must not be retried
+     */
+    public synchronized long getRetryDelay(@NonNull ZivaCareRetryPolicy policy, int retryCount,
+                                           long previousDelayMs,
+                                           @NonNull ZivaCareResponse response) {
+        if (retryCount >= policy.getMaxRetries() || !isRetryable(response.getResponseCode())
+                || mBudget < 1)
+            return -1;
+        mBudget -= 1;
+        return policy.getNextDelay(previousDelayMs, mRandom);
+    }
+
+    /**
+     * Check if a failure is worth retrying: timeouts, connection errors, server
+     * errors and "too many requests" answers.
+     *
+     * @param error
+     * @return boolean
+     */
+    public static boolean isRetryable(VolleyError error) {
+        if (error instanceof TimeoutError)
+            return true;
+        if (error == null || error.networkResponse == null)
+            return error instanceof NetworkError;
+        return isRetryable(error.networkResponse.statusCode);
+    }
+
+    /**
+     * Check if a response code is worth retrying, -1 being a failure before
+     * any response
+     *
+     * @param statusCode
+     * @return boolean
+     */
+    public static boolean isRetryable(int statusCode) {
+        return statusCode == -1 || statusCode >= 500 || statusCode == 429 || statusCode == 408;
+    }
+
+    /**
+     * Read the "Retry-After" header of a failed response
+     *
+     * @param error
+     * @return delay in milliseconds, or 0 if the header is missing
+     */
+    public static long getRetryAfter(VolleyError error) {
+        if (error == null || error.networkResponse == null
+                || error.networkResponse.headers == null)
+            return 0;
+        String value = null;
+        for (Map.Entry<String, String> header : error.networkResponse.headers.entrySet()) {
+            if (HEADER_RETRY_AFTER.equalsIgnoreCase(header.getKey())) {
+                value = header.getValue();
+                break;
+            }
+        }
+        if (value == null)
+            return 0;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            final long date = HttpHeaderParser.parseDateAsEpoch(value);
+            return date > 0 ? Math.max(0, date - System.currentTimeMillis()) : 0;
+        }
+    }
+
+    private static String getKey(String type, Integer method) {
+        return type + "|" + method;
+    }
+}
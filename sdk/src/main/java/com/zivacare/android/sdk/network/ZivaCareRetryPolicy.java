@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import java.util.Random;
+
+/**
+ * Timeout and retry settings for the requests to a ZivaCare API endpoint.<br>
+ * The delay between two attempts grows with decorrelated jitter: each delay is
+ * a random value between the base delay and three times the previous delay,
+ * capped at the max delay.
+ */
+public class ZivaCareRetryPolicy {
+
+    public static final int DEFAULT_TIMEOUT_MS = 15000;
+    public static final int DEFAULT_MAX_RETRIES = 1;
+    public static final long DEFAULT_BASE_DELAY_MS = 500;
+    public static final long DEFAULT_MAX_DELAY_MS = 30 * 1000;
+
+    public static final ZivaCareRetryPolicy DEFAULT = new ZivaCareRetryPolicy(
+            DEFAULT_TIMEOUT_MS, DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+
+    private final int mTimeoutMs;
+    private final int mMaxRetries;
+    private final long mBaseDelayMs;
+    private final long mMaxDelayMs;
+
+    /**
+     * @param timeoutMs   socket timeout of a single attempt
+     * @param maxRetries  attempts made after the first one failed
+     * @param baseDelayMs shortest delay before a retry
+     * @param maxDelayMs  longest delay before a retry
+     */
+    public ZivaCareRetryPolicy(int timeoutMs, int maxRetries, long baseDelayMs, long maxDelayMs) {
+        mTimeoutMs = timeoutMs;
+        mMaxRetries = maxRetries;
+        mBaseDelayMs = baseDelayMs;
+        mMaxDelayMs = Math.max(baseDelayMs, maxDelayMs);
+    }
+
+    public int getTimeoutMs() {
+        return mTimeoutMs;
+    }
+
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    public long getBaseDelayMs() {
+        return mBaseDelayMs;
+    }
+
+    public long getMaxDelayMs() {
+        return mMaxDelayMs;
+    }
+
+    /**
+     * Get the delay before the next attempt
+     *
+     * @param previousDelayMs delay used before the previous attempt, 0 for the first retry
+     * @param random
+     * @return delay in milliseconds
+     */
+    public long getNextDelay(long previousDelayMs, Random random) {
+        final long upper = Math.max(mBaseDelayMs, previousDelayMs * 3);
+        final long delay = mBaseDelayMs + (long) (random.nextDouble() * (upper - mBaseDelayMs));
+        return Math.min(mMaxDelayMs, delay);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+/**
+ * Samples of a scalar endpoint, like the heart rates or the weights, held in
+ * columns of primitive arrays instead of one Json object per sample.<br>
+ * The units are dictionary encoded: every sample holds the index of its unit
+ * in {@link #getUnits()}, or -1 if it has none. A sample without a value holds
+ * {@link Double#NaN}, one without a record time holds -1.
+ */
+public final class ZivaCareSeries {
+
+    private final long[] mTimes;
+    private final double[] mValues;
+    private final short[] mUnitCodes;
+    private final String[] mUnits;
+
+    ZivaCareSeries(long[] times, double[] values, short[] unitCodes, String[] units) {
+        mTimes = times;
+        mValues = values;
+        mUnitCodes = unitCodes;
+        mUnits = units;
+    }
+
+    public int size() {
+        return mTimes.length;
+    }
+
+    /**
+     * @param index
+     * @return record time in milliseconds
+     */
+    public long getTime(int index) {
+        return mTimes[index];
+    }
+
+    public double getValue(int index) {
+        return mValues[index];
+    }
+
+    /**
+     * @param index
+     * @return the unit, or null
+     */
+    public String getUnit(int index) {
+        final short code = mUnitCodes[index];
+        return code >= 0 ? mUnits[code] : null;
+    }
+
+    /**
+     * Get the record times of all the samples, the array is not copied
+     *
+     * @return time in milliseconds of every sample
+     */
+    public long[] getTimes() {
+        return mTimes;
+    }
+
+    /**
+     * Get the values of all the samples, the array is not copied
+     *
+     * @return double[]
+     */
+    public double[] getValues() {
+        return mValues;
+    }
+
+    /**
+     * Get the unit index of all the samples, the array is not copied
+     *
+     * @return index in {@link #getUnits()} of every sample, -1 for no unit
+     */
+    public short[] getUnitCodes() {
+        return mUnitCodes;
+    }
+
+    /**
+     * Get the distinct units, in the order they were first seen
+     *
+     * @return String[]
+     */
+    public String[] getUnits() {
+        return mUnits;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import android.support.annotation.NonNull;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * Reads the records of a scalar endpoint response straight into the columns
+ * of a {@link ZivaCareSeries}: the "record_time", "value" and "unit" fields of
+ * every record are decoded from the stream into growing primitive arrays, no
+ * Json object is made for the records. The other fields, and the arrays not
+ * named after the endpoint type, are skipped.
+ */
+public class ZivaCareSeriesParser extends ZivaCareStreamParser {
+
+    private static final String VALUE = "value";
+    private static final String UNIT = "unit";
+    private static final int INITIAL_CAPACITY = 256;
+
+    private long[] mTimes;
+    private double[] mValues;
+    private short[] mUnitCodes;
+    private List<String> mUnits;
+    private Map<String, Short> mUnitIndex;
+    private int mSize;
+    private final String mType;
+
+    /**
+     * @param callback only told when the response is read, it does not get
+     *                 any record
+     */
+    public ZivaCareSeriesParser(@NonNull ZivaCareRecordCallback callback) {
+        this(null, callback);
+    }
+
+    /**
+     * @param type     one of the {@code ZivaCareEndpoint.TYPE_} constants, only
+     *                 the array of that name is read as samples, or null to
+     *                 read every array
+     * @param callback only told when the response is read, it does not get
+     *                 any record
+     */
+    public ZivaCareSeriesParser(String type, @NonNull ZivaCareRecordCallback callback) {
+        super(DEFAULT_BATCH_SIZE, callback);
+        mType = type;
+        reset();
+    }
+
+    private void reset() {
+        mTimes = new long[INITIAL_CAPACITY];
+        mValues = new double[INITIAL_CAPACITY];
+        mUnitCodes = new short[INITIAL_CAPACITY];
+        mUnits = new ArrayList<String>();
+        mUnitIndex = new HashMap<String, Short>();
+        mSize = 0;
+    }
+
+    /**
+     * Read the whole response, the samples read by a former attempt are
+     * dropped
+     */
+    @Override
+    public JSONObject parse(@NonNull Reader in) throws IOException {
+        reset();
+        return super.parse(in);
+    }
+
+    /**
+     * Get the samples read
+     *
+     * @return ZivaCareSeries, its arrays are exactly as long as the samples
+     */
+    public ZivaCareSeries getSeries() {
+        return new ZivaCareSeries(Arrays.copyOf(mTimes, mSize), Arrays.copyOf(mValues, mSize),
+                Arrays.copyOf(mUnitCodes, mSize), mUnits.toArray(new String[mUnits.size()]));
+    }
+
+    @Override
+    protected void readRecords(JsonReader reader, String name) throws IOException {
+        if (mType != null && name != null && !mType.equals(name)) {
+            // another list of the response, not samples
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext() && !isCanceled()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            readSample(reader);
+        }
+        if (!isCanceled())
+            reader.endArray();
+    }
+
+    private void readSample(JsonReader reader) throws IOException {
+        long time = -1;
+        double value = Double.NaN;
+        short unitCode = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String field = reader.nextName();
+            final JsonToken token = reader.peek();
+            if (token == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (ZivaCareEndpoint.RECORD_TIME.equals(field) && token == JsonToken.STRING) {
+                time = ZivaCareEndpoint.parseRecordTime(reader.nextString());
+            } else if (VALUE.equals(field)
+                    && (token == JsonToken.NUMBER || token == JsonToken.STRING)) {
+                value = parseValue(reader.nextString());
+            } else if (UNIT.equals(field) && token == JsonToken.STRING) {
+                unitCode = getUnitCode(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (mSize == mTimes.length)
+            grow();
+        mTimes[mSize] = time;
+        mValues[mSize] = value;
+        mUnitCodes[mSize] = unitCode;
+        mSize++;
+    }
+
+    private static double parseValue(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private short getUnitCode(String unit) {
+        final Short code = mUnitIndex.get(unit);
+        if (code != null)
+            return code;
+        // more distinct units than a short can index are not expected
+        if (mUnits.size() > Short.MAX_VALUE)
+            return -1;
+        final short newCode = (short) mUnits.size();
+        mUnits.add(unit);
+        mUnitIndex.put(unit, newCode);
+        return newCode;
+    }
+
+    private void grow() {
+        final int capacity = mTimes.length * 2;
+        mTimes = Arrays.copyOf(mTimes, capacity);
+        mValues = Arrays.copyOf(mValues, capacity);
+        mUnitCodes = Arrays.copyOf(mUnitCodes, capacity);
+    }
+}
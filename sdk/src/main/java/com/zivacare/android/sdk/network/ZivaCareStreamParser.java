@@ -0,0 +1,220 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import android.support.annotation.NonNull;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a Json response in a single streaming pass and hands the objects of
+ * its arrays to a {@link ZivaCareRecordCallback} in batches.<br>
+ * Only one record and one batch are held in memory at a time. The values that
+ * are not in an array, like a status or a count, are collected in a summary
+ * object.
+ */
+public class ZivaCareStreamParser {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final int mBatchSize;
+    private final ZivaCareRecordCallback mCallback;
+    private final JSONObject mSummary = new JSONObject();
+    private volatile boolean mCanceled = false;
+    private int mRecordCount = 0;
+
+    /**
+     * @param batchSize most records delivered in one call of the callback
+     * @param callback
+     */
+    public ZivaCareStreamParser(int batchSize, @NonNull ZivaCareRecordCallback callback) {
+        mBatchSize = Math.max(1, batchSize);
+        mCallback = callback;
+    }
+
+    /**
+     * Read the whole response. The reader is closed when done.
+     *
+     * @param in
+     * @return the values of the response that are not records
+     * @throws IOException if the stream can not be read or is not Json
+     */
+    public JSONObject parse(@NonNull Reader in) throws IOException {
+        final JsonReader reader = new JsonReader(in);
+        try {
+            final JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_ARRAY) {
+                readRecords(reader, null);
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                readContainer(reader);
+            } else {
+                reader.skipValue();
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("invalid json: " + e.getMessage());
+        } catch (JSONException e) {
+            throw new IOException("invalid json: " + e.getMessage());
+        } finally {
+            reader.close();
+        }
+        return mSummary;
+    }
+
+    /**
+     * Stop the parsing, no more records are delivered
+     */
+    public void cancel() {
+        mCanceled = true;
+    }
+
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * Get the number of records delivered so far
+     *
+     * @return int
+     */
+    public int getRecordCount() {
+        return mRecordCount;
+    }
+
+    private void readContainer(JsonReader reader) throws IOException, JSONException {
+        reader.beginObject();
+        while (reader.hasNext() && !mCanceled) {
+            final String name = reader.nextName();
+            final JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_ARRAY) {
+                readRecords(reader, name);
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                readContainer(reader);
+            } else {
+                mSummary.put(name, readValue(reader));
+            }
+        }
+        if (!mCanceled)
+            reader.endObject();
+    }
+
+    /**
+     * Read an array of records. Override to read the records in another form
+     * than Json objects, the reader is on the start of the array.
+     *
+     * @param reader
+     * @param name   name of the array, or null if the response itself is an array
+     * @throws IOException
+     * @throws JSONException
+     */
+    protected void readRecords(JsonReader reader, String name) throws IOException, JSONException {
+        List<JSONObject> batch = new ArrayList<JSONObject>(mBatchSize);
+        reader.beginArray();
+        while (reader.hasNext() && !mCanceled) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            batch.add(readObject(reader));
+            if (batch.size() >= mBatchSize) {
+                deliver(name, batch);
+                batch = new ArrayList<JSONObject>(mBatchSize);
+            }
+        }
+        if (!batch.isEmpty())
+            deliver(name, batch);
+        if (!mCanceled)
+            reader.endArray();
+    }
+
+    private void deliver(String name, List<JSONObject> batch) {
+        if (mCanceled)
+            return;
+        mRecordCount += batch.size();
+        mCallback.onRecords(name, batch);
+    }
+
+    /**
+     * Read the next Json object of a stream
+     *
+     * @param reader
+     * @return JSONObject
+     * @throws IOException
+     * @throws JSONException
+     */
+    public static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        final JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            object.put(name, readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private static JSONArray readArray(JsonReader reader) throws IOException, JSONException {
+        final JSONArray array = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            array.put(readValue(reader));
+        }
+        reader.endArray();
+        return array;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                return readArray(reader);
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    private static Object parseNumber(String number) {
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(number);
+        }
+    }
+}
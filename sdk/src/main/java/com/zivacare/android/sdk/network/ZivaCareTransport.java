@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import com.android.volley.toolbox.HttpStack;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * HTTP engine used by a {@link com.zivacare.android.sdk.ZivaCareSDK} to reach the
+ * ZivaCare servers.<br>
+ * Two engines are provided: {@link ZivaCareHurlTransport}, the platform
+ * HttpURLConnection used by Volley by default, and {@link ZivaCareOkHttpTransport},
+ * which keeps a pool of connections and multiplexes the requests over HTTP/2
+ * when the server supports it.
+ */
+public interface ZivaCareTransport {
+
+    /**
+     * Create the Volley stack used by the SDK request queue
+     *
+     * @return HttpStack
+     */
+    HttpStack createHttpStack();
+
+    /**
+     * Open a connection outside of the request queue, for example to read a
+     * response as a stream.
+     *
+     * @param url
+     * @return HttpURLConnection
+     * @throws IOException
+     */
+    HttpURLConnection openConnection(URL url) throws IOException;
+}
@@ -0,0 +1,50 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+/**
+ * Callback of an upload split into chunks, telling the progress of the upload
+ * after every chunk, before the final {@link #onSuccess(ZivaCareResponse)} or
+ * {@link #onError(ZivaCareResponse)}.<br>
+ * When the upload was sent in more than one chunk, the final response holds a
+ * summary under the keys below, the rows that failed to upload are listed as
+ * [first, last] index ranges.
+ */
+public interface ZivaCareUploadCallback extends ZivaCareCallback {
+
+    String KEY_CHUNKS = "chunks";
+    String KEY_ROWS = "rows";
+    String KEY_UPLOADED_ROWS = "uploaded_rows";
+    String KEY_FAILED_ROWS = "failed_rows";
+    String KEY_ERROR = "error";
+
+    /**
+     * Called when a chunk was uploaded
+     *
+     * @param uploadedRows rows uploaded so far
+     * @param totalRows    rows of the whole upload
+     * @param response     response to the chunk
+     */
+    void onProgress(int uploadedRows, int totalRows, ZivaCareResponse response);
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+/**
+ * Limits of the chunks a large upload is split into.<br>
+ * The rows of a {@code setData} call are sent in chunks holding at most
+ * {@link #getMaxRows()} rows and about {@link #getMaxBytes()} bytes of Json,
+ * several chunks at a time. A chunk rejected with "413 Request Entity Too
+ * Large" is split in two and sent again.
+ */
+public class ZivaCareUploadPolicy {
+
+    public static final int DEFAULT_MAX_ROWS = 500;
+    public static final int DEFAULT_MAX_BYTES = 256 * 1024;
+    public static final int DEFAULT_PARALLELISM = 2;
+
+    public static final ZivaCareUploadPolicy DEFAULT = new ZivaCareUploadPolicy(
+            DEFAULT_MAX_ROWS, DEFAULT_MAX_BYTES, DEFAULT_PARALLELISM);
+
+    private final int mMaxRows;
+    private final int mMaxBytes;
+    private final int mParallelism;
+
+    /**
+     * @param maxRows     most rows in one chunk
+     * @param maxBytes    most bytes of Json in one chunk, a single row larger
+     *                    than this is still sent in a chunk of its own
+     * @param parallelism most chunks uploaded at the same time
+     */
+    public ZivaCareUploadPolicy(int maxRows, int maxBytes, int parallelism) {
+        if (maxRows < 1 || maxBytes < 1 || parallelism < 1)
+            throw new IllegalArgumentException("the upload limits must be positive");
+        mMaxRows = maxRows;
+        mMaxBytes = maxBytes;
+        mParallelism = parallelism;
+    }
+
+    public int getMaxRows() {
+        return mMaxRows;
+    }
+
+    public int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public int getParallelism() {
+        return mParallelism;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+import java.util.Date;
+
+/**
+ * Callback of a windowed {@code getByPeriod} call. The response of every
+ * window is delivered as soon as it and all the windows before it arrived, so
+ * the windows always come in chronological order, before the final
+ * {@link #onSuccess(ZivaCareResponse)} or {@link #onError(ZivaCareResponse)}.
+ * No window is delivered after {@code onError}.
+ */
+public interface ZivaCareWindowCallback extends ZivaCareCallback {
+
+    /**
+     * Key of the number of windows in the final response
+     */
+    String KEY_WINDOWS = "windows";
+
+    /**
+     * Called for every window, in chronological order
+     *
+     * @param startDate first day of the window
+     * @param endDate   last day of the window
+     * @param response  response for the window
+     */
+    void onWindow(Date startDate, Date endDate, ZivaCareResponse response);
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.network;
+
+/**
+ * Sizing of the windows a long period is split into by a windowed
+ * {@code getByPeriod} call.<br>
+ * The first windows span {@link #getInitialDays()} days. The next ones are
+ * sized from the response size and latency seen so far, so that a window
+ * stays around {@link #getTargetBytes()} bytes and {@link #getTargetLatencyMs()}
+ * milliseconds, between {@link #getMinDays()} and {@link #getMaxDays()} days.
+ */
+public class ZivaCareWindowPolicy {
+
+    public static final int DEFAULT_INITIAL_DAYS = 7;
+    public static final int DEFAULT_MIN_DAYS = 1;
+    public static final int DEFAULT_MAX_DAYS = 92;
+    public static final int DEFAULT_TARGET_BYTES = 256 * 1024;
+    public static final int DEFAULT_TARGET_LATENCY_MS = 3000;
+    public static final int DEFAULT_PARALLELISM = 3;
+
+    public static final ZivaCareWindowPolicy DEFAULT = new ZivaCareWindowPolicy(
+            DEFAULT_INITIAL_DAYS, DEFAULT_MIN_DAYS, DEFAULT_MAX_DAYS, DEFAULT_TARGET_BYTES,
+            DEFAULT_TARGET_LATENCY_MS, DEFAULT_PARALLELISM);
+
+    private final int mInitialDays;
+    private final int mMinDays;
+    private final int mMaxDays;
+    private final int mTargetBytes;
+    private final int mTargetLatencyMs;
+    private final int mParallelism;
+
+    /**
+     * @param initialDays     days of the first windows
+     * @param minDays         fewest days of a window
+     * @param maxDays         most days of a window
+     * @param targetBytes     wished response size of a window
+     * @param targetLatencyMs wished response time of a window
+     * @param parallelism     most windows fetched at the same time
+     */
+    public ZivaCareWindowPolicy(int initialDays, int minDays, int maxDays, int targetBytes,
+                                int targetLatencyMs, int parallelism) {
+        if (minDays < 1 || maxDays < minDays || initialDays < minDays || initialDays > maxDays)
+            throw new IllegalArgumentException("the window days must be 1 <= min <= initial <= max");
+        if (targetBytes < 1 || targetLatencyMs < 1 || parallelism < 1)
+            throw new IllegalArgumentException("the window targets must be positive");
+        mInitialDays = initialDays;
+        mMinDays = minDays;
+        mMaxDays = maxDays;
+        mTargetBytes = targetBytes;
+        mTargetLatencyMs = targetLatencyMs;
+        mParallelism = parallelism;
+    }
+
+    public int getInitialDays() {
+        return mInitialDays;
+    }
+
+    public int getMinDays() {
+        return mMinDays;
+    }
+
+    public int getMaxDays() {
+        return mMaxDays;
+    }
+
+    public int getTargetBytes() {
+        return mTargetBytes;
+    }
+
+    public int getTargetLatencyMs() {
+        return mTargetLatencyMs;
+    }
+
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * Get the days of the next window from a window just fetched. The size
+     * changes at most by half or double at once.
+     *
+     * @param currentDays days of the windows now
+     * @param days        days of the window fetched
+     * @param bytes       size of its response
+     * @param latencyMs   time it took
+     * @return days of the next window
+     */
+    public int getNextDays(int currentDays, int days, long bytes, long latencyMs) {
+        final double bytesPerDay = Math.max(1.0, (double) bytes / days);
+        final double msPerDay = Math.max(1.0, (double) latencyMs / days);
+        final double fit = Math.min(mTargetBytes / bytesPerDay, mTargetLatencyMs / msPerDay);
+        final int next = (int) Math.max(currentDays / 2, Math.min(currentDays * 2L, (long) fit));
+        return Math.max(mMinDays, Math.min(mMaxDays, next));
+    }
+}
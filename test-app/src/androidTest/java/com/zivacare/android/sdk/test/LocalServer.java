@@ -0,0 +1,446 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import com.zivacare.android.sdk.network.ZivaCareHurlTransport;
+import com.zivacare.android.sdk.network.ZivaCareTransport;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the ZivaCare API server on the device: it answers every request
+ * with the same Json body and an ETag, revalidated on each request, and counts
+ * the requests and the full bodies sent. The connections are closed after each
+ * answer, unless asked to be kept alive. A part of the requests can be failed
+ * or left unanswered on purpose, and request bodies over a length limit are
+ * refused.
+ */
+class LocalServer {
+
+    /**
+     * Writes a response body while it is sent, for bodies too large to hold or
+     * that depend on the request
+     */
+    interface BodyWriter {
+
+        /**
+         * @param path path and query of the request
+         * @param out
+         */
+        void writeTo(String path, OutputStream out) throws IOException;
+    }
+
+    private static final String ETAG = "\"v1\"";
+
+    private final ServerSocket mSocket;
+    private final String mBody;
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicInteger mFullResponses = new AtomicInteger();
+    private final AtomicInteger mConnections = new AtomicInteger();
+    private final AtomicInteger mErrors = new AtomicInteger();
+    private final AtomicLong mReceivedBytes = new AtomicLong();
+    private final AtomicInteger mTooLarge = new AtomicInteger();
+    private final AtomicInteger mTimeouts = new AtomicInteger();
+    private final List<byte[]> mAcceptedBodies = new ArrayList<byte[]>();
+    // seeded, so every run fails the same requests
+    private final Random mRandom = new Random(42);
+    private final List<String> mRequestLines = new ArrayList<String>();
+    private final ZivaCareTransport mTransport;
+    private volatile long mDelayMs = 0;
+    private volatile boolean mKeepAlive = false;
+    private volatile double mErrorRate = 0;
+    private volatile double mTimeoutRate = 0;
+    private volatile long mTimeoutMs = 0;
+    private volatile int mMaxBodyLength = 0;
+    private volatile BodyWriter mBodyWriter = null;
+
+    LocalServer(String body) throws IOException {
+        mBody = body;
+        mSocket = new ServerSocket(0, 100, InetAddress.getByName("127.0.0.1"));
+        mTransport = new ZivaCareHurlTransport() {
+            @Override
+            public HttpURLConnection openConnection(URL url) throws IOException {
+                return (HttpURLConnection) getLocalUrl(url).openConnection();
+            }
+
+            // a request queue of its own for every server
+            @Override
+            public boolean equals(Object o) {
+                return o == this;
+            }
+
+            @Override
+            public int hashCode() {
+                return System.identityHashCode(this);
+            }
+        };
+        final Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "local-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Get a transport sending all the requests of a ZivaCareSDK to this server
+     */
+    ZivaCareTransport getTransport() {
+        return mTransport;
+    }
+
+    /**
+     * Get the URL of this server for the path of the passed URL, for a
+     * transport of its own
+     */
+    URL getLocalUrl(URL url) throws MalformedURLException {
+        return new URL("http", "127.0.0.1", mSocket.getLocalPort(), url.getFile());
+    }
+
+    /**
+     * Delay every answer, so concurrent requests overlap
+     */
+    void setDelay(long delayMs) {
+        mDelayMs = delayMs;
+    }
+
+    /**
+     * Keep the connections open after an answer, for the next requests
+     */
+    void setKeepAlive(boolean keepAlive) {
+        mKeepAlive = keepAlive;
+    }
+
+    /**
+     * Send the body written by the passed writer instead of the Json body. The
+     * body has no length, the connection is closed at its end.
+     *
+     * @param bodyWriter null to send the Json body again
+     */
+    void setBodyWriter(BodyWriter bodyWriter) {
+        mBodyWriter = bodyWriter;
+    }
+
+    /**
+     * Answer a part of the requests with "503 Service Unavailable"
+     *
+     * @param errorRate between 0 and 1
+     */
+    void setErrorRate(double errorRate) {
+        mErrorRate = errorRate;
+    }
+
+    /**
+     * Leave a part of the requests unanswered, the connection is closed after
+     * the passed time
+     *
+     * @param timeoutRate between 0 and 1
+     * @param timeoutMs   longer than the client timeout
+     */
+    void setTimeouts(double timeoutRate, long timeoutMs) {
+        mTimeoutRate = timeoutRate;
+        mTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Answer the requests with a longer body with "413 Request Entity Too Large"
+     *
+     * @param maxBodyLength 0 for no limit
+     */
+    void setMaxBodyLength(int maxBodyLength) {
+        mMaxBodyLength = maxBodyLength;
+    }
+
+    int getRequestCount() {
+        return mRequests.get();
+    }
+
+    int getFullResponseCount() {
+        return mFullResponses.get();
+    }
+
+    /**
+     * Get the number of requests failed on purpose
+     */
+    int getErrorCount() {
+        return mErrors.get();
+    }
+
+    /**
+     * Get the length of all the request bodies received, compressed or not
+     */
+    long getReceivedBytes() {
+        return mReceivedBytes.get();
+    }
+
+    /**
+     * Get the number of requests refused for their body length
+     */
+    int getTooLargeCount() {
+        return mTooLarge.get();
+    }
+
+    /**
+     * Get the number of requests left unanswered on purpose
+     */
+    int getTimeoutCount() {
+        return mTimeouts.get();
+    }
+
+    /**
+     * Get the non-empty request bodies of the requests answered with success
+     */
+    List<byte[]> getAcceptedBodies() {
+        synchronized (mAcceptedBodies) {
+            return new ArrayList<byte[]>(mAcceptedBodies);
+        }
+    }
+
+    /**
+     * Get the number of connections opened by the clients
+     */
+    int getConnectionCount() {
+        return mConnections.get();
+    }
+
+    List<String> getRequestLines() {
+        synchronized (mRequestLines) {
+            return new ArrayList<String>(mRequestLines);
+        }
+    }
+
+    void close() throws IOException {
+        mSocket.close();
+    }
+
+    private void accept() {
+        while (!mSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = mSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            mConnections.incrementAndGet();
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final InputStream in = new BufferedInputStream(socket.getInputStream());
+                        final OutputStream out = socket.getOutputStream();
+                        while (answer(in, out) && mKeepAlive) {
+                            // the next request on this connection
+                        }
+                    } catch (IOException e) {
+                        // the client went away
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // closed anyway
+                        }
+                    }
+                }
+            }).start();
+        }
+    }
+
+    /**
+     * Answer the next request on a connection
+     *
+     * @return false if the client closed the connection
+     */
+    private boolean answer(InputStream in, OutputStream out) throws IOException {
+        final String requestLine = readLine(in);
+        if (requestLine == null)
+            return false;
+        boolean revalidation = false;
+        int contentLength = 0;
+        boolean chunked = false;
+        String header;
+        while ((header = readLine(in)) != null && header.length() > 0) {
+            final String name = header.substring(0, Math.max(header.indexOf(':'), 0))
+                    .trim().toLowerCase();
+            final String value = header.substring(header.indexOf(':') + 1).trim();
+            if ("if-none-match".equals(name))
+                revalidation = ETAG.equals(value);
+            else if ("content-length".equals(name))
+                contentLength = Integer.parseInt(value);
+            else if ("transfer-encoding".equals(name))
+                chunked = "chunked".equalsIgnoreCase(value);
+        }
+        final byte[] requestBody = chunked ? readChunks(in) : readFully(in, contentLength);
+        mReceivedBytes.addAndGet(requestBody.length);
+        mRequests.incrementAndGet();
+        synchronized (mRequestLines) {
+            mRequestLines.add(requestLine);
+        }
+        if (draw(mTimeoutRate)) {
+            mTimeouts.incrementAndGet();
+            sleep(mTimeoutMs);
+            return false;
+        }
+        sleep(mDelayMs);
+        final StringBuilder response = new StringBuilder();
+        final byte[] body;
+        final boolean fail = draw(mErrorRate);
+        final boolean tooLarge = mMaxBodyLength > 0 && requestBody.length > mMaxBodyLength;
+        final BodyWriter bodyWriter = mBodyWriter;
+        if (!fail && !tooLarge && bodyWriter != null) {
+            mFullResponses.incrementAndGet();
+            response.append("HTTP/1.1 200 OK\r\n");
+            response.append("Content-Type: application/json; charset=utf-8\r\n");
+            response.append("Connection: close\r\n\r\n");
+            out.write(response.toString().getBytes("UTF-8"));
+            final String[] parts = requestLine.split(" ");
+            bodyWriter.writeTo(parts.length > 1 ? parts[1] : "", out);
+            out.flush();
+            return false;
+        }
+        if (fail) {
+            mErrors.incrementAndGet();
+            response.append("HTTP/1.1 503 Service Unavailable\r\n");
+            body = new byte[0];
+        } else if (tooLarge) {
+            mTooLarge.incrementAndGet();
+            response.append("HTTP/1.1 413 Request Entity Too Large\r\n");
+            body = new byte[0];
+        } else if (revalidation) {
+            response.append("HTTP/1.1 304 Not Modified\r\n");
+            body = new byte[0];
+        } else {
+            mFullResponses.incrementAndGet();
+            response.append("HTTP/1.1 200 OK\r\n");
+            response.append("Content-Type: application/json; charset=utf-8\r\n");
+            body = mBody.getBytes("UTF-8");
+            if (requestBody.length > 0) {
+                synchronized (mAcceptedBodies) {
+                    mAcceptedBodies.add(requestBody);
+                }
+            }
+        }
+        response.append("ETag: ").append(ETAG).append("\r\n");
+        response.append("Cache-Control: max-age=0\r\n");
+        response.append("Content-Length: ").append(body.length).append("\r\n");
+        response.append("Connection: ").append(mKeepAlive ? "keep-alive" : "close")
+                .append("\r\n\r\n");
+        out.write(response.toString().getBytes("UTF-8"));
+        out.write(body);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Pick a request at the passed rate
+     */
+    private boolean draw(double rate) {
+        if (rate <= 0)
+            return false;
+        synchronized (mRandom) {
+            return mRandom.nextDouble() < rate;
+        }
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0)
+            return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read a header line of a request
+     *
+     * @return the line without the line break, or null at the end of the stream
+     */
+    private static String readLine(InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r')
+                line.write(b);
+        }
+        if (b == -1 && line.size() == 0)
+            return null;
+        return line.toString("ISO-8859-1");
+    }
+
+    /**
+     * Read a request body sent in chunks
+     */
+    private static byte[] readChunks(InputStream in) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            final String sizeLine = readLine(in);
+            if (sizeLine == null)
+                throw new EOFException("request body cut at " + body.size() + " bytes");
+            final int semicolon = sizeLine.indexOf(';');
+            final int size = Integer.parseInt((semicolon > -1
+                    ? sizeLine.substring(0, semicolon) : sizeLine).trim(), 16);
+            if (size == 0)
+                break;
+            body.write(readFully(in, size));
+            readLine(in);
+        }
+        // the trailers end with an empty line
+        String trailer;
+        while ((trailer = readLine(in)) != null && trailer.length() > 0) {
+            // ignored
+        }
+        return body.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        final byte[] data = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            final int count = in.read(data, offset, length - offset);
+            if (count == -1)
+                throw new EOFException("request body cut at " + offset + " bytes");
+            offset += count;
+        }
+        return data;
+    }
+}
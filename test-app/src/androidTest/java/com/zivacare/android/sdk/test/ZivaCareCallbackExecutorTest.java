@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareHeartRatesEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareExecutorCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The callbacks run on the executor chosen for the instance or the call
+ */
+public class ZivaCareCallbackExecutorTest extends AndroidTestCase {
+
+    private static final String WORKER = "callback-worker";
+
+    private LocalServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ZivaCareDispatcher.clearCache();
+        mServer = new LocalServer("{\"heart_rates\":[]}");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        super.tearDown();
+    }
+
+    public void testCallbacksRunOnTheMainThreadByDefault() throws Exception {
+        final ZivaCareSDK sdk = newSdk();
+        assertSame(Looper.getMainLooper().getThread(), getAll(sdk, null));
+    }
+
+    public void testCallbacksRunOnTheInstanceExecutor() throws Exception {
+        final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, WORKER);
+            }
+        });
+        try {
+            final ZivaCareSDK sdk = newSdk();
+            sdk.setCallbackExecutor(worker);
+            assertEquals(WORKER, getAll(sdk, null).getName());
+        } finally {
+            worker.shutdown();
+        }
+    }
+
+    public void testCallbacksRunOnTheCallExecutor() throws Exception {
+        final ZivaCareSDK sdk = newSdk();
+        final Thread thread = getAll(sdk, ZivaCareExecutors.immediate());
+        assertNotSame(Looper.getMainLooper().getThread(), thread);
+    }
+
+    private ZivaCareSDK newSdk() {
+        return new ZivaCareSDK(getContext(),
+                new ZivaCareConfig(getContext(), true),
+                mServer.getTransport());
+    }
+
+    /**
+     * Call an endpoint and get the thread running the callback
+     *
+     * @param executor executor of the call, or null for the one of the instance
+     */
+    private Thread getAll(ZivaCareSDK sdk, Executor executor)
+            throws Exception {
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+        final CountDownLatch done = new CountDownLatch(1);
+        ZivaCareCallback callback = new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                thread.set(Thread.currentThread());
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                // not counted down, the wait of the test fails
+            }
+        };
+        if (executor != null)
+            callback = new ZivaCareExecutorCallback(executor, callback);
+        new ZivaCareHeartRatesEndpoint(sdk, sdk.getConfig()).getAll(1, callback);
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return thread.get();
+    }
+}
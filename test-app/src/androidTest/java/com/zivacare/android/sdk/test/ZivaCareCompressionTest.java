@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.os.Process;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.endpoints.ZivaCareHeartRatesEndpoint;
+import com.zivacare.android.sdk.endpoints.ZivaCareStepsEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareCompression;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import org.json.JSONObject;
+
+import java.net.URL;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wire bytes and CPU time of large uploads, with and without gzip
+ */
+public class ZivaCareCompressionTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareCompressionTest";
+    private static final String ACCOUNT = "compression_test";
+    private static final String SOURCE = "test-app";
+    private static final int ROWS = 10000;
+    private static final long FIRST_TIME = 1433152800000L;
+
+    private LocalServer mServer;
+    private ZivaCareConfig mConfig;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ZivaCareDispatcher.clearCache();
+        mServer = new LocalServer("{}");
+        mServer.setKeepAlive(true);
+        mConfig = new ZivaCareConfig(getContext(), false, ACCOUNT);
+        mConfig.setCredentialsFromResponse(new JSONObject()
+                .put(ZivaCareConfig.ACCESS_TOKEN, "token-1")
+                .put(ZivaCareConfig.ZIVA_USER_CODE, "user-1"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        mConfig.clearCache();
+        mConfig.flushCache();
+        super.tearDown();
+    }
+
+    public void testHeartRatesUpload() throws Exception {
+        final Object[][] rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new Object[]{60 + i % 40, "bpm", formatTime(FIRST_TIME + i * 60000L)};
+        }
+        compare(ZivaCareEndpoint.TYPE_HEART_RATES, rows);
+    }
+
+    public void testStepsUpload() throws Exception {
+        final Object[][] rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new Object[]{i % 300, formatTime(FIRST_TIME + i * 60000L)};
+        }
+        compare(ZivaCareEndpoint.TYPE_STEPS, rows);
+    }
+
+    private void compare(String type, Object[][] rows) throws Exception {
+        final long plainBytes = upload(type, rows, false);
+        final long gzipBytes = upload(type, rows, true);
+        assertTrue(type + ": " + gzipBytes + " bytes gzipped, " + plainBytes + " plain",
+                gzipBytes < plainBytes);
+    }
+
+    /**
+     * Upload the rows with a ZivaCareSDK of its own
+     *
+     * @return the bytes of the request bodies received by the server
+     */
+    private long upload(String type, Object[][] rows, boolean gzip) throws Exception {
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(), mConfig, mServer.getTransport());
+        sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+        sdk.getCompression().setGzipRequests(new URL(mConfig.getApiUrl()).getHost(), gzip);
+        final ZivaCareEndpoint endpoint = ZivaCareEndpoint.TYPE_STEPS.equals(type)
+                ? new ZivaCareStepsEndpoint(sdk, mConfig)
+                : new ZivaCareHeartRatesEndpoint(sdk, mConfig);
+
+        final long bytesBefore = mServer.getReceivedBytes();
+        final CountDownLatch done = new CountDownLatch(1);
+        // the process time also holds the local server reading the bodies
+        final long cpuStart = Process.getElapsedCpuTime();
+        final long start = System.nanoTime();
+        endpoint.setData(1, ZivaCareEndpoint.OP_INSERT, SOURCE, rows, new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                // not counted down, the wait of the test fails
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        final long elapsedMs = (System.nanoTime() - start) / 1000000;
+        final long cpuMs = Process.getElapsedCpuTime() - cpuStart;
+        final long wireBytes = mServer.getReceivedBytes() - bytesBefore;
+
+        final ZivaCareCompression.Savings savings = sdk.getCompression().getSavings(type);
+        Log.i(TAG, type + (gzip ? " gzip: " : " plain: ") + rows.length + " rows, "
+                + wireBytes + " bytes on the wire (" + savings.getRequestBytes()
+                + " bytes of Json), " + cpuMs + " ms of CPU, " + elapsedMs + " ms");
+        assertEquals(wireBytes, savings.getRequestWireBytes());
+        return wireBytes;
+    }
+
+    private static String formatTime(long time) {
+        // the record times without an offset are in UTC
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(time);
+        return String.format(Locale.US, "%1$tY-%1$tm-%1$td %1$tH:%1$tM:%1$tS", calendar);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareHeartRatesEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The calling thread never waits for the config to be read from the disk
+ */
+public class ZivaCareConfigLoadTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareConfigLoadTest";
+
+    private static final long MAX_CALL_MS = 50;
+
+    public void testCallsDoNotWaitForTheConfig() throws Exception {
+        // holds the disk thread, so the config stays unloaded
+        final CountDownLatch disk = new CountDownLatch(1);
+        ZivaCareExecutors.diskIo().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    disk.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        final CountDownLatch done = new CountDownLatch(3);
+        final ZivaCareCallback callback = new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                done.countDown();
+            }
+        };
+
+        long start = System.nanoTime();
+        final ZivaCareConfig config = new ZivaCareConfig(getContext(), false, "load_test");
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(), config);
+        sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+        sdk.login(callback);
+        sdk.createUser(callback);
+        new ZivaCareHeartRatesEndpoint(sdk, config).getAll(1, callback);
+        final long callsMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Log.i(TAG, "calls returned in " + callsMs + " ms before the config was loaded");
+        assertFalse(config.isLoaded());
+        assertTrue("calls took " + callsMs + " ms", callsMs < MAX_CALL_MS);
+
+        start = System.nanoTime();
+        disk.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        Log.i(TAG, "callbacks delivered " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + " ms after the disk was released");
+        assertTrue(config.isLoaded());
+    }
+
+    public void testCancelBeforeTheConfigIsLoaded() throws Exception {
+        final CountDownLatch disk = new CountDownLatch(1);
+        ZivaCareExecutors.diskIo().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    disk.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        final ZivaCareConfig config = new ZivaCareConfig(getContext(), true, "load_test");
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(), config);
+        sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+        final CountDownLatch called = new CountDownLatch(1);
+        final Object tag = new Object();
+        final ZivaCareHeartRatesEndpoint endpoint = new ZivaCareHeartRatesEndpoint(sdk, config);
+        endpoint.setTag(tag);
+        endpoint.getAll(1, new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                called.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                called.countDown();
+            }
+        });
+        sdk.cancelByTag(tag);
+        disk.countDown();
+        assertFalse(called.await(2, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.test.AndroidTestCase;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareHeartRatesEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The cached credentials are read once, and written off the main thread
+ * without blocking the disk thread
+ */
+public class ZivaCareConfigTest extends AndroidTestCase {
+
+    private static final String ACCOUNT = "config_test";
+    private static final int CALLS = 1000;
+
+    @Override
+    protected void tearDown() throws Exception {
+        final ZivaCareConfig config = new ZivaCareConfig(getContext(), false, ACCOUNT);
+        config.clearCache();
+        config.flushCache();
+        super.tearDown();
+    }
+
+    public void testCredentialsAreReadOnce() throws Exception {
+        save("token-1");
+        final ZivaCareConfig config = new ZivaCareConfig(getContext(), false, ACCOUNT);
+        assertEquals("token-1", config.getAccessToken());
+        // a file read after the load would see the new token
+        save("token-2");
+
+        final LocalServer server = new LocalServer("{\"heart_rates\":[]}");
+        try {
+            final ZivaCareSDK sdk = new ZivaCareSDK(getContext(), config, server.getTransport());
+            final ZivaCareHeartRatesEndpoint endpoint = new ZivaCareHeartRatesEndpoint(sdk, config);
+            final ZivaCareCallback ignored = new ZivaCareCallback() {
+                @Override
+                public void onSuccess(ZivaCareResponse response) {
+                }
+
+                @Override
+                public void onError(ZivaCareResponse response) {
+                }
+            };
+            for (int i = 0; i < CALLS; i++) {
+                endpoint.getAll(1, ignored).cancel();
+            }
+            assertEquals("token-1", config.getAccessToken());
+            for (String requestLine : server.getRequestLines()) {
+                assertFalse(requestLine, requestLine.contains("token-2"));
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    public void testAuthWritesStayOffTheMainThread() throws Exception {
+        final ZivaCareConfig config = new ZivaCareConfig(getContext(), false, ACCOUNT);
+        // loaded before the main thread uses it
+        config.flushCache();
+        final JSONObject login = new JSONObject()
+                .put(ZivaCareConfig.ACCESS_TOKEN, "token-1")
+                .put(ZivaCareConfig.ZIVA_USER_CODE, "user-1");
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                final StrictMode.ThreadPolicy policy = StrictMode.getThreadPolicy();
+                // any disk access of the SDK kills the test
+                StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                        .detectDiskReads()
+                        .detectDiskWrites()
+                        .penaltyDeath()
+                        .build());
+                try {
+                    // what the login and create user handlers do with a response
+                    config.setCredentialsFromResponse(login);
+                    config.writeCacheFile(login.toString(), true);
+                    config.writeCacheFile(login.toString(), true);
+                    config.saveCredentials();
+                    assertEquals("token-1", config.getAccessToken());
+                    config.clearCache();
+                } catch (Throwable e) {
+                    failure.set(e);
+                } finally {
+                    StrictMode.setThreadPolicy(policy);
+                    done.countDown();
+                }
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+        config.flushCache();
+    }
+
+    public void testFlushOnTheDiskThreadReturns() throws Exception {
+        // the loader of the config is queued after this task
+        final String saved = ZivaCareExecutors.diskIo().submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                save("token-disk");
+                return new ZivaCareConfig(getContext(), false, ACCOUNT).getAccessToken();
+            }
+        }).get(10, TimeUnit.SECONDS);
+        assertEquals("token-disk", saved);
+    }
+
+    private void save(String accessToken) throws Exception {
+        final ZivaCareConfig config = new ZivaCareConfig(getContext(), false, ACCOUNT);
+        config.setCredentialsFromResponse(new JSONObject()
+                .put(ZivaCareConfig.ACCESS_TOKEN, accessToken)
+                .put(ZivaCareConfig.ZIVA_USER_CODE, "user-1"));
+        config.saveCredentials();
+        config.flushCache();
+    }
+}
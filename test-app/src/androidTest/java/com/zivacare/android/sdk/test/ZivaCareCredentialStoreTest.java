@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareCredentialStore;
+import com.zivacare.android.sdk.ZivaCareCredentials;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Cold-start read of the cached credentials after many logins, from the old
+ * append-only cache file and from the compacted one
+ */
+public class ZivaCareCredentialStoreTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareCredentialStoreTest";
+    private static final int RUNS = 5;
+
+    /**
+     * The fields the getters of the old ZivaCareConfig each read from the file
+     */
+    private static final String[] FIELDS = new String[]{ZivaCareConfig.CLIENT_ID,
+            ZivaCareConfig.CLIENT_SECRET, ZivaCareConfig.CLIENT_USER_ID,
+            ZivaCareConfig.CLIENT_USER_NAME, ZivaCareConfig.SPECIAL_TOKEN,
+            ZivaCareConfig.ZIVA_USER_CODE, ZivaCareConfig.ACCESS_TOKEN};
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(getContext().getCacheDir(), "ziva_cache_store_test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testReadTimeDoesNotGrowWithTheLogins() throws Exception {
+        final long oneLogin = measure(1);
+        measure(100);
+        final long manyLogins = measure(10000);
+        // the compacted file holds one value per key
+        assertEquals(oneLogin, manyLogins);
+    }
+
+    /**
+     * Write the cache file the old SDK left after some logins, then read it
+     * the old way and the new way
+     *
+     * @return the size of the compacted file
+     */
+    private long measure(int logins) throws Exception {
+        final StringBuilder appended = new StringBuilder();
+        for (int i = 1; i <= logins; i++) {
+            appended.append(login(i));
+        }
+        write(appended.toString());
+
+        // every getter read the file and parsed it, falling back to a scan
+        final long[] oldUs = new long[RUNS];
+        String oldToken = null;
+        for (int run = 0; run < RUNS; run++) {
+            final long start = System.nanoTime();
+            for (String field : FIELDS) {
+                final String value = ZivaCareCredentials.extractValue(read(), field);
+                if (ZivaCareConfig.ACCESS_TOKEN.equals(field))
+                    oldToken = value;
+            }
+            oldUs[run] = (System.nanoTime() - start) / 1000;
+        }
+
+        long start = System.nanoTime();
+        final ZivaCareCredentials compacted = new ZivaCareCredentialStore(mFile).load();
+        final long compactUs = (System.nanoTime() - start) / 1000;
+        assertEquals(token(logins), compacted.getAccessToken());
+
+        final long[] newUs = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            start = System.nanoTime();
+            final ZivaCareCredentials loaded = new ZivaCareCredentialStore(mFile).load();
+            newUs[run] = (System.nanoTime() - start) / 1000;
+            assertEquals(token(logins), loaded.getAccessToken());
+        }
+
+        Log.i(TAG, logins + " logins: old read " + median(oldUs) + " us (access token "
+                + oldToken + "), first load and compaction " + compactUs
+                + " us, cold load " + median(newUs) + " us, file " + mFile.length() + " bytes");
+        return mFile.length();
+    }
+
+    private static String login(int i) throws Exception {
+        return new JSONObject()
+                .put(ZivaCareConfig.ACCESS_TOKEN, token(i))
+                .put(ZivaCareConfig.REFRESH_TOKEN, "refresh-" + token(i))
+                .put(ZivaCareConfig.ZIVA_USER_CODE, "user-1")
+                .put(ZivaCareConfig.CLIENT_ID, "client-1")
+                .put(ZivaCareConfig.CLIENT_SECRET, "secret-1")
+                .put(ZivaCareConfig.CLIENT_USER_ID, "app-user-1")
+                .put(ZivaCareConfig.CLIENT_USER_NAME, "app user")
+                .put(ZivaCareConfig.SPECIAL_TOKEN, "special-1")
+                .toString();
+    }
+
+    /**
+     * Tokens of one length, so the compacted files can be compared by size
+     */
+    private static String token(int i) {
+        return String.format("token-%05d", i);
+    }
+
+    private void write(String content) throws IOException {
+        final OutputStream out = new FileOutputStream(mFile, false);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private String read() throws IOException {
+        final InputStream in = new FileInputStream(mFile);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long median(long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Allocations and time of reading the credentials of an auth response in one
+ * pass, against the per-field setters
+ */
+public class ZivaCareCredentialsTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareCredentialsTest";
+    private static final String ACCOUNT = "credentials_test";
+    private static final int RUNS = 200;
+
+    private ZivaCareConfig mConfig;
+    private String mResponseStr;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mConfig = new ZivaCareConfig(getContext(), false, ACCOUNT);
+
+        // the create-user response also carries the profile of the user
+        final JSONArray devices = new JSONArray();
+        for (int i = 0; i < 20; i++) {
+            devices.put(new JSONObject().put("id", i).put("name", "device " + i)
+                    .put("connected_at", "2015-06-01 10:00:00"));
+        }
+        mResponseStr = new JSONObject()
+                .put(ZivaCareConfig.SPECIAL_TOKEN, "special-1")
+                .put(ZivaCareConfig.CLIENT_ID, "client-1")
+                .put(ZivaCareConfig.CLIENT_USER_ID, "app-user-1")
+                .put(ZivaCareConfig.CLIENT_USER_NAME, "app user")
+                .put("email", "user@example.com")
+                .put("devices", devices)
+                .toString();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mConfig.clearCache();
+        mConfig.flushCache();
+        super.tearDown();
+    }
+
+    public void testSinglePassAllocatesLessThanPerFieldSetters() throws Exception {
+        // warm up both paths before counting
+        perField();
+        singlePass();
+
+        long perFieldNs = 0;
+        long singlePassNs = 0;
+        long perFieldBytes;
+        long singlePassBytes;
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocSize();
+            for (int i = 0; i < RUNS; i++) {
+                final long start = System.nanoTime();
+                perField();
+                perFieldNs += System.nanoTime() - start;
+            }
+            perFieldBytes = Debug.getThreadAllocSize();
+
+            Debug.resetThreadAllocSize();
+            for (int i = 0; i < RUNS; i++) {
+                final long start = System.nanoTime();
+                singlePass();
+                singlePassNs += System.nanoTime() - start;
+            }
+            singlePassBytes = Debug.getThreadAllocSize();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+
+        Log.i(TAG, "response of " + mResponseStr.length() + " chars: per-field setters "
+                + perFieldBytes / RUNS + " bytes, " + perFieldNs / RUNS / 1000
+                + " us; single pass " + singlePassBytes / RUNS + " bytes, "
+                + singlePassNs / RUNS / 1000 + " us");
+        assertEquals("special-1", mConfig.getSpecialToken());
+        assertEquals("client-1", mConfig.getClientId());
+        assertEquals("app-user-1", mConfig.getClientUserId());
+        assertEquals("app user", mConfig.getClientUserName());
+        assertTrue("single pass allocated " + singlePassBytes + ", per-field " + perFieldBytes,
+                singlePassBytes < perFieldBytes);
+    }
+
+    /**
+     * What the create-user handler did before: each setter parses the response
+     */
+    private void perField() throws Exception {
+        final JSONObject response = new JSONObject(mResponseStr);
+        mConfig.setSpecialTokenFromResponse(response.toString());
+        mConfig.setClientIdFromResponse(response.toString());
+        mConfig.setClientUserIdFromResponse(response.toString());
+        mConfig.setClientUserNameFromResponse(response.toString());
+    }
+
+    private void singlePass() throws Exception {
+        mConfig.setCredentialsFromResponse(new JSONObject(mResponseStr));
+    }
+}
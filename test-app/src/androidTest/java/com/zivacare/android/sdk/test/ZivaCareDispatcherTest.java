@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareHeartRatesEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SDK threads are shared by all the ZivaCareSDK instances
+ */
+public class ZivaCareDispatcherTest extends AndroidTestCase {
+
+    private static final int INSTANCES = 50;
+
+    public void testThreadCountIsFixedAcrossInstances() throws Exception {
+        final int maxThreads = ZivaCareDispatcher.getMaxThreadCount();
+        final CountDownLatch done = new CountDownLatch(INSTANCES);
+        final ZivaCareCallback callback = new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < INSTANCES; i++) {
+            final ZivaCareSDK sdk = new ZivaCareSDK(getContext(), true);
+            sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+            new ZivaCareHeartRatesEndpoint(sdk, sdk.getConfig()).getAll(1, callback);
+            assertTrue("threads: " + ZivaCareDispatcher.getThreadCount(),
+                    ZivaCareDispatcher.getThreadCount() <= maxThreads);
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertTrue("threads: " + ZivaCareDispatcher.getThreadCount(),
+                ZivaCareDispatcher.getThreadCount() <= maxThreads);
+    }
+
+    public void testShutdownStopsTheQueues() throws Exception {
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(), true);
+        final CountDownLatch done = new CountDownLatch(1);
+        new ZivaCareHeartRatesEndpoint(sdk, sdk.getConfig()).getAll(1, new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                done.countDown();
+            }
+        });
+        // races the request finishing, it must neither hang nor leave a queue running
+        ZivaCareDispatcher.shutdown();
+        assertTrue("threads: " + ZivaCareDispatcher.getThreadCount(),
+                ZivaCareDispatcher.getThreadCount() <= ZivaCareExecutors.getMaxThreadCount());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.endpoints.ZivaCareHeartRatesEndpoint;
+import com.zivacare.android.sdk.endpoints.ZivaCareStepsEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import org.json.JSONObject;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identical GETs are shared, the cached responses outlive the access token,
+ * and the response body is only kept when asked for
+ */
+public class ZivaCareEndpointCallTest extends AndroidTestCase {
+
+    private static final String ACCOUNT = "endpoint_call_test";
+    private static final int CALLERS = 50;
+
+    private LocalServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ZivaCareDispatcher.clearCache();
+        mServer = new LocalServer("{\"" + ZivaCareEndpoint.TYPE_STEPS + "\":[],\""
+                + ZivaCareEndpoint.TYPE_HEART_RATES + "\":[]}");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        final ZivaCareConfig config = new ZivaCareConfig(getContext(), false, ACCOUNT);
+        config.clearCache();
+        config.flushCache();
+        super.tearDown();
+    }
+
+    public void testIdenticalGetsMakeOneRequest() throws Exception {
+        // all the callers arrive while the first request is running
+        mServer.setDelay(1000);
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(),
+                new ZivaCareConfig(getContext(), true), mServer.getTransport());
+        sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+        final CountDownLatch done = new CountDownLatch(CALLERS);
+        final Date today = new Date();
+        for (int i = 0; i < CALLERS; i++) {
+            new ZivaCareStepsEndpoint(sdk, sdk.getConfig()).getByDate(1, today,
+                    new ZivaCareCallback() {
+                        @Override
+                        public void onSuccess(ZivaCareResponse response) {
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onError(ZivaCareResponse response) {
+                            // not counted down, the wait of the test fails
+                        }
+                    });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    public void testCachedResponseOutlivesTheTokenRefresh() throws Exception {
+        final ZivaCareConfig config = new ZivaCareConfig(getContext(), false, ACCOUNT);
+        setAccessToken(config, "token-1");
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(), config, mServer.getTransport());
+        sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+
+        assertNotNull(getAll(sdk).getJson());
+        // what a token refresh does to the config
+        setAccessToken(config, "token-2");
+        final ZivaCareResponse revalidated = getAll(sdk);
+
+        assertTrue(revalidated.getJson().has(ZivaCareEndpoint.TYPE_HEART_RATES));
+        assertEquals(1, mServer.getFullResponseCount());
+        // a response still fresh is not asked again at all
+        assertTrue(mServer.getRequestCount() <= 2);
+        final List<String> requestLines = mServer.getRequestLines();
+        if (requestLines.size() == 2)
+            assertTrue(requestLines.get(1), requestLines.get(1).contains("token-2"));
+    }
+
+    public void testResponseDataIsOnlyKeptOnRequest() throws Exception {
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(),
+                new ZivaCareConfig(getContext(), true), mServer.getTransport());
+        sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+        assertNull(getAll(sdk, false).getResponseData());
+
+        final ZivaCareResponse response = getAll(sdk, true);
+        final String body = new String(response.getResponseData(), "UTF-8");
+        assertEquals(response.getResponseLength(), response.getResponseData().length);
+        assertTrue(body, body.contains(ZivaCareEndpoint.TYPE_HEART_RATES));
+        assertTrue(response.getJson().has(ZivaCareEndpoint.TYPE_HEART_RATES));
+    }
+
+    private static void setAccessToken(ZivaCareConfig config, String accessToken)
+            throws Exception {
+        config.setCredentialsFromResponse(new JSONObject()
+                .put(ZivaCareConfig.ACCESS_TOKEN, accessToken)
+                .put(ZivaCareConfig.ZIVA_USER_CODE, "user-1"));
+    }
+
+    private static ZivaCareResponse getAll(ZivaCareSDK sdk) throws Exception {
+        return getAll(sdk, false);
+    }
+
+    private static ZivaCareResponse getAll(ZivaCareSDK sdk, boolean keepData) throws Exception {
+        final ZivaCareResponse[] result = new ZivaCareResponse[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        final ZivaCareHeartRatesEndpoint endpoint =
+                new ZivaCareHeartRatesEndpoint(sdk, sdk.getConfig());
+        endpoint.setKeepResponseData(keepData);
+        endpoint.getAll(1, new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                result[0] = response;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                // not counted down, the wait of the test fails
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return result[0];
+    }
+}
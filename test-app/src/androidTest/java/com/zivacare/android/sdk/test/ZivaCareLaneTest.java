@@ -0,0 +1,165 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+import com.zivacare.android.sdk.network.ZivaCareUploadCallback;
+import com.zivacare.android.sdk.network.ZivaCareUploadPolicy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The dashboard reads do not wait behind a large upload
+ */
+public class ZivaCareLaneTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareLaneTest";
+    private static final String TYPE = ZivaCareEndpoint.TYPE_STEPS;
+
+    private static final int UPLOAD_ROWS = 10000;
+    // small chunks, so the upload keeps the write lane busy during the reads
+    private static final ZivaCareUploadPolicy UPLOAD_POLICY = new ZivaCareUploadPolicy(50,
+            ZivaCareUploadPolicy.DEFAULT_MAX_BYTES, ZivaCareUploadPolicy.DEFAULT_PARALLELISM);
+    private static final int READS = 40;
+    private static final long SERVER_DELAY_MS = 50;
+    private static final long MAX_P95_GROWTH_MS = 100;
+
+    private LocalServer mServer;
+    private ZivaCareSDK mSdk;
+    private int mRead = 0;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ZivaCareDispatcher.clearCache();
+        mServer = new LocalServer("{\"" + TYPE + "\":[]}");
+        mServer.setDelay(SERVER_DELAY_MS);
+        mServer.setKeepAlive(true);
+        mSdk = new ZivaCareSDK(getContext(), new ZivaCareConfig(getContext(), true),
+                mServer.getTransport());
+        mSdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+        mSdk.setUploadPolicy(UPLOAD_POLICY);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        super.tearDown();
+    }
+
+    public void testReadLatencyStaysFlatDuringAnUpload() throws Exception {
+        // warm up the connections of the read lane
+        readP95();
+        final long idleP95Ms = readP95();
+
+        final AtomicInteger uploaded = new AtomicInteger();
+        final CountDownLatch uploadDone = new CountDownLatch(1);
+        mSdk.uploadEndpoint("/api/v1/human/" + TYPE, mSdk.getConfig(), getDataMap(), TYPE,
+                null, new ZivaCareUploadCallback() {
+                    @Override
+                    public void onProgress(int uploadedRows, int totalRows,
+                                           ZivaCareResponse response) {
+                        uploaded.set(uploadedRows);
+                    }
+
+                    @Override
+                    public void onSuccess(ZivaCareResponse response) {
+                        uploadDone.countDown();
+                    }
+
+                    @Override
+                    public void onError(ZivaCareResponse response) {
+                        // not counted down, the wait of the test fails
+                    }
+                });
+        final long uploadP95Ms = readP95();
+        final int uploadedDuringReads = uploaded.get();
+        assertTrue(uploadDone.await(5, TimeUnit.MINUTES));
+
+        Log.i(TAG, "dashboard read p95: " + idleP95Ms + " ms idle, " + uploadP95Ms
+                + " ms during the upload (" + uploadedDuringReads + " of " + UPLOAD_ROWS
+                + " rows uploaded when the reads were done)");
+        // the reads were made while the upload was running
+        assertTrue(uploadedDuringReads < UPLOAD_ROWS);
+        assertTrue("p95 of " + uploadP95Ms + " ms, " + idleP95Ms + " ms idle",
+                uploadP95Ms <= idleP95Ms + MAX_P95_GROWTH_MS);
+    }
+
+    /**
+     * Make the dashboard reads one after the other, like a user paging days
+     *
+     * @return p95 latency in milliseconds
+     */
+    private long readP95() throws Exception {
+        final long[] latenciesNs = new long[READS];
+        for (int i = 0; i < READS; i++) {
+            final long start = System.nanoTime();
+            final CountDownLatch done = new CountDownLatch(1);
+            // a path of its own for every read, so nothing is answered from the cache
+            mSdk.callEndpoint("/api/v1/human/" + TYPE + "/daily/" + mRead++,
+                    mSdk.getConfig(), new ZivaCareCallback() {
+                        @Override
+                        public void onSuccess(ZivaCareResponse response) {
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onError(ZivaCareResponse response) {
+                            // not counted down, the wait of the test fails
+                        }
+                    });
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            latenciesNs[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latenciesNs);
+        return latenciesNs[READS * 95 / 100] / 1000000;
+    }
+
+    private static Map<String, Object> getDataMap() {
+        final Object[] rows = new Object[UPLOAD_ROWS];
+        for (int i = 0; i < UPLOAD_ROWS; i++) {
+            final Map<String, Object> row = new HashMap<String, Object>();
+            row.put(ZivaCareEndpoint.RECORD_TIME, "2015-06-01 10:00:00");
+            row.put("value", i % 200);
+            rows[i] = row;
+        }
+        final Map<String, Object> dataMap = new HashMap<String, Object>();
+        dataMap.put(TYPE, rows);
+        return dataMap;
+    }
+}
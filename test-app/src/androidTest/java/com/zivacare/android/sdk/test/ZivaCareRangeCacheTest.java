@@ -0,0 +1,186 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareRangeCache;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.ZivaCareSqliteStore;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareCompression;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes downloaded by a sequence of dashboard navigations through a
+ * ZivaCareRangeCache, against a stand-in server
+ */
+public class ZivaCareRangeCacheTest extends AndroidTestCase {
+
+    private static final String TYPE = ZivaCareEndpoint.TYPE_HEART_RATES;
+
+    private LocalServer mServer;
+    private ZivaCareSDK mSdk;
+    private ZivaCareRangeCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ZivaCareDispatcher.clearCache();
+        final JSONArray records = new JSONArray()
+                .put(new JSONObject()
+                        .put("id", 1)
+                        .put(ZivaCareEndpoint.RECORD_TIME, formatTime(daysAgo(3).getTime()))
+                        .put("value", 60))
+                .put(new JSONObject()
+                        .put("id", 2)
+                        .put("value", 61));
+        mServer = new LocalServer(new JSONObject().put(TYPE, records).toString());
+        mSdk = new ZivaCareSDK(getContext(), new ZivaCareConfig(getContext(), true),
+                mServer.getTransport());
+        mSdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+        mCache = new ZivaCareRangeCache(mSdk, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        getContext().deleteDatabase("ziva_store.db");
+        super.tearDown();
+    }
+
+    public void testNavigationsOnlyFetchNewDays() throws Exception {
+        // the periods end yesterday, today is fetched every time
+        final Date yesterday = daysAgo(1);
+
+        // the week view, then the month view
+        getByPeriod(daysAgo(7), yesterday);
+        assertEquals(1, mCache.getFetchCount());
+        getByPeriod(daysAgo(30), yesterday);
+        assertEquals("only the days before the week", 2, mCache.getFetchCount());
+        final long monthBytes = getResponseBytes();
+
+        // the days of the week one after the other, then the week again
+        final CountDownLatch days = new CountDownLatch(7);
+        for (int i = 7; i >= 1; i--) {
+            mCache.getByDate(null, TYPE, daysAgo(i), countDown(days));
+        }
+        assertTrue(days.await(30, TimeUnit.SECONDS));
+        getByPeriod(daysAgo(7), yesterday);
+
+        assertEquals(2, mCache.getFetchCount());
+        assertEquals("no byte for the days already fetched", monthBytes, getResponseBytes());
+    }
+
+    public void testDayViewsAreFetchedInOneRequest() throws Exception {
+        final CountDownLatch days = new CountDownLatch(7);
+        for (int i = 14; i >= 8; i--) {
+            mCache.getByDate(null, TYPE, daysAgo(i), countDown(days));
+        }
+        assertTrue(days.await(30, TimeUnit.SECONDS));
+        assertEquals(1, mCache.getFetchCount());
+    }
+
+    public void testRecordsWithoutTimeOutliveTheMemoryLimit() throws Exception {
+        getContext().deleteDatabase("ziva_store.db");
+        final ZivaCareSqliteStore store = new ZivaCareSqliteStore(mSdk);
+        try {
+            mCache = new ZivaCareRangeCache(mSdk, store);
+            assertEquals(2, getByPeriod(daysAgo(7), daysAgo(1)).length());
+            // the days are dropped from memory, then read back from the disk
+            mCache.setMaxRecords(0);
+            final JSONArray records = getByPeriod(daysAgo(7), daysAgo(1));
+            assertEquals(1, mCache.getFetchCount());
+            assertEquals(2, records.length());
+            assertFalse(records.getJSONObject(1).has(ZivaCareEndpoint.RECORD_TIME));
+        } finally {
+            store.close();
+        }
+    }
+
+    private JSONArray getByPeriod(Date startDate, Date endDate) throws Exception {
+        final JSONArray[] result = new JSONArray[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        mCache.getByPeriod(null, TYPE, startDate, endDate, new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                result[0] = response.getJson().optJSONArray(TYPE);
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                // not counted down, the wait of the test fails
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return result[0];
+    }
+
+    private long getResponseBytes() {
+        final ZivaCareCompression.Savings savings = mSdk.getCompression().getSavings(TYPE);
+        return savings.getResponseWireBytes();
+    }
+
+    private static ZivaCareCallback countDown(final CountDownLatch latch) {
+        return new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                // not counted down, the wait of the test fails
+            }
+        };
+    }
+
+    private static Date daysAgo(int days) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_MONTH, -days);
+        return calendar.getTime();
+    }
+
+    private static String formatTime(long time) {
+        // the record times without an offset are in UTC
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(time);
+        return String.format(Locale.US, "%1$tY-%1$tm-%1$td %1$tH:%1$tM:%1$tS", calendar);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Allocations of a response handed to the callbacks
+ */
+public class ZivaCareResponseTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareResponseTest";
+
+    private static final int BODY_BYTES = 5 * 1024 * 1024;
+    private static final int MAX_HANDOVER_BYTES = 64 * 1024;
+
+    public void testLargeResponseIsHandedOverWithoutCopies() throws Exception {
+        final JSONArray records = new JSONArray();
+        int bytes = 0;
+        for (int i = 0; bytes < BODY_BYTES; i++) {
+            final JSONObject record = new JSONObject();
+            record.put("id", i);
+            record.put("record_time", "2015-06-01 10:00:00");
+            record.put("value", 60 + i % 40);
+            record.put("unit", "bpm");
+            records.put(record);
+            bytes += record.toString().length() + 1;
+        }
+        final JSONObject json = new JSONObject().put("heart_rates", records);
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocSize();
+            final ZivaCareResponse response = new ZivaCareResponse(200, json, bytes);
+            assertSame(json, response.getJson());
+            final int handover = Debug.getThreadAllocSize();
+
+            Debug.resetThreadAllocSize();
+            final int stringLength = response.getResponseString().length();
+            final int string = Debug.getThreadAllocSize();
+
+            Log.i(TAG, "response of " + bytes + " bytes: handover allocated " + handover
+                    + " bytes, getResponseString() " + string + " bytes");
+            assertEquals(bytes, response.getResponseLength());
+            assertTrue(stringLength >= BODY_BYTES);
+            assertTrue("handover allocated " + handover, handover < MAX_HANDOVER_BYTES);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+import com.zivacare.android.sdk.network.ZivaCareRetryHandler;
+import com.zivacare.android.sdk.network.ZivaCareRetryPolicy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Goodput of the endpoint calls while the server fails a part of the
+ * requests, and the retries kept within the budget
+ */
+public class ZivaCareRetryTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareRetryTest";
+    private static final int CALLS = 100;
+    private static final double[] ERROR_RATES = new double[]{0.1, 0.2, 0.3, 0.4, 0.5};
+
+    private static final ZivaCareRetryPolicy NO_RETRIES = new ZivaCareRetryPolicy(
+            ZivaCareRetryPolicy.DEFAULT_TIMEOUT_MS, 0, 10, 100);
+    private static final ZivaCareRetryPolicy RETRIES = new ZivaCareRetryPolicy(
+            ZivaCareRetryPolicy.DEFAULT_TIMEOUT_MS, 3, 10, 100);
+
+    private LocalServer mServer;
+    private int mRound = 0;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ZivaCareDispatcher.clearCache();
+        mServer = new LocalServer("{\"" + ZivaCareEndpoint.TYPE_STEPS + "\":[]}");
+        mServer.setKeepAlive(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        super.tearDown();
+    }
+
+    public void testRetriesRaiseTheGoodput() throws Exception {
+        for (double errorRate : ERROR_RATES) {
+            mServer.setErrorRate(errorRate);
+            final int withoutRetries = measure(errorRate, NO_RETRIES);
+            final int withRetries = measure(errorRate, RETRIES);
+            assertTrue("at " + errorRate + ": " + withRetries + " calls succeeded with retries, "
+                    + withoutRetries + " without", withRetries >= withoutRetries);
+        }
+    }
+
+    public void testRetriesStayWithinTheBudget() throws Exception {
+        mServer.setErrorRate(0.5);
+        final int requestsBefore = mServer.getRequestCount();
+        final int succeeded = measure(0.5, RETRIES);
+        final int retries = mServer.getRequestCount() - requestsBefore - CALLS;
+        // every success earns back a part of a retry
+        final double budget = ZivaCareRetryHandler.DEFAULT_BUDGET_MAX
+                + ZivaCareRetryHandler.DEFAULT_BUDGET_RATIO * succeeded;
+        assertTrue(retries + " retries for a budget of " + budget, retries <= budget + 1);
+    }
+
+    /**
+     * Make the calls, a few at a time like an app does, with a retry handler of
+     * their own
+     *
+     * @return the number of calls that succeeded
+     */
+    private int measure(double errorRate, ZivaCareRetryPolicy policy) throws Exception {
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(),
+                new ZivaCareConfig(getContext(), true), mServer.getTransport());
+        sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+        final ZivaCareRetryHandler retryHandler = new ZivaCareRetryHandler();
+        retryHandler.setDefaultPolicy(policy);
+        sdk.setRetryHandler(retryHandler);
+
+        final int requestsBefore = mServer.getRequestCount();
+        final AtomicInteger succeeded = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(CALLS);
+        final long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            // a path of its own for every call, so nothing is answered from the cache
+            sdk.callEndpoint("/api/v1/human/" + ZivaCareEndpoint.TYPE_STEPS + "/" + mRound
+                    + "-" + i, sdk.getConfig(), new ZivaCareCallback() {
+                @Override
+                public void onSuccess(ZivaCareResponse response) {
+                    succeeded.incrementAndGet();
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(ZivaCareResponse response) {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        final long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1000000);
+        mRound++;
+
+        final int requests = mServer.getRequestCount() - requestsBefore;
+        Log.i(TAG, String.format("error rate %.0f%%, %d retries: %d of %d calls succeeded, "
+                        + "%d requests, goodput %.1f calls/s", errorRate * 100,
+                policy.getMaxRetries(), succeeded.get(), CALLS, requests,
+                succeeded.get() * 1000.0 / elapsedMs));
+        assertTrue(requests <= CALLS * (policy.getMaxRetries() + 1));
+        return succeeded.get();
+    }
+}
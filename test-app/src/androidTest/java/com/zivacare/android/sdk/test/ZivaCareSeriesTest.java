@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.endpoints.ZivaCareHeartRatesEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+import com.zivacare.android.sdk.network.ZivaCareSeries;
+import com.zivacare.android.sdk.network.ZivaCareSeriesCallback;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A year of heart rates read as a columnar series, against the same response
+ * read as Json objects
+ */
+public class ZivaCareSeriesTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareSeriesTest";
+    private static final String TYPE = ZivaCareEndpoint.TYPE_HEART_RATES;
+
+    // a sample every 10 minutes for a year
+    private static final int SAMPLES = 6 * 24 * 365;
+    private static final long SAMPLE_MS = 10 * 60 * 1000L;
+    private static final int WARMUPS = 2;
+    private static final int RUNS = 5;
+
+    private LocalServer mServer;
+    private ZivaCareHeartRatesEndpoint mEndpoint;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ZivaCareDispatcher.clearCache();
+        final long first = ZivaCareEndpoint.parseRecordTime("2014-01-01 00:00:00");
+        final StringBuilder body = new StringBuilder("{\"status\":\"ok\",\"" + TYPE + "\":[");
+        for (int i = 0; i < SAMPLES; i++) {
+            if (i > 0)
+                body.append(',');
+            body.append(new JSONObject()
+                    .put("id", i)
+                    .put(ZivaCareEndpoint.RECORD_TIME, formatTime(first + i * SAMPLE_MS))
+                    .put("value", 60 + i % 40)
+                    .put("unit", i % 1000 == 0 ? "beats/min" : "bpm"));
+        }
+        body.append("]}");
+        mServer = new LocalServer(body.toString());
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(),
+                new ZivaCareConfig(getContext(), true), mServer.getTransport());
+        sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+        mEndpoint = new ZivaCareHeartRatesEndpoint(sdk, sdk.getConfig());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        ZivaCareDispatcher.clearCache();
+        super.tearDown();
+    }
+
+    public void testSeriesHoldsTheRecords() throws Exception {
+        final ZivaCareSeries series = getSeries();
+        final JSONArray records = getJson().getJSONArray(TYPE);
+        assertEquals(records.length(), series.size());
+        assertEquals(2, series.getUnits().length);
+        for (int i = 0; i < SAMPLES; i += 997) {
+            final JSONObject record = records.getJSONObject(i);
+            assertEquals(ZivaCareEndpoint.parseRecordTime(
+                    record.getString(ZivaCareEndpoint.RECORD_TIME)), series.getTime(i));
+            assertEquals(record.getDouble("value"), series.getValue(i));
+            assertEquals(record.getString("unit"), series.getUnit(i));
+        }
+    }
+
+    /**
+     * Median allocations and time of both reads, after warm-up runs
+     */
+    public void testSeriesAllocatesLessThanJsonObjects() throws Exception {
+        final long[] seriesBytes = new long[RUNS];
+        final long[] seriesMs = new long[RUNS];
+        final long[] jsonBytes = new long[RUNS];
+        final long[] jsonMs = new long[RUNS];
+        Debug.startAllocCounting();
+        try {
+            for (int i = -WARMUPS; i < RUNS; i++) {
+                Runtime.getRuntime().gc();
+                Debug.resetGlobalAllocSize();
+                long start = System.nanoTime();
+                getSeries();
+                if (i >= 0) {
+                    seriesMs[i] = (System.nanoTime() - start) / 1000000;
+                    seriesBytes[i] = Debug.getGlobalAllocSize();
+                }
+
+                Runtime.getRuntime().gc();
+                Debug.resetGlobalAllocSize();
+                start = System.nanoTime();
+                getJson();
+                if (i >= 0) {
+                    jsonMs[i] = (System.nanoTime() - start) / 1000000;
+                    jsonBytes[i] = Debug.getGlobalAllocSize();
+                }
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        final long series = median(seriesBytes);
+        final long json = median(jsonBytes);
+        Log.i(TAG, SAMPLES + " samples: series " + series + " bytes allocated, "
+                + median(seriesMs) + " ms; Json objects " + json + " bytes allocated, "
+                + median(jsonMs) + " ms");
+        assertTrue("series " + series + " bytes, json " + json + " bytes", series < json);
+    }
+
+    private ZivaCareSeries getSeries() throws Exception {
+        final ZivaCareSeries[] result = new ZivaCareSeries[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        mEndpoint.getSeriesAll(1, new ZivaCareSeriesCallback() {
+            @Override
+            public void onSuccess(ZivaCareSeries series) {
+                result[0] = series;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                // not counted down, the wait of the test fails
+            }
+        });
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        return result[0];
+    }
+
+    private JSONObject getJson() throws Exception {
+        final JSONObject[] result = new JSONObject[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        mEndpoint.getAll(1, new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                result[0] = response.getJson();
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                // not counted down, the wait of the test fails
+            }
+        });
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        return result[0];
+    }
+
+    private static long median(long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static String formatTime(long time) {
+        // the record times without an offset are in UTC
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(time);
+        return String.format(Locale.US, "%1$tY-%1$tm-%1$td %1$tH:%1$tM:%1$tS", calendar);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.ZivaCareSqliteStore;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Keys, ingest and range query times of the SQLite store
+ */
+public class ZivaCareSqliteStoreTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareSqliteStoreTest";
+    private static final String TYPE = ZivaCareEndpoint.TYPE_HEART_RATES;
+
+    private static final int ROWS = 1000000;
+    private static final int BATCH = 10000;
+    private static final int QUERIES = 200;
+    private static final long MINUTE_MS = 60 * 1000L;
+    private static final long DAY_MS = 24 * 60 * MINUTE_MS;
+
+    private ZivaCareSDK mSdk;
+    private ZivaCareSqliteStore mStore;
+    private String mUser;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getContext().deleteDatabase("ziva_store.db");
+        mSdk = new ZivaCareSDK(getContext(), true);
+        mStore = new ZivaCareSqliteStore(mSdk);
+        mUser = mSdk.getUserKey(null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mStore.close();
+        getContext().deleteDatabase("ziva_store.db");
+        super.tearDown();
+    }
+
+    public void testRecordsSharingARecordTimeAreKept() throws Exception {
+        final String time = "2015-06-01 10:00:00";
+        mStore.merge(mUser, TYPE, Arrays.asList(record(1, time, 60), record(2, time, 61)));
+        mStore.merge(mUser, TYPE, Arrays.asList(record(2, time, 62)));
+        final long from = ZivaCareEndpoint.parseRecordTime(time);
+        final List<JSONObject> records = query(from, from + 1);
+        assertEquals(2, records.size());
+        for (JSONObject record : records) {
+            assertEquals(record.getInt("id") == 1 ? 60 : 62, record.getInt("value"));
+        }
+    }
+
+    public void testRecordMovedInTimeReplacesItsOldCopy() throws Exception {
+        final String before = "2015-06-01 10:00:00";
+        final String after = "2015-06-01 11:00:00";
+        mStore.merge(mUser, TYPE, Arrays.asList(record(1, before, 60)));
+        mStore.merge(mUser, TYPE, Arrays.asList(record(1, after, 61)));
+        final List<JSONObject> records = mStore.queryAll(null, TYPE);
+        assertEquals(1, records.size());
+        assertEquals(after, records.get(0).getString(ZivaCareEndpoint.RECORD_TIME));
+    }
+
+    /**
+     * Ingest of a million rows, then the 99th percentile of one-day range queries
+     */
+    public void testIngestAndRangeQueryTimes() throws Exception {
+        final long first = ZivaCareEndpoint.parseRecordTime("2014-01-01 00:00:00");
+        long start = System.nanoTime();
+        final List<JSONObject> batch = new ArrayList<JSONObject>(BATCH);
+        for (int i = 0; i < ROWS; i++) {
+            batch.add(record(i, formatTime(first + i * MINUTE_MS), 60 + i % 40));
+            if (batch.size() == BATCH) {
+                mStore.merge(mUser, TYPE, batch);
+                batch.clear();
+            }
+        }
+        final long ingestMs = (System.nanoTime() - start) / 1000000;
+        Log.i(TAG, "ingest of " + ROWS + " rows: " + ingestMs + " ms");
+
+        final long days = ROWS * MINUTE_MS / DAY_MS;
+        final Random random = new Random(1);
+        final long[] queryUs = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            final long from = first + random.nextInt((int) days) * DAY_MS;
+            start = System.nanoTime();
+            final int count = query(from, from + DAY_MS).size();
+            queryUs[i] = (System.nanoTime() - start) / 1000;
+            assertEquals(24 * 60, count);
+        }
+        Arrays.sort(queryUs);
+        Log.i(TAG, "one-day range query: p50 " + queryUs[QUERIES / 2] + " us, p99 "
+                + queryUs[QUERIES * 99 / 100] + " us");
+    }
+
+    private List<JSONObject> query(long from, long to) {
+        return mStore.query(null, TYPE, from, to);
+    }
+
+    private static JSONObject record(int id, String time, int value) throws Exception {
+        final JSONObject record = new JSONObject();
+        record.put("id", id);
+        record.put(ZivaCareEndpoint.RECORD_TIME, time);
+        record.put("value", value);
+        return record;
+    }
+
+    private static String formatTime(long time) {
+        // the record times without an offset are in UTC
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(time);
+        return String.format(Locale.US, "%1$tY-%1$tm-%1$td %1$tH:%1$tM:%1$tS", calendar);
+    }
+}
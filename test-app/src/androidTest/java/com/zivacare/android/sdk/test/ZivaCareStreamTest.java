@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareRecordCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A streamed response far larger than the heap is read with a bounded heap
+ */
+public class ZivaCareStreamTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareStreamTest";
+    private static final String TYPE = ZivaCareEndpoint.TYPE_LOCATIONS;
+
+    private static final long BODY_BYTES = 200L * 1024 * 1024;
+    private static final long MAX_HEAP_GROWTH_BYTES = 32L * 1024 * 1024;
+    private static final int BATCH_SIZE = 100;
+
+    private LocalServer mServer;
+    private volatile int mRecordsWritten = 0;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new LocalServer("{}");
+        mServer.setBodyWriter(new LocalServer.BodyWriter() {
+            @Override
+            public void writeTo(String path, OutputStream out) throws IOException {
+                writeRecords(out);
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        ZivaCareDispatcher.clearCache();
+        super.tearDown();
+    }
+
+    public void testLargeResponseIsReadWithABoundedHeap() throws Exception {
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(),
+                new ZivaCareConfig(getContext(), true), mServer.getTransport());
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        final long baseline = runtime.totalMemory() - runtime.freeMemory();
+        final long[] peak = new long[]{baseline};
+        final int[] records = new int[1];
+        final String[] names = new String[1];
+        final ZivaCareResponse[] result = new ZivaCareResponse[1];
+        final CountDownLatch done = new CountDownLatch(1);
+
+        final long start = System.nanoTime();
+        sdk.streamEndpoint("/api/v1/human/" + TYPE, sdk.getConfig(), BATCH_SIZE,
+                new ZivaCareRecordCallback() {
+                    @Override
+                    public void onRecords(String name, List<JSONObject> batch) {
+                        names[0] = name;
+                        records[0] += batch.size();
+                        peak[0] = Math.max(peak[0], runtime.totalMemory() - runtime.freeMemory());
+                    }
+
+                    @Override
+                    public void onSuccess(ZivaCareResponse response) {
+                        result[0] = response;
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onError(ZivaCareResponse response) {
+                        // not counted down, the wait of the test fails
+                    }
+                });
+        assertTrue(done.await(10, TimeUnit.MINUTES));
+        final long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        final long growth = peak[0] - baseline;
+        Log.i(TAG, BODY_BYTES / (1024 * 1024) + " MB, " + records[0] + " records in "
+                + elapsedMs + " ms, heap grew by " + growth / 1024 + " KB at most, max heap "
+                + runtime.maxMemory() / (1024 * 1024) + " MB");
+        assertEquals(200, result[0].getResponseCode());
+        assertEquals(TYPE, names[0]);
+        assertEquals(mRecordsWritten, records[0]);
+        assertTrue("heap grew by " + growth + " bytes", growth < MAX_HEAP_GROWTH_BYTES);
+    }
+
+    /**
+     * Write a locations response of BODY_BYTES, one record after the other
+     */
+    private void writeRecords(OutputStream out) throws IOException {
+        final OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        final StringBuilder record = new StringBuilder();
+        buffered.write(("{\"" + TYPE + "\":[").getBytes("UTF-8"));
+        long written = 0;
+        int count = 0;
+        while (written < BODY_BYTES) {
+            record.setLength(0);
+            if (count > 0)
+                record.append(',');
+            record.append("{\"id\":").append(count)
+                    .append(",\"record_time\":\"2015-06-01 10:00:00\"")
+                    .append(",\"latitude\":").append(52 + (count % 1000) / 1000.0)
+                    .append(",\"longitude\":").append(13 + (count % 997) / 1000.0)
+                    .append(",\"accuracy\":10}");
+            final byte[] bytes = record.toString().getBytes("UTF-8");
+            buffered.write(bytes);
+            written += bytes.length;
+            count++;
+        }
+        // set before the end is sent, the client can be done right after
+        mRecordsWritten = count;
+        buffered.write("]}".getBytes("UTF-8"));
+        buffered.flush();
+    }
+}
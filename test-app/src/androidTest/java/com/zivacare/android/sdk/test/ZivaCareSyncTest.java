@@ -0,0 +1,159 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+
+import com.zivacare.android.sdk.ZivaCareCall;
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.ZivaCareSqliteStore;
+import com.zivacare.android.sdk.ZivaCareSync;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delta sync against a stand-in server: the first sync downloads everything,
+ * the next ones only the period after the high-water mark
+ */
+public class ZivaCareSyncTest extends AndroidTestCase {
+
+    private static final String ACCOUNT = "sync_test";
+    private static final String TYPE = ZivaCareEndpoint.TYPE_HEART_RATES;
+    private static final String LATEST = "2015-06-01 12:00:00";
+
+    private LocalServer mServer;
+    private ZivaCareConfig mConfig;
+    private ZivaCareSqliteStore mStore;
+    private ZivaCareSync mSync;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ZivaCareDispatcher.clearCache();
+        getContext().deleteDatabase("ziva_store.db");
+        final JSONArray records = new JSONArray()
+                .put(record(1, "2015-06-01 10:00:00"))
+                .put(record(2, "2015-06-01 11:00:00"))
+                .put(record(3, LATEST));
+        mServer = new LocalServer(new JSONObject().put(TYPE, records).toString());
+        mConfig = new ZivaCareConfig(getContext(), false, ACCOUNT);
+        mConfig.setCredentialsFromResponse(new JSONObject()
+                .put(ZivaCareConfig.ACCESS_TOKEN, "token")
+                .put(ZivaCareConfig.ZIVA_USER_CODE, "user-1"));
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(), mConfig, mServer.getTransport());
+        sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+        mStore = new ZivaCareSqliteStore(sdk);
+        mSync = new ZivaCareSync(sdk, mStore);
+        mSync.setTypes(TYPE);
+        mSync.resetMarks(null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mSync.resetMarks(null);
+        mServer.close();
+        mStore.close();
+        getContext().deleteDatabase("ziva_store.db");
+        mConfig.clearCache();
+        mConfig.flushCache();
+        super.tearDown();
+    }
+
+    public void testSecondSyncOnlyAsksThePeriodAfterTheMark() throws Exception {
+        assertEquals(3, sync().getJson().getInt(TYPE));
+        assertFalse(mServer.getRequestLines().get(0).contains("/period/"));
+        assertEquals(ZivaCareEndpoint.parseRecordTime(LATEST), mSync.getMark(null, TYPE));
+
+        // the overlap reads the same records again, the store replaces them
+        assertEquals(3, sync().getJson().getInt(TYPE));
+        final List<String> requestLines = mServer.getRequestLines();
+        assertEquals(2, requestLines.size());
+        assertTrue(requestLines.get(1), requestLines.get(1).contains("/period/"));
+        assertEquals(3, mStore.queryAll(null, TYPE).size());
+    }
+
+    public void testCanceledSyncKeepsNoMark() throws Exception {
+        mServer.setDelay(1000);
+        final AtomicBoolean called = new AtomicBoolean(false);
+        final ZivaCareCall call = mSync.sync(new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                called.set(true);
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                called.set(true);
+            }
+        });
+        // canceled while the server holds the answer
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (mServer.getRequestCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        call.cancel();
+        Thread.sleep(3000);
+
+        assertFalse(called.get());
+        assertEquals(-1, mSync.getMark(null, TYPE));
+    }
+
+    private ZivaCareResponse sync() throws Exception {
+        final ZivaCareResponse[] result = new ZivaCareResponse[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        mSync.sync(new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                result[0] = response;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                // not counted down, the wait of the test fails
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return result[0];
+    }
+
+    private static JSONObject record(int id, String time) throws Exception {
+        return new JSONObject()
+                .put("id", id)
+                .put(ZivaCareEndpoint.RECORD_TIME, time)
+                .put("value", 60 + id);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+
+import com.zivacare.android.sdk.ZivaCareClock;
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.ZivaCareTokenRefresher;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Access tokens refreshed in the background, before they expire, against a
+ * stand-in OAuth server
+ */
+public class ZivaCareTokenExpiryTest extends AndroidTestCase {
+
+    private static final String ACCOUNT = "expiry-test";
+    private static final long EXPIRES_IN_S = 2;
+    /**
+     * The refresh is scheduled 1 s after the token is received
+     */
+    private static final long REFRESH_MARGIN_MS = 1000;
+    private static final long WAIT_MS = 10000;
+
+    private final ZivaCareClock mClock = new ZivaCareClock() {
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    };
+    private volatile long mNow = 1000000L;
+
+    private LocalServer mServer;
+    private ZivaCareConfig mConfig;
+    private ZivaCareTokenRefresher mRefresher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new LocalServer(getTokenResponse("token-new").toString());
+        mConfig = new ZivaCareConfig(getContext(), false, ACCOUNT);
+        mConfig.setClock(mClock);
+        mConfig.setCredentialsFromResponse(getTokenResponse("token-login"));
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(), mConfig, mServer.getTransport());
+        mRefresher = sdk.getTokenRefresher();
+        mRefresher.setRefreshMargin(REFRESH_MARGIN_MS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRefresher.cancel();
+        mServer.close();
+        mConfig.clearCache();
+        mConfig.flushCache();
+        super.tearDown();
+    }
+
+    public void testTwoExpiriesAreRefreshedInTheBackground() throws Exception {
+        mRefresher.schedule();
+        // the clock stands still and every refresh answers a token expiring in 2 s, so the
+        // next one is only sent if the refresh was scheduled again
+        awaitRefreshes(1);
+        assertTokenReady();
+        awaitRefreshes(2);
+        assertTokenReady();
+        assertEquals("token-new", mConfig.getAccessToken());
+    }
+
+    private void awaitRefreshes(int count) throws InterruptedException {
+        final long end = System.currentTimeMillis() + WAIT_MS;
+        while (mServer.getRequestCount() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+        assertTrue("refreshes: " + mServer.getRequestCount(),
+                mServer.getRequestCount() >= count);
+    }
+
+    /**
+     * A request made now does not wait for any refresh
+     */
+    private void assertTokenReady() throws InterruptedException {
+        // the response of the refresh is handled right after the request is counted
+        final long end = System.currentTimeMillis() + WAIT_MS;
+        while (mRefresher.isRefreshing() && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        assertFalse(mRefresher.isExpiring());
+        final AtomicBoolean ready = new AtomicBoolean();
+        mRefresher.whenValid(new ZivaCareTokenRefresher.Listener() {
+            @Override
+            public void onTokenReady(ZivaCareResponse response) {
+                ready.set(response == null);
+            }
+
+            @Override
+            public void onTokenError(ZivaCareResponse response) {
+            }
+        });
+        assertTrue(ready.get());
+    }
+
+    private static JSONObject getTokenResponse(String accessToken) throws Exception {
+        return new JSONObject()
+                .put(ZivaCareConfig.ACCESS_TOKEN, accessToken)
+                .put(ZivaCareConfig.REFRESH_TOKEN, "refresh")
+                .put(ZivaCareConfig.EXPIRES_IN, EXPIRES_IN_S);
+    }
+}
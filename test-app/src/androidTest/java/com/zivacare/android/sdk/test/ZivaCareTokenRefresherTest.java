@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.support.annotation.NonNull;
+import android.test.AndroidTestCase;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.ZivaCareTokenRefresher;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Access tokens rejected by many requests at once
+ */
+public class ZivaCareTokenRefresherTest extends AndroidTestCase {
+
+    private static final int REQUESTS = 20;
+    private static final long REFRESH_MS = 200;
+
+    private ZivaCareConfig mConfig;
+    private CountingRefresher mRefresher;
+
+    /**
+     * Refresher counting the refreshes, each one hands out the next token
+     */
+    private class CountingRefresher extends ZivaCareTokenRefresher {
+        private final AtomicInteger mRefreshes = new AtomicInteger();
+
+        CountingRefresher(ZivaCareSDK sdk) {
+            super(sdk);
+        }
+
+        @Override
+        protected void sendRefresh(@NonNull final ZivaCareCallback callback) {
+            final int refresh = mRefreshes.incrementAndGet();
+            ZivaCareExecutors.scheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    mConfig.setCredentialsFromResponse(getCredentials(refresh + 1));
+                    callback.onSuccess(new ZivaCareResponse(200, "{}"));
+                }
+            }, REFRESH_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mConfig = new ZivaCareConfig(getContext(), false, "refresher-test");
+        mConfig.setCredentialsFromResponse(getCredentials(1));
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(), mConfig);
+        mRefresher = new CountingRefresher(sdk);
+        sdk.setTokenRefresher(mRefresher);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mConfig.clearCache();
+        super.tearDown();
+    }
+
+    public void testParallelRejectionsRefreshOnce() throws Exception {
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch ready = new CountDownLatch(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    mRefresher.onTokenRejected("token-1", countDown(ready));
+                }
+            }.start();
+        }
+        go.countDown();
+        assertTrue(ready.await(10, TimeUnit.SECONDS));
+        assertEquals(1, mRefresher.mRefreshes.get());
+        assertEquals("token-2", mConfig.getAccessToken());
+    }
+
+    public void testLateRejectionReplaysWithoutRefresh() throws Exception {
+        reject("token-1");
+        assertEquals(1, mRefresher.mRefreshes.get());
+        // sent with the old token, rejected after the refresh
+        reject("token-1");
+        assertEquals(1, mRefresher.mRefreshes.get());
+        // the new token rejected in turn
+        reject("token-2");
+        assertEquals(2, mRefresher.mRefreshes.get());
+    }
+
+    private void reject(String accessToken) throws InterruptedException {
+        final CountDownLatch ready = new CountDownLatch(1);
+        mRefresher.onTokenRejected(accessToken, countDown(ready));
+        assertTrue(ready.await(10, TimeUnit.SECONDS));
+    }
+
+    private static ZivaCareTokenRefresher.Listener countDown(final CountDownLatch latch) {
+        return new ZivaCareTokenRefresher.Listener() {
+            @Override
+            public void onTokenReady(ZivaCareResponse response) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onTokenError(ZivaCareResponse response) {
+                // not counted down, the wait of the test fails
+            }
+        };
+    }
+
+    private static String getCredentials(int index) {
+        return "{\"" + ZivaCareConfig.ACCESS_TOKEN + "\":\"token-" + index + "\",\""
+                + ZivaCareConfig.REFRESH_TOKEN + "\":\"refresh-" + index + "\"}";
+    }
+}
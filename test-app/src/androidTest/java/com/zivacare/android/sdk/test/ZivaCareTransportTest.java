@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareOkHttpTransport;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+import com.zivacare.android.sdk.network.ZivaCareTransport;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and p99 latency of the endpoint GETs a dashboard sends at once,
+ * with the platform transport and the pooling OkHttp transport
+ */
+public class ZivaCareTransportTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareTransportTest";
+
+    private static final String[] TYPES = new String[]{ZivaCareEndpoint.TYPE_PROFILE,
+            ZivaCareEndpoint.TYPE_ACTIVITIES, ZivaCareEndpoint.TYPE_BLOOD_GLUCOSES,
+            ZivaCareEndpoint.TYPE_BLOOD_OXYGENS, ZivaCareEndpoint.TYPE_BLOOD_PRESSURES,
+            ZivaCareEndpoint.TYPE_FALLS, ZivaCareEndpoint.TYPE_BODY_FATS,
+            ZivaCareEndpoint.TYPE_BMIS, ZivaCareEndpoint.TYPE_GENETICS,
+            ZivaCareEndpoint.TYPE_HEART_RATES, ZivaCareEndpoint.TYPE_HEIGHTS,
+            ZivaCareEndpoint.TYPE_LOCATIONS, ZivaCareEndpoint.TYPE_MEALS,
+            ZivaCareEndpoint.TYPE_RESPIRATION_RATES, ZivaCareEndpoint.TYPE_SLEEPS,
+            ZivaCareEndpoint.TYPE_SLEEP_SUMMARY, ZivaCareEndpoint.TYPE_STEPS,
+            ZivaCareEndpoint.TYPE_WEIGHTS};
+    private static final int ROUNDS = 20;
+    private static final long SERVER_DELAY_MS = 20;
+
+    private LocalServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ZivaCareDispatcher.clearCache();
+        // all the GETs of a round are on the wire together
+        ZivaCareDispatcher.setNetworkThreads(ZivaCareDispatcher.Lane.READ, TYPES.length);
+        mServer = new LocalServer("{\"" + ZivaCareEndpoint.TYPE_HEART_RATES + "\":[]}");
+        mServer.setDelay(SERVER_DELAY_MS);
+        mServer.setKeepAlive(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        ZivaCareDispatcher.setNetworkThreads(ZivaCareDispatcher.Lane.READ,
+                ZivaCareDispatcher.DEFAULT_NETWORK_THREADS);
+        super.tearDown();
+    }
+
+    public void testPlatformTransport() throws Exception {
+        measure("platform", mServer.getTransport());
+    }
+
+    public void testOkHttpTransport() throws Exception {
+        final OkHttpClient client = new OkHttpClient();
+        client.setConnectionPool(new ConnectionPool(
+                ZivaCareOkHttpTransport.DEFAULT_MAX_IDLE_CONNECTIONS,
+                ZivaCareOkHttpTransport.DEFAULT_KEEP_ALIVE_MS));
+        measure("okhttp", new ZivaCareOkHttpTransport(client) {
+            @Override
+            public HttpURLConnection openConnection(URL url) throws IOException {
+                return super.openConnection(mServer.getLocalUrl(url));
+            }
+        });
+    }
+
+    private void measure(String name, ZivaCareTransport transport) throws Exception {
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(),
+                new ZivaCareConfig(getContext(), true), transport);
+        sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+
+        // the first round opens the connections
+        final long[] latenciesNs = new long[(ROUNDS - 1) * TYPES.length];
+        long totalNs = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            final long start = System.nanoTime();
+            final long[] roundNs = getAll(sdk, round);
+            if (round > 0) {
+                totalNs += System.nanoTime() - start;
+                System.arraycopy(roundNs, 0, latenciesNs, (round - 1) * TYPES.length,
+                        TYPES.length);
+            }
+        }
+
+        Arrays.sort(latenciesNs);
+        final long p50Ms = latenciesNs[latenciesNs.length / 2] / 1000000;
+        final long p99Ms = latenciesNs[latenciesNs.length * 99 / 100] / 1000000;
+        final double throughput = latenciesNs.length * 1000000000.0 / totalNs;
+        Log.i(TAG, name + ": " + String.format("%.1f", throughput) + " requests/s, p50 "
+                + p50Ms + " ms, p99 " + p99Ms + " ms, " + mServer.getConnectionCount()
+                + " connections for " + mServer.getRequestCount() + " requests");
+        assertEquals(ROUNDS * TYPES.length, mServer.getRequestCount());
+    }
+
+    /**
+     * Send one GET per record type at once
+     *
+     * @return the time of each GET, in nanoseconds
+     */
+    private static long[] getAll(ZivaCareSDK sdk, int round) throws Exception {
+        final long[] latenciesNs = new long[TYPES.length];
+        final CountDownLatch done = new CountDownLatch(TYPES.length);
+        for (int i = 0; i < TYPES.length; i++) {
+            final int index = i;
+            final long start = System.nanoTime();
+            // a path of its own in every round, so nothing is answered from the cache
+            sdk.callEndpoint("/api/v1/human/" + TYPES[i] + "/" + round, sdk.getConfig(),
+                    new ZivaCareCallback() {
+                        @Override
+                        public void onSuccess(ZivaCareResponse response) {
+                            latenciesNs[index] = System.nanoTime() - start;
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onError(ZivaCareResponse response) {
+                            // not counted down, the wait of the test fails
+                        }
+                    });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return latenciesNs;
+    }
+}
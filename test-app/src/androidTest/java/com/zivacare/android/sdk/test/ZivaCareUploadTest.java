@@ -0,0 +1,175 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.android.volley.Request;
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.endpoints.ZivaCareStepsEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+import com.zivacare.android.sdk.network.ZivaCareRetryHandler;
+import com.zivacare.android.sdk.network.ZivaCareRetryPolicy;
+import com.zivacare.android.sdk.network.ZivaCareUploadCallback;
+import com.zivacare.android.sdk.network.ZivaCareUploadPolicy;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Large uploads are split to the body length the server accepts, and only the
+ * chunks that timed out are sent again
+ */
+public class ZivaCareUploadTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareUploadTest";
+    private static final String ACCOUNT = "upload_test";
+    private static final String SOURCE = "test-app";
+    private static final int ROWS = 10000;
+    private static final int MAX_BODY_LENGTH = 16 * 1024;
+
+    private LocalServer mServer;
+    private ZivaCareConfig mConfig;
+    private ZivaCareSDK mSdk;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ZivaCareDispatcher.clearCache();
+        mServer = new LocalServer("{}");
+        mServer.setKeepAlive(true);
+        mConfig = new ZivaCareConfig(getContext(), false, ACCOUNT);
+        mConfig.setCredentialsFromResponse(new JSONObject()
+                .put(ZivaCareConfig.ACCESS_TOKEN, "token-1")
+                .put(ZivaCareConfig.ZIVA_USER_CODE, "user-1"));
+        mSdk = new ZivaCareSDK(getContext(), mConfig, mServer.getTransport());
+        mSdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        mConfig.clearCache();
+        mConfig.flushCache();
+        super.tearDown();
+    }
+
+    public void testChunksAreSplitToTheBodyLimit() throws Exception {
+        // the default chunks are larger than the server accepts
+        mServer.setMaxBodyLength(MAX_BODY_LENGTH);
+        final ZivaCareResponse result = upload(new AtomicInteger());
+
+        Log.i(TAG, "body limit of " + MAX_BODY_LENGTH + " bytes: " + mServer.getRequestCount()
+                + " requests, " + mServer.getTooLargeCount() + " refused as too large");
+        assertTrue(mServer.getTooLargeCount() > 0);
+        for (byte[] body : mServer.getAcceptedBodies()) {
+            assertTrue(body.length <= MAX_BODY_LENGTH);
+        }
+        assertAllRowsAcceptedOnce(result);
+    }
+
+    public void testOnlyTimedOutChunksAreSentAgain() throws Exception {
+        mSdk.setUploadPolicy(new ZivaCareUploadPolicy(100, ZivaCareUploadPolicy.DEFAULT_MAX_BYTES,
+                ZivaCareUploadPolicy.DEFAULT_PARALLELISM));
+        final ZivaCareRetryHandler retryHandler = new ZivaCareRetryHandler();
+        retryHandler.setPolicy(Request.Method.POST, new ZivaCareRetryPolicy(1000, 3, 10, 100));
+        mSdk.setRetryHandler(retryHandler);
+        mServer.setTimeouts(0.1, 2000);
+        final AtomicInteger progress = new AtomicInteger();
+        final ZivaCareResponse result = upload(progress);
+
+        final int chunks = ROWS / 100;
+        Log.i(TAG, "10% timeouts: " + mServer.getRequestCount() + " requests for " + chunks
+                + " chunks, " + mServer.getTimeoutCount() + " timed out");
+        assertTrue(mServer.getTimeoutCount() > 0);
+        // every request over the chunk count retries a chunk that timed out
+        assertEquals(chunks + mServer.getTimeoutCount(), mServer.getRequestCount());
+        assertEquals(chunks, progress.get());
+        assertAllRowsAcceptedOnce(result);
+    }
+
+    /**
+     * Upload ROWS steps rows, the value of each row is its index
+     *
+     * @param progress counts the calls of onProgress
+     * @return the final response
+     */
+    private ZivaCareResponse upload(final AtomicInteger progress) throws Exception {
+        final Object[][] rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new Object[]{i, "2015-06-01 10:00:00"};
+        }
+        final ZivaCareResponse[] result = new ZivaCareResponse[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        new ZivaCareStepsEndpoint(mSdk, mConfig).setData(1, ZivaCareEndpoint.OP_INSERT, SOURCE,
+                rows, new ZivaCareUploadCallback() {
+                    @Override
+                    public void onProgress(int uploadedRows, int totalRows,
+                                           ZivaCareResponse response) {
+                        progress.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onSuccess(ZivaCareResponse response) {
+                        result[0] = response;
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onError(ZivaCareResponse response) {
+                        // not counted down, the wait of the test fails
+                    }
+                });
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        return result[0];
+    }
+
+    private void assertAllRowsAcceptedOnce(ZivaCareResponse result) throws Exception {
+        assertEquals(ROWS, result.getJson().getInt(ZivaCareUploadCallback.KEY_UPLOADED_ROWS));
+        assertFalse(result.getJson().has(ZivaCareUploadCallback.KEY_FAILED_ROWS));
+        final boolean[] accepted = new boolean[ROWS];
+        final List<byte[]> bodies = mServer.getAcceptedBodies();
+        for (byte[] body : bodies) {
+            final JSONArray data = new JSONObject(new String(body, "UTF-8")).getJSONArray("data");
+            for (int i = 0; i < data.length(); i++) {
+                final int value = data.getJSONObject(i).getInt("value");
+                assertFalse("row " + value + " accepted twice", accepted[value]);
+                accepted[value] = true;
+            }
+        }
+        for (int i = 0; i < ROWS; i++) {
+            assertTrue("row " + i + " not accepted", accepted[i]);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ZivaCare
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zivacare.android.sdk.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.zivacare.android.sdk.ZivaCareConfig;
+import com.zivacare.android.sdk.ZivaCareDispatcher;
+import com.zivacare.android.sdk.ZivaCareExecutors;
+import com.zivacare.android.sdk.ZivaCareSDK;
+import com.zivacare.android.sdk.endpoints.ZivaCareEndpoint;
+import com.zivacare.android.sdk.endpoints.ZivaCareHeartRatesEndpoint;
+import com.zivacare.android.sdk.network.ZivaCareCallback;
+import com.zivacare.android.sdk.network.ZivaCareResponse;
+import com.zivacare.android.sdk.network.ZivaCareWindowCallback;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Total time and time to the first data of a one-year heart rate query, in
+ * windows and in a single request
+ */
+public class ZivaCareWindowedCallTest extends AndroidTestCase {
+
+    private static final String TAG = "ZivaCareWindowedCallTest";
+    private static final String TYPE = ZivaCareEndpoint.TYPE_HEART_RATES;
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    // a reading every 10 minutes, as a wearable syncs them
+    private static final int RECORDS_PER_DAY = 144;
+    private static final int DAYS = 365;
+    // time the server takes to read the records, on top of the round trip
+    private static final long SERVER_DELAY_MS = 50;
+    private static final int RECORDS_PER_SERVER_MS = 100;
+
+    private LocalServer mServer;
+    private ZivaCareHeartRatesEndpoint mEndpoint;
+    private Date mStartDate;
+    private Date mEndDate;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ZivaCareDispatcher.clearCache();
+        mServer = new LocalServer("{}");
+        mServer.setDelay(SERVER_DELAY_MS);
+        mServer.setBodyWriter(new LocalServer.BodyWriter() {
+            @Override
+            public void writeTo(String path, OutputStream out) throws IOException {
+                writeRecords(path, out);
+            }
+        });
+        final ZivaCareSDK sdk = new ZivaCareSDK(getContext(),
+                new ZivaCareConfig(getContext(), true), mServer.getTransport());
+        sdk.setCallbackExecutor(ZivaCareExecutors.immediate());
+        mEndpoint = new ZivaCareHeartRatesEndpoint(sdk, sdk.getConfig());
+
+        final Calendar calendar = Calendar.getInstance();
+        calendar.set(2015, Calendar.JANUARY, 1, 12, 0, 0);
+        mStartDate = calendar.getTime();
+        calendar.add(Calendar.DAY_OF_MONTH, DAYS - 1);
+        mEndDate = calendar.getTime();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        ZivaCareDispatcher.clearCache();
+        super.tearDown();
+    }
+
+    public void testWindowsDeliverTheFirstDataSooner() throws Exception {
+        final long[] single = getSingle();
+        final long[] windowed = getWindowed();
+
+        Log.i(TAG, DAYS + " days, " + DAYS * RECORDS_PER_DAY + " records: single request "
+                + single[1] + " ms; windows " + windowed[1] + " ms in total, first data after "
+                + windowed[2] + " ms, " + windowed[3] + " windows");
+        assertEquals(DAYS * RECORDS_PER_DAY, single[0]);
+        assertEquals(single[0], windowed[0]);
+        assertTrue("first window after " + windowed[2] + " ms, single request " + single[1]
+                + " ms", windowed[2] < single[1]);
+    }
+
+    /**
+     * @return the records, and the total time in milliseconds
+     */
+    private long[] getSingle() throws Exception {
+        final long[] result = new long[2];
+        final CountDownLatch done = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        mEndpoint.getByPeriod(1, mStartDate, mEndDate, new ZivaCareCallback() {
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                result[0] = response.getJson().optJSONArray(TYPE).length();
+                result[1] = (System.nanoTime() - start) / 1000000;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                // not counted down, the wait of the test fails
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        return result;
+    }
+
+    /**
+     * @return the records, the total time and the time to the first window in
+     * milliseconds, and the number of windows
+     */
+    private long[] getWindowed() throws Exception {
+        final long[] result = new long[4];
+        final long[] lastEnd = new long[]{0};
+        final boolean[] ordered = new boolean[]{true};
+        final int[] windows = new int[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        mEndpoint.getByPeriodWindowed(1, mStartDate, mEndDate, new ZivaCareWindowCallback() {
+            @Override
+            public void onWindow(Date startDate, Date endDate, ZivaCareResponse response) {
+                if (result[3] == 0)
+                    result[2] = (System.nanoTime() - start) / 1000000;
+                if (startDate.getTime() <= lastEnd[0])
+                    ordered[0] = false;
+                lastEnd[0] = endDate.getTime();
+                result[0] += response.getJson().optJSONArray(TYPE).length();
+                result[3]++;
+            }
+
+            @Override
+            public void onSuccess(ZivaCareResponse response) {
+                result[1] = (System.nanoTime() - start) / 1000000;
+                windows[0] = response.getJson().optInt(KEY_WINDOWS);
+                done.countDown();
+            }
+
+            @Override
+            public void onError(ZivaCareResponse response) {
+                // not counted down, the wait of the test fails
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        assertTrue("windows out of chronological order", ordered[0]);
+        assertEquals(result[3], windows[0]);
+        return result;
+    }
+
+    /**
+     * Write the heart rates of the days of a period request
+     */
+    private void writeRecords(String path, OutputStream out) throws IOException {
+        // ".../period/<start>/<end>?access_token=..."
+        final String[] parts = path.split("\\?")[0].split("/");
+        final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        final long first;
+        final int days;
+        try {
+            first = dateFormat.parse(parts[parts.length - 2]).getTime();
+            days = (int) Math.round((dateFormat.parse(parts[parts.length - 1]).getTime()
+                    - first) / (double) DAY_MS) + 1;
+        } catch (ParseException e) {
+            throw new IOException(e.getMessage());
+        }
+        final int records = days * RECORDS_PER_DAY;
+        try {
+            Thread.sleep(records / RECORDS_PER_SERVER_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        final OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        final StringBuilder record = new StringBuilder();
+        buffered.write(("{\"" + TYPE + "\":[").getBytes("UTF-8"));
+        final long sampleMs = DAY_MS / RECORDS_PER_DAY;
+        for (int i = 0; i < records; i++) {
+            record.setLength(0);
+            if (i > 0)
+                record.append(',');
+            record.append("{\"id\":").append(first / sampleMs + i)
+                    .append(",\"record_time\":\"").append(formatTime(first + i * sampleMs))
+                    .append("\",\"value\":").append(60 + i % 40)
+                    .append(",\"unit\":\"bpm\"}");
+            buffered.write(record.toString().getBytes("UTF-8"));
+        }
+        buffered.write("]}".getBytes("UTF-8"));
+        buffered.flush();
+    }
+
+    private static String formatTime(long time) {
+        // the record times without an offset are in UTC
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(time);
+        return String.format(Locale.US, "%1$tY-%1$tm-%1$td %1$tH:%1$tM:%1$tS", calendar);
+    }
+}